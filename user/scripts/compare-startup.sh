@@ -0,0 +1,43 @@
+#!/usr/bin/env bash
+# Startup time and resident memory of the JVM jar against the native executable.
+#
+# Build both first:
+#   ./mvnw -DskipTests package                # target/user-0.0.1-SNAPSHOT.jar
+#   ./mvnw -Pnative -DskipTests package       # target/user (GraalVM as JAVA_HOME)
+# and point spring.datasource.* at a reachable PostgreSQL, e.g. through SPRING_DATASOURCE_URL.
+#
+# For every run, prints the milliseconds from process start until /actuator/health answers,
+# and the resident set size (VmRSS, KiB) right after that, as CSV.
+set -euo pipefail
+
+JAR=${JAR:-target/user-0.0.1-SNAPSHOT.jar}
+NATIVE=${NATIVE:-target/user}
+PORT=${PORT:-8080}
+RUNS=${RUNS:-5}
+
+measure() {
+    local name=$1
+    shift
+    for run in $(seq "$RUNS"); do
+        local start end pid rss
+        start=$(date +%s%N)
+        "$@" --server.port="$PORT" >/dev/null 2>&1 &
+        pid=$!
+        until curl -sf "http://localhost:$PORT/actuator/health" >/dev/null; do
+            if ! kill -0 "$pid" 2>/dev/null; then
+                echo "$name exited before it became ready" >&2
+                exit 1
+            fi
+            sleep 0.01
+        done
+        end=$(date +%s%N)
+        rss=$(awk '/^VmRSS/ {print $2}' "/proc/$pid/status")
+        echo "$name,$run,$(( (end - start) / 1000000 )),$rss"
+        kill "$pid"
+        wait "$pid" 2>/dev/null || true
+    done
+}
+
+echo "binary,run,ready_ms,rss_kib"
+measure jvm java -jar "$JAR"
+measure native "$NATIVE"
@@ -0,0 +1,67 @@
+#!/usr/bin/env bash
+# Takes a CRaC checkpoint of a warmed-up user service and restores it.
+#
+# Needs a JDK with CRaC support (e.g. Azul Zulu with CRaC) as JAVA_HOME on Linux, the jar
+# from `./mvnw -DskipTests package`, and spring.datasource.* pointing at a reachable
+# PostgreSQL, e.g. through SPRING_DATASOURCE_URL.
+#
+#   scripts/crac-checkpoint.sh checkpoint   # start, warm up, checkpoint to $CHECKPOINT_DIR
+#   scripts/crac-checkpoint.sh restore      # restore and print the time until it answers
+#
+# The warm-up signs up one user and reads it back with its credentials at a rate the
+# per-client rate limit accepts, so the JIT compiles the request path that will be served
+# after restore rather than the rejection path.
+set -euo pipefail
+
+JAR=${JAR:-target/user-0.0.1-SNAPSHOT.jar}
+CHECKPOINT_DIR=${CHECKPOINT_DIR:-target/crac}
+PORT=${PORT:-8080}
+WARMUP_REQUESTS=${WARMUP_REQUESTS:-5000}
+WARMUP_RATE=${WARMUP_RATE:-90/s}
+BASE="http://localhost:$PORT"
+
+wait_ready() {
+    local pid=$1
+    until curl -sf "$BASE/actuator/health" >/dev/null; do
+        if ! kill -0 "$pid" 2>/dev/null; then
+            echo "the service exited before it became ready" >&2
+            exit 1
+        fi
+        sleep 0.01
+    done
+}
+
+checkpoint() {
+    rm -rf "$CHECKPOINT_DIR"
+    java -XX:CRaCCheckpointTo="$CHECKPOINT_DIR" -jar "$JAR" \
+        --spring.profiles.active=crac --server.port="$PORT" &
+    local pid=$!
+    wait_ready "$pid"
+
+    local id
+    id=$(curl -sf -H 'Content-Type: application/json' -d '{"name":"warmup","password":"warmup-password"}' \
+        "$BASE/user" | sed -E 's/.*"id":([0-9]+).*/\1/')
+    curl -s -o /dev/null --rate "$WARMUP_RATE" -u "$id:warmup-password" "$BASE/user/$id?warmup=[1-$WARMUP_REQUESTS]"
+    curl -s -o /dev/null -u "$id:warmup-password" -X DELETE "$BASE/user/$id"
+
+    jcmd "$pid" JDK.checkpoint
+    wait "$pid" 2>/dev/null || true
+    echo "checkpoint written to $CHECKPOINT_DIR"
+}
+
+restore() {
+    local start end pid
+    start=$(date +%s%N)
+    java -XX:CRaCRestoreFrom="$CHECKPOINT_DIR" &
+    pid=$!
+    wait_ready "$pid"
+    end=$(date +%s%N)
+    echo "restored and ready in $(( (end - start) / 1000000 )) ms (pid $pid)"
+    wait "$pid"
+}
+
+case "${1:-}" in
+    checkpoint) checkpoint ;;
+    restore) restore ;;
+    *) echo "usage: $0 checkpoint|restore" >&2; exit 2 ;;
+esac
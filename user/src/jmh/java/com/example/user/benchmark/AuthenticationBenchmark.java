@@ -0,0 +1,85 @@
+package com.example.user.benchmark;
+
+import com.example.user.UserApplication;
+import com.example.user.entity.User;
+import com.example.user.repository.UserRepository;
+import com.example.user.security.CredentialCache;
+import com.example.user.service.PasswordHasher;
+import jakarta.servlet.Filter;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+/**
+ * Authentication overhead per request: the same {@code GET /user/{id}} without the
+ * security filter chain, with credentials answered from the {@link CredentialCache}, and
+ * with the cache cleared before every request so each one loads the user and checks its
+ * bcrypt hash. The difference to the first benchmark is what authentication costs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AuthenticationBenchmark {
+    private static final String PASSWORD = "password123";
+
+    private ConfigurableApplicationContext context;
+    private CredentialCache credentialCache;
+    private MockMvc unsecured;
+    private MockMvc secured;
+    private long id;
+    private String authorization;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new SpringApplicationBuilder(UserApplication.class)
+                .properties("server.port=0",
+                        "spring.datasource.url=jdbc:h2:mem:authentication;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+                        "user.rate-limit.enabled=false",
+                        "logging.level.com.example.user=WARN")
+                .run();
+        credentialCache = context.getBean(CredentialCache.class);
+        String hash = context.getBean(PasswordHasher.class).encode(PASSWORD);
+        id = context.getBean(UserRepository.class).save(User.builder().name("benchmark").password(hash).build()).getId();
+        authorization = "Basic " + Base64.getEncoder().encodeToString((id + ":" + PASSWORD).getBytes(StandardCharsets.UTF_8));
+
+        WebApplicationContext webContext = (WebApplicationContext) context;
+        unsecured = MockMvcBuilders.webAppContextSetup(webContext).build();
+        secured = MockMvcBuilders.webAppContextSetup(webContext)
+                .addFilters(context.getBean("springSecurityFilterChain", Filter.class))
+                .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public MvcResult withoutSecurity() throws Exception {
+        return unsecured.perform(get("/user/{id}", id)).andReturn();
+    }
+
+    @Benchmark
+    public MvcResult cachedCredentials() throws Exception {
+        return secured.perform(get("/user/{id}", id).header("Authorization", authorization)).andReturn();
+    }
+
+    @Benchmark
+    public MvcResult uncachedCredentials() throws Exception {
+        credentialCache.invalidate(id);
+        return secured.perform(get("/user/{id}", id).header("Authorization", authorization)).andReturn();
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.user.benchmark;
+
+import com.example.user.UserApplication;
+import com.example.user.entity.User;
+import com.example.user.repository.UserRepository;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Pool size against more concurrent clients than connections, over real HTTP to
+ * PostgreSQL with the {@code prod} profile. With open-in-view, a request keeps its
+ * connection until the response is written, so the pool runs out sooner; without it, a
+ * connection is only held for the transaction and a small pool serves the same load.
+ * Throughput mode gives requests per second, sample mode the latency percentiles; the
+ * {@code hikaricp.connections.acquire} metric of the same run shows the time spent
+ * waiting for a connection.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Threads(64)
+@Fork(1)
+public class ConnectionPoolBenchmark {
+    private static final int USERS = 10_000;
+    private static final int PAGE_SIZE = 100;
+
+    @Param({"5", "10", "20", "40"})
+    public int poolSize;
+
+    @Param({"true", "false"})
+    public boolean openInView;
+
+    private PostgresBenchmarkDatabase database;
+    private ConfigurableApplicationContext context;
+    private HttpClient httpClient;
+    private String baseUrl;
+    private String authorization;
+    private long[] ids;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        database = PostgresBenchmarkDatabase.start();
+        context = new SpringApplicationBuilder(UserApplication.class)
+                .run(database.arguments("server.port=0",
+                        "spring.datasource.hikari.maximum-pool-size=" + poolSize,
+                        "spring.datasource.hikari.minimum-idle=" + poolSize,
+                        "spring.jpa.open-in-view=" + openInView,
+                        "user.rate-limit.enabled=false"));
+        List<User> users = context.getBean(UserRepository.class).saveAll(IntStream.range(0, USERS)
+                .mapToObj(i -> User.builder().name("user" + i).password("password" + i).build())
+                .toList());
+        ids = users.stream().mapToLong(User::getId).toArray();
+
+        baseUrl = "http://localhost:" + ((WebServerApplicationContext) context).getWebServer().getPort();
+        httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        authorization = "Basic " + Base64.getEncoder().encodeToString((ids[0] + ":password0").getBytes(StandardCharsets.UTF_8));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+        database.close();
+    }
+
+    @Benchmark
+    public int getUsersPage() throws IOException, InterruptedException {
+        long after = ids[ThreadLocalRandom.current().nextInt(ids.length - PAGE_SIZE)];
+        return send("/user/page?size=" + PAGE_SIZE + "&after=" + after);
+    }
+
+    @Benchmark
+    public int searchUsers() throws IOException, InterruptedException {
+        return send("/user/search?match=PREFIX&limit=" + PAGE_SIZE + "&name=user" + ThreadLocalRandom.current().nextInt(100));
+    }
+
+    private int send(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .header("Authorization", authorization)
+                .GET()
+                .build();
+        return httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.user.benchmark;
+
+import com.example.user.UserApplication;
+import com.example.user.entity.User;
+import com.example.user.entity.UserChangeEvent;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Inserts one chunk of users the way {@code UserBatchService.createUsers} does, each user
+ * followed by its change event, on PostgreSQL with the {@code prod} profile. Varies the
+ * Hibernate batch size, whether inserts are ordered by table (without it the alternating
+ * entities end every batch after one row), and pgjdbc's rewriting of batched inserts into
+ * multi-row statements.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class JdbcBatchBenchmark {
+    private static final int CHUNK = 500;
+
+    @Param({"1", "50", "500"})
+    public int batchSize;
+
+    @Param({"false", "true"})
+    public boolean orderInserts;
+
+    @Param({"false", "true"})
+    public boolean reWriteBatchedInserts;
+
+    private PostgresBenchmarkDatabase database;
+    private ConfigurableApplicationContext context;
+    private TransactionTemplate transactionTemplate;
+    private EntityManager entityManager;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        database = PostgresBenchmarkDatabase.start();
+        context = new SpringApplicationBuilder(UserApplication.class)
+                .run(database.arguments("server.port=0",
+                        "spring.jpa.properties.hibernate.jdbc.batch_size=" + batchSize,
+                        "spring.jpa.properties.hibernate.order_inserts=" + orderInserts,
+                        "spring.datasource.hikari.data-source-properties.reWriteBatchedInserts=" + reWriteBatchedInserts));
+        transactionTemplate = context.getBean(TransactionTemplate.class);
+        entityManager = SharedEntityManagerCreator.createSharedEntityManager(context.getBean(EntityManagerFactory.class));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+        database.close();
+    }
+
+    @Benchmark
+    public void insertChunk() {
+        transactionTemplate.executeWithoutResult(status -> {
+            for (int i = 0; i < CHUNK; i++) {
+                User user = User.builder().name("batch" + i).password("hash").build();
+                entityManager.persist(user);
+                entityManager.persist(UserChangeEvent.of(UserChangeEvent.Type.CREATED, user.getId(), user.getName(), 0L));
+            }
+            entityManager.flush();
+            entityManager.clear();
+        });
+    }
+}
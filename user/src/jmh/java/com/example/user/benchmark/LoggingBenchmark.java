@@ -0,0 +1,131 @@
+package com.example.user.benchmark;
+
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.OutputStreamAppender;
+import ch.qos.logback.core.encoder.Encoder;
+import com.example.user.filter.SampledDebugTurboFilter;
+import net.logstash.logback.encoder.LogstashEncoder;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.MDC;
+
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What a request thread pays per log call, set up as in {@code logback-spring.xml}.
+ * <ul>
+ * <li>{@code debug*}: a debug line below the configured level, built by concatenation or
+ * left to the logger as a template with arguments; the sampling turbo filter is
+ * installed.</li>
+ * <li>{@code info}: an enabled line written as text or JSON to a stream that discards it,
+ * either on the calling thread or through the bounded, non-blocking async appender. The
+ * stream never blocks here, so the async appender only wins where encoding is expensive;
+ * in production it also keeps a stalled stdout away from request threads. The worker does
+ * not keep up with a tight loop, so once the queue is full the calling thread only pays
+ * for dropping the event.</li>
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoggingBenchmark {
+    private LoggerContext context;
+    private Logger logger;
+    private long id = 42;
+    private String name = "Manel";
+
+    @Setup
+    public void setUp() {
+        context = context();
+        logger = context.getLogger("com.example.user.service.UserService");
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.stop();
+    }
+
+    @Benchmark
+    public void debugConcatenated() {
+        logger.debug("Received request to find users with id " + id + " and name " + name);
+    }
+
+    @Benchmark
+    public void debugParameterized() {
+        logger.debug("Received request to find users with id {} and name {}", id, name);
+    }
+
+    @Benchmark
+    public void info(Appenders appenders) {
+        appenders.logger.info("Login failed for user {}", id);
+    }
+
+    @State(Scope.Benchmark)
+    public static class Appenders {
+        @Param({"text", "json"})
+        public String format;
+        @Param({"sync", "async"})
+        public String mode;
+
+        private LoggerContext context;
+        private Logger logger;
+
+        @Setup
+        public void setUp() {
+            context = context();
+            Encoder<ILoggingEvent> encoder;
+            if (format.equals("json")) {
+                encoder = new LogstashEncoder();
+            } else {
+                PatternLayoutEncoder pattern = new PatternLayoutEncoder();
+                pattern.setPattern("%d{yyyy-MM-dd'T'HH:mm:ss.SSSXXX} %5p %t --- %logger{39} : %m%n");
+                encoder = pattern;
+            }
+            encoder.setContext(context);
+            encoder.start();
+            OutputStreamAppender<ILoggingEvent> stream = new OutputStreamAppender<>();
+            stream.setContext(context);
+            stream.setEncoder(encoder);
+            stream.setOutputStream(OutputStream.nullOutputStream());
+            stream.start();
+            Appender<ILoggingEvent> appender = stream;
+            if (mode.equals("async")) {
+                AsyncAppender async = new AsyncAppender();
+                async.setContext(context);
+                async.setQueueSize(8192);
+                async.setNeverBlock(true);
+                async.addAppender(stream);
+                async.start();
+                appender = async;
+            }
+            context.getLogger(Logger.ROOT_LOGGER_NAME).addAppender(appender);
+            logger = context.getLogger("com.example.user.service.UserService");
+        }
+
+        @TearDown
+        public void tearDown() {
+            context.stop();
+        }
+    }
+
+    private static LoggerContext context() {
+        LoggerContext context = new LoggerContext();
+        context.setMDCAdapter(MDC.getMDCAdapter());
+        SampledDebugTurboFilter turboFilter = new SampledDebugTurboFilter();
+        turboFilter.setContext(context);
+        turboFilter.start();
+        context.addTurboFilter(turboFilter);
+        context.getLogger(Logger.ROOT_LOGGER_NAME).setLevel(Level.INFO);
+        context.start();
+        return context;
+    }
+}
@@ -0,0 +1,146 @@
+package com.example.user.benchmark;
+
+import com.example.user.dto.NameMatch;
+import com.example.user.dto.UserView;
+import com.example.user.repository.UserPartitionScanner;
+import com.zaxxer.hikari.HikariDataSource;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code user_table} as it was and hash-partitioned the way the PostgreSQL migration
+ * {@code V6} does it ({@code partitions=0} is the plain table), filled with {@code rows}
+ * users, on PostgreSQL. Lookup latency by id and by name prefix, the latter both as one
+ * statement and fanned out over the partitions by {@link UserPartitionScanner}; and the
+ * cost of vacuuming after 1% of the rows changed, for the whole table and for the largest
+ * piece a single vacuum has to process (one partition, or the whole plain table).
+ * <p>
+ * Each layout gets its own schema. Against {@code BENCHMARK_JDBC_URL}, a table that already
+ * has the right number of rows is reused, so larger runs only pay for loading once; raise
+ * {@code rows} with {@code -p rows=...} to get closer to production.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class PartitioningBenchmark {
+    private static final int SEARCH_LIMIT = 20;
+
+    @Param({"10000000"})
+    public int rows;
+
+    @Param({"0", "16"})
+    public int partitions;
+
+    private PostgresBenchmarkDatabase database;
+    private HikariDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private UserPartitionScanner partitionScanner;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        database = PostgresBenchmarkDatabase.start();
+        dataSource = database.dataSource("partitions_" + partitions, 16);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        if (!loaded()) {
+            load();
+        }
+        partitionScanner = new UserPartitionScanner(jdbcTemplate, new DataSourceTransactionManager(dataSource), 4, 2);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        partitionScanner.destroy();
+        dataSource.close();
+        database.close();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public UserView findById() {
+        return jdbcTemplate.queryForObject("select id, name, version from user_table where id = ?",
+                (rs, row) -> new UserView(rs.getLong(1), rs.getString(2), rs.getLong(3)),
+                1 + ThreadLocalRandom.current().nextLong(rows));
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public List<Long> searchByNamePrefix() {
+        return jdbcTemplate.queryForList("select id from user_table where name like ? order by id limit ?",
+                Long.class, randomPrefix() + "%", SEARCH_LIMIT);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public List<UserView> searchByNamePrefixAcrossPartitions() {
+        if (!partitionScanner.isPartitioned()) {
+            return List.of();
+        }
+        return partitionScanner.findViewsByName(randomPrefix(), NameMatch.PREFIX, false, SEARCH_LIMIT);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 1)
+    @Measurement(iterations = 5)
+    public void vacuumTable(Churn churn) {
+        jdbcTemplate.execute("vacuum user_table");
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 1)
+    @Measurement(iterations = 5)
+    public void vacuumLargestUnit(Churn churn) {
+        jdbcTemplate.execute(partitions == 0 ? "vacuum user_table" : "vacuum user_table_p00");
+    }
+
+    /**
+     * Updates 1% of the rows before every vacuum, so each one has dead tuples to remove
+     * and index entries to clean up.
+     */
+    @State(Scope.Thread)
+    public static class Churn {
+        private int round;
+
+        @Setup(Level.Iteration)
+        public void churn(PartitioningBenchmark benchmark) {
+            benchmark.jdbcTemplate.update("update user_table set version = version + 1 where id % 100 = ?", round++ % 100);
+        }
+    }
+
+    private String randomPrefix() {
+        return "user" + (1 + ThreadLocalRandom.current().nextInt(rows / 1000));
+    }
+
+    private boolean loaded() {
+        Boolean exists = jdbcTemplate.queryForObject("select to_regclass('user_table') is not null", Boolean.class);
+        return Boolean.TRUE.equals(exists)
+                && jdbcTemplate.queryForObject("select count(*) from user_table", Long.class) == rows;
+    }
+
+    private void load() {
+        jdbcTemplate.execute("drop table if exists user_table cascade");
+        jdbcTemplate.execute("create table user_table (id bigint not null, name varchar(255), password varchar(255),"
+                + " version bigint not null default 0)" + (partitions == 0 ? "" : " partition by hash (id)"));
+        for (int i = 0; i < partitions; i++) {
+            jdbcTemplate.execute(String.format("create table user_table_p%02d partition of user_table"
+                    + " for values with (modulus %d, remainder %d)", i, partitions, i));
+        }
+        jdbcTemplate.update("insert into user_table (id, name, password) select i, 'user' || i, 'password'"
+                + " from generate_series(1, ?) i", rows);
+        jdbcTemplate.execute("alter table user_table add primary key (id)");
+        jdbcTemplate.execute("create index idx_user_table_name on user_table (name text_pattern_ops)");
+        jdbcTemplate.execute("vacuum analyze user_table");
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.user.benchmark;
+
+import com.example.user.config.PasswordConfig;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one hash and one verification for each supported encoder at a few cost
+ * settings, to pick {@code user.password.*} values that fit the create/login latency
+ * budget. Each row is one {@code encoder:cost} combination.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+public class PasswordEncoderBenchmark {
+    @Param({"bcrypt:10", "bcrypt:12", "pbkdf2:310000", "pbkdf2:600000", "argon2:19456", "argon2:47104"})
+    public String setting;
+
+    private PasswordEncoder encoder;
+    private String hash;
+
+    @Setup
+    public void setUp() {
+        String[] parts = setting.split(":");
+        int cost = Integer.parseInt(parts[1]);
+        encoder = switch (parts[0]) {
+            case PasswordConfig.BCRYPT -> PasswordConfig.delegatingEncoder(PasswordConfig.BCRYPT, cost, 310000, 19456, 2);
+            case PasswordConfig.PBKDF2 -> PasswordConfig.delegatingEncoder(PasswordConfig.PBKDF2, 10, cost, 19456, 2);
+            case PasswordConfig.ARGON2 -> PasswordConfig.delegatingEncoder(PasswordConfig.ARGON2, 10, 310000, cost, 2);
+            default -> throw new IllegalArgumentException(setting);
+        };
+        hash = encoder.encode("password123");
+    }
+
+    @Benchmark
+    public String encode() {
+        return encoder.encode("password123");
+    }
+
+    @Benchmark
+    public boolean matches() {
+        return encoder.matches("password123", hash);
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.user.benchmark;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.utility.DockerImageName;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * PostgreSQL for the benchmarks whose subject is the driver, the pool or the database, where
+ * H2 numbers would say nothing. Uses the database in {@code BENCHMARK_JDBC_URL} (with
+ * {@code BENCHMARK_JDBC_USERNAME} and {@code BENCHMARK_JDBC_PASSWORD}) when set, and
+ * otherwise starts a container, which needs Docker. Environment variables rather than
+ * system properties, because JMH forks inherit them.
+ */
+final class PostgresBenchmarkDatabase implements AutoCloseable {
+    private static final String IMAGE = "postgres:16-alpine";
+
+    private final String jdbcUrl;
+    private final String username;
+    private final String password;
+    private final PostgreSQLContainer<?> container;
+
+    private PostgresBenchmarkDatabase(String jdbcUrl, String username, String password, PostgreSQLContainer<?> container) {
+        this.jdbcUrl = jdbcUrl;
+        this.username = username;
+        this.password = password;
+        this.container = container;
+    }
+
+    static PostgresBenchmarkDatabase start() {
+        String jdbcUrl = System.getenv("BENCHMARK_JDBC_URL");
+        if (jdbcUrl != null && !jdbcUrl.isBlank()) {
+            return new PostgresBenchmarkDatabase(jdbcUrl, System.getenv("BENCHMARK_JDBC_USERNAME"),
+                    System.getenv("BENCHMARK_JDBC_PASSWORD"), null);
+        }
+        PostgreSQLContainer<?> container = new PostgreSQLContainer<>(DockerImageName.parse(IMAGE));
+        container.start();
+        return new PostgresBenchmarkDatabase(container.getJdbcUrl(), container.getUsername(), container.getPassword(), container);
+    }
+
+    /**
+     * Command line arguments for the application: the {@code prod} profile against this
+     * database, with the given {@code key=value} properties on top. Command line arguments
+     * win over the test configuration on the benchmark classpath.
+     */
+    String[] arguments(String... properties) {
+        List<String> arguments = new ArrayList<>(List.of(
+                "--spring.profiles.active=prod",
+                "--spring.datasource.url=" + jdbcUrl,
+                "--spring.datasource.username=" + username,
+                "--spring.datasource.password=" + password,
+                "--logging.level.com.example.user=WARN"));
+        for (String property : properties) {
+            arguments.add("--" + property);
+        }
+        return arguments.toArray(String[]::new);
+    }
+
+    /**
+     * A pool on this database whose connections resolve unqualified names in {@code schema}
+     * first, for benchmarks that build their own tables without the application.
+     */
+    HikariDataSource dataSource(String schema, int poolSize) {
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(jdbcUrl);
+        dataSource.setUsername(username);
+        dataSource.setPassword(password);
+        dataSource.setMaximumPoolSize(poolSize);
+        dataSource.setConnectionInitSql("create schema if not exists " + schema + "; set search_path to " + schema + ", public");
+        return dataSource;
+    }
+
+    @Override
+    public void close() {
+        if (container != null) {
+            container.stop();
+        }
+    }
+}
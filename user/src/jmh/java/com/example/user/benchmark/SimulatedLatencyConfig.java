@@ -0,0 +1,65 @@
+package com.example.user.benchmark;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Statement;
+
+/**
+ * Makes the embedded database behave like a remote one: every statement execution
+ * sleeps for {@code benchmark.db-latency-ms} before running, so request threads block on
+ * JDBC the way they do against Postgres. Deliberately not a {@code @Configuration} so
+ * component scanning never picks it up; benchmarks add it as a source explicitly.
+ */
+public class SimulatedLatencyConfig {
+
+    @Bean
+    static BeanPostProcessor simulatedLatencyPostProcessor(@Value("${benchmark.db-latency-ms:5}") long latencyMillis) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof DataSource dataSource && latencyMillis > 0) {
+                    return wrap(DataSource.class, dataSource, latencyMillis);
+                }
+                return bean;
+            }
+        };
+    }
+
+    private static <T> T wrap(Class<T> type, T target, long latencyMillis) {
+        InvocationHandler handler = (proxy, method, args) -> {
+            if (method.getName().startsWith("execute")) {
+                Thread.sleep(latencyMillis);
+            }
+            Object result = invoke(target, method, args);
+            if (result instanceof Connection connection) {
+                return wrap(Connection.class, connection, latencyMillis);
+            }
+            if (result instanceof Statement && method.getReturnType().isInterface()) {
+                return wrapStatement(result, method.getReturnType(), latencyMillis);
+            }
+            return result;
+        };
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object wrapStatement(Object statement, Class<?> type, long latencyMillis) {
+        return wrap((Class<Object>) type, statement, latencyMillis);
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+}
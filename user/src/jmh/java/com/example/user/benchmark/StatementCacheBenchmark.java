@@ -0,0 +1,83 @@
+package com.example.user.benchmark;
+
+import com.example.user.UserApplication;
+import com.example.user.dto.UserView;
+import com.example.user.entity.User;
+import com.example.user.repository.UserRepository;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Repository queries on PostgreSQL with the {@code prod} profile, varying when pgjdbc
+ * switches a statement to a server-side prepared one ({@code 0} never does, so every
+ * execution is parsed and planned again), IN-list padding and the size of Hibernate's query
+ * plan cache. {@code findExistingIds} gets a different number of ids on every call, like
+ * the batch delete chunks do; without padding each size is its own SQL string.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class StatementCacheBenchmark {
+    private static final int USERS = 1000;
+    private static final int MAX_IDS = 100;
+
+    @Param({"0", "5", "1"})
+    public int prepareThreshold;
+
+    @Param({"false", "true"})
+    public boolean inClauseParameterPadding;
+
+    @Param({"16", "256"})
+    public int planCacheMaxSize;
+
+    private PostgresBenchmarkDatabase database;
+    private ConfigurableApplicationContext context;
+    private UserRepository userRepository;
+    private long[] ids;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        database = PostgresBenchmarkDatabase.start();
+        context = new SpringApplicationBuilder(UserApplication.class)
+                .run(database.arguments("server.port=0",
+                        "spring.datasource.hikari.data-source-properties.prepareThreshold=" + prepareThreshold,
+                        "spring.jpa.properties.hibernate.query.in_clause_parameter_padding=" + inClauseParameterPadding,
+                        "spring.jpa.properties.hibernate.query.plan_cache_max_size=" + planCacheMaxSize));
+        userRepository = context.getBean(UserRepository.class);
+        List<User> users = userRepository.saveAll(IntStream.range(0, USERS)
+                .mapToObj(i -> User.builder().name("user" + i).password("password" + i).build())
+                .toList());
+        ids = users.stream().mapToLong(User::getId).toArray();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+        database.close();
+    }
+
+    @Benchmark
+    public Optional<UserView> findViewById() {
+        return userRepository.findViewById(ids[ThreadLocalRandom.current().nextInt(ids.length)]);
+    }
+
+    @Benchmark
+    public List<Long> findExistingIds() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int offset = random.nextInt(ids.length - MAX_IDS);
+        List<Long> chunk = IntStream.range(offset, offset + 1 + random.nextInt(MAX_IDS))
+                .mapToObj(i -> ids[i])
+                .toList();
+        return userRepository.findExistingIds(chunk);
+    }
+}
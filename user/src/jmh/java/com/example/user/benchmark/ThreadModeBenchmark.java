@@ -0,0 +1,83 @@
+package com.example.user.benchmark;
+
+import com.example.user.UserApplication;
+import com.example.user.entity.User;
+import com.example.user.repository.UserRepository;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Platform threads against virtual threads under more concurrent clients than Tomcat has
+ * worker threads. Requests go over real HTTP to {@code GET /user/page}, which is not
+ * cached, and every JDBC statement is slowed down by {@link SimulatedLatencyConfig} so
+ * the request threads spend their time blocked the way they would on Postgres.
+ * <p>
+ * Throughput mode gives requests per second, sample mode the latency percentiles (p99 is
+ * in the JSON results).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Threads(400)
+@Fork(1)
+public class ThreadModeBenchmark {
+    @Param({"false", "true"})
+    public boolean virtualThreads;
+
+    @Param({"20"})
+    public int dbLatencyMs;
+
+    private ConfigurableApplicationContext context;
+    private HttpClient httpClient;
+    private HttpRequest request;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new SpringApplicationBuilder(UserApplication.class, SimulatedLatencyConfig.class)
+                .properties("server.port=0",
+                        "spring.threads.virtual.enabled=" + virtualThreads,
+                        "spring.datasource.url=jdbc:h2:mem:threads;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+                        "spring.datasource.hikari.maximum-pool-size=50",
+                        "user.virtual-threads.max-in-flight=1000",
+                        "user.rate-limit.enabled=false",
+                        "benchmark.db-latency-ms=" + dbLatencyMs,
+                        "logging.level.com.example.user=WARN")
+                .run();
+        List<User> users = context.getBean(UserRepository.class).saveAll(IntStream.range(0, 100)
+                .mapToObj(i -> User.builder().name("user" + i).password("password" + i).build())
+                .toList());
+
+        int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+        httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        String credentials = Base64.getEncoder().encodeToString((users.get(0).getId() + ":password0").getBytes(StandardCharsets.UTF_8));
+        request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/user/page?size=10"))
+                .header("Authorization", "Basic " + credentials)
+                .GET()
+                .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public int getUsersPage() throws IOException, InterruptedException {
+        return httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+}
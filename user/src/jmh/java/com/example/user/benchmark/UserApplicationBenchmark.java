@@ -0,0 +1,99 @@
+package com.example.user.benchmark;
+
+import com.example.user.UserApplication;
+import com.example.user.dto.UserView;
+import com.example.user.entity.User;
+import com.example.user.repository.UserRepository;
+import com.example.user.service.UserService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+/**
+ * Hot paths through the real application context, backed by the embedded H2 database the
+ * tests use. MockMvc requests go through the full Spring MVC stack (without the security
+ * filters) but skip the network.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserApplicationBenchmark {
+    private static final int USERS = 1000;
+
+    private ConfigurableApplicationContext context;
+    private UserService userService;
+    private UserRepository userRepository;
+    private MockMvc mockMvc;
+    private long[] ids;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new SpringApplicationBuilder(UserApplication.class)
+                .properties("server.port=0",
+                        "spring.datasource.url=jdbc:h2:mem:benchmark;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+                        "logging.level.com.example.user=WARN")
+                .run();
+        userService = context.getBean(UserService.class);
+        userRepository = context.getBean(UserRepository.class);
+        mockMvc = MockMvcBuilders.webAppContextSetup((WebApplicationContext) context).build();
+
+        List<User> users = userRepository.saveAll(IntStream.range(0, USERS)
+                .mapToObj(i -> User.builder().name("user" + i).password("password" + i).build())
+                .toList());
+        ids = users.stream().mapToLong(User::getId).toArray();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    private long randomId() {
+        return ids[ThreadLocalRandom.current().nextInt(ids.length)];
+    }
+
+    @Benchmark
+    public Optional<UserView> findUserByIdThroughService() {
+        return userService.findUserById(randomId());
+    }
+
+    @Benchmark
+    public Optional<User> findUserByIdFromDatabase() {
+        return userRepository.findById(randomId());
+    }
+
+    @Benchmark
+    public Optional<UserView> findUserViewByIdFromDatabase() {
+        return userRepository.findViewById(randomId());
+    }
+
+    @Benchmark
+    public MvcResult getUserThroughController() throws Exception {
+        return mockMvc.perform(get("/user/{id}", randomId())).andReturn();
+    }
+
+    @Benchmark
+    public MvcResult createUserThroughController() throws Exception {
+        return mockMvc.perform(post("/user")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"benchmark\",\"password\":\"password123\"}"))
+                .andReturn();
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.user.benchmark;
+
+import com.example.user.entity.User;
+import com.example.user.exceptions.UserInvalidAttributesException;
+import com.example.user.repository.UserRepository;
+import com.example.user.service.PasswordHasher;
+import com.example.user.service.UserService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.security.crypto.password.NoOpPasswordEncoder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link UserService#createUser} without a database: the repository is a proxy that
+ * hands back what it is given and passwords go through a no-op encoder, so validation and
+ * the hand-off to the hashing pool are measured, not the hash itself (see
+ * {@link PasswordEncoderBenchmark}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserServiceValidationBenchmark {
+    private UserService userService;
+    private PasswordHasher passwordHasher;
+    private User validUser;
+    private User invalidUser;
+
+    @Setup
+    public void setUp() {
+        UserRepository repository = (UserRepository) Proxy.newProxyInstance(UserRepository.class.getClassLoader(),
+                new Class<?>[]{UserRepository.class}, (proxy, method, args) -> args == null ? null : args[0]);
+        passwordHasher = new PasswordHasher(NoOpPasswordEncoder.getInstance(), 1, 1000);
+        userService = new UserService();
+        ReflectionTestUtils.setField(userService, "userRepository", repository);
+        ReflectionTestUtils.setField(userService, "passwordHasher", passwordHasher);
+        validUser = User.builder().name("Manel").password("password123").build();
+        invalidUser = User.builder().name("Manel").password(" ").build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        passwordHasher.destroy();
+    }
+
+    @Benchmark
+    public User createValidUser() {
+        validUser.setPassword("password123");
+        return userService.createUser(validUser);
+    }
+
+    @Benchmark
+    public Object rejectInvalidUser() {
+        try {
+            return userService.createUser(invalidUser);
+        } catch (UserInvalidAttributesException e) {
+            return e;
+        }
+    }
+}
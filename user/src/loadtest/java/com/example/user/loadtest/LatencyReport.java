@@ -0,0 +1,160 @@
+package com.example.user.loadtest;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histograms and error counts per endpoint for one phase of a run. Latency is
+ * measured from the moment a request was due to be sent, not from when it actually went
+ * out, so a stalled server shows up in the percentiles instead of silently lowering the
+ * offered load (coordinated omission).
+ */
+class LatencyReport {
+    static final Map<String, Double> PERCENTILES = Map.of("p50", 50.0, "p99", 99.0, "p999", 99.9);
+
+    private final Map<Operation, Histogram> latencies = new EnumMap<>(Operation.class);
+    private final Map<Operation, LongAdder> errors = new EnumMap<>(Operation.class);
+    private final Map<Operation, LongAdder> skipped = new EnumMap<>(Operation.class);
+    private final LongAdder rejected = new LongAdder();
+    private final long startNanos;
+    private volatile long endNanos;
+
+    LatencyReport(long startNanos) {
+        this.startNanos = startNanos;
+        for (Operation operation : Operation.values()) {
+            latencies.put(operation, new ConcurrentHistogram(3));
+            errors.put(operation, new LongAdder());
+            skipped.put(operation, new LongAdder());
+        }
+    }
+
+    void record(Operation operation, long latencyNanos, boolean success) {
+        latencies.get(operation).recordValue(TimeUnit.NANOSECONDS.toMicros(latencyNanos));
+        if (!success) {
+            errors.get(operation).increment();
+        }
+    }
+
+    /**
+     * A request that could not be sent, because the client already had too many in flight.
+     */
+    void rejected(Operation operation) {
+        errors.get(operation).increment();
+        rejected.increment();
+    }
+
+    void skipped(Operation operation) {
+        skipped.get(operation).increment();
+    }
+
+    void finish(long endNanos) {
+        this.endNanos = endNanos;
+    }
+
+    long total() {
+        return latencies.values().stream().mapToLong(Histogram::getTotalCount).sum();
+    }
+
+    long totalErrors() {
+        return errors.values().stream().mapToLong(LongAdder::sum).sum();
+    }
+
+    double seconds() {
+        return (endNanos - startNanos) / 1_000_000_000d;
+    }
+
+    void print(PrintStream out, double offeredRate) {
+        out.printf(Locale.ROOT, "%-20s %9s %7s %7s %9s %9s %9s %9s %9s%n",
+                "endpoint", "requests", "errors", "skipped", "req/s", "p50 ms", "p99 ms", "p99.9 ms", "max ms");
+        for (Operation operation : Operation.values()) {
+            Histogram histogram = latencies.get(operation);
+            out.printf(Locale.ROOT, "%-20s %9d %7d %7d %9.1f %9.2f %9.2f %9.2f %9.2f%n",
+                    operation.endpoint(), histogram.getTotalCount(), errors.get(operation).sum(), skipped.get(operation).sum(),
+                    histogram.getTotalCount() / seconds(),
+                    millis(histogram, 50.0), millis(histogram, 99.0), millis(histogram, 99.9),
+                    histogram.getMaxValue() / 1000d);
+        }
+        out.printf(Locale.ROOT, "%-20s %9d %7d %7s %9.1f (offered %.1f)%n", "total", total(), totalErrors(), "",
+                total() / seconds(), offeredRate);
+    }
+
+    /**
+     * Writes {@code summary.csv} and, per endpoint, the full percentile distribution in
+     * milliseconds ({@code <operation>.hgrm}), which the HdrHistogram plotter reads.
+     */
+    void write(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        try (Writer summary = Files.newBufferedWriter(directory.resolve("summary.csv"))) {
+            summary.write("endpoint,requests,errors,skipped,requests_per_second,p50_ms,p99_ms,p999_ms,max_ms\n");
+            for (Operation operation : Operation.values()) {
+                Histogram histogram = latencies.get(operation);
+                summary.write(String.format(Locale.ROOT, "%s,%d,%d,%d,%.1f,%.3f,%.3f,%.3f,%.3f%n",
+                        operation.endpoint(), histogram.getTotalCount(), errors.get(operation).sum(), skipped.get(operation).sum(),
+                        histogram.getTotalCount() / seconds(),
+                        millis(histogram, 50.0), millis(histogram, 99.0), millis(histogram, 99.9),
+                        histogram.getMaxValue() / 1000d));
+            }
+        }
+        for (Operation operation : Operation.values()) {
+            try (PrintStream out = new PrintStream(Files.newOutputStream(directory.resolve(operation.key() + ".hgrm")))) {
+                latencies.get(operation).outputPercentileDistribution(out, 1000.0);
+            }
+        }
+    }
+
+    /**
+     * @return one line per breached objective; empty when the run passed
+     */
+    List<String> breaches(LoadTestConfig config) {
+        List<String> breaches = new ArrayList<>();
+        for (Map.Entry<Operation, Map<String, Duration>> slo : config.slo().entrySet()) {
+            Histogram histogram = latencies.get(slo.getKey());
+            if (histogram.getTotalCount() == 0) {
+                continue;
+            }
+            for (Map.Entry<String, Duration> limit : slo.getValue().entrySet()) {
+                Double percentile = PERCENTILES.get(limit.getKey());
+                if (percentile == null) {
+                    throw new IllegalArgumentException("Unknown percentile " + limit.getKey() + ", use one of " + PERCENTILES.keySet());
+                }
+                double actual = millis(histogram, percentile);
+                if (actual > limit.getValue().toNanos() / 1_000_000d) {
+                    breaches.add(String.format(Locale.ROOT, "%s %s was %.2f ms, limit %d ms",
+                            slo.getKey().endpoint(), limit.getKey(), actual, limit.getValue().toMillis()));
+                }
+            }
+        }
+        long attempted = total() + rejected.sum();
+        double errorRate = attempted == 0 ? 0 : (double) totalErrors() / attempted;
+        if (errorRate > config.maxErrorRate()) {
+            breaches.add(String.format(Locale.ROOT, "error rate was %.4f, limit %.4f", errorRate, config.maxErrorRate()));
+        }
+        // skipped deletes were never meant to reach the server
+        long skippedTotal = skipped.values().stream().mapToLong(LongAdder::sum).sum();
+        double expected = attempted + skippedTotal == 0 ? 0 : config.rate() * attempted / (attempted + skippedTotal);
+        double throughput = total() / seconds();
+        if (throughput < expected * config.minThroughputRatio()) {
+            breaches.add(String.format(Locale.ROOT, "throughput was %.1f req/s, below %.0f%% of the offered %.1f req/s",
+                    throughput, config.minThroughputRatio() * 100, expected));
+        }
+        return breaches;
+    }
+
+    private static double millis(Histogram histogram, double percentile) {
+        return histogram.getValueAtPercentile(percentile) / 1000d;
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.user.loadtest;
+
+import com.example.user.UserApplication;
+import com.example.user.entity.User;
+import com.example.user.repository.UserRepository;
+import com.example.user.service.PasswordHasher;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.utility.DockerImageName;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Boots {@link UserApplication} against a throwaway database, seeds users, and drives the
+ * configured mix of requests over HTTP at a fixed rate (see {@link OpenModelDriver}).
+ * After a warm-up it reports throughput and p50/p99/p99.9 latency per endpoint, and exits
+ * with status 1 when a service level objective from the configuration was missed, which
+ * fails the Maven build.
+ * <p>
+ * The database is PostgreSQL in a Testcontainers container ({@code database=postgres},
+ * needs Docker), an existing database ({@code jdbc-url=...}), or the embedded H2 the tests
+ * use ({@code database=h2}). Only PostgreSQL numbers say anything about production.
+ */
+public class LoadTest {
+
+    public static void main(String[] args) throws Exception {
+        LoadTestConfig config = LoadTestConfig.load(args);
+        List<String> breaches;
+        try (Database database = Database.start(config)) {
+            ConfigurableApplicationContext context = new SpringApplicationBuilder(UserApplication.class)
+                    .run(applicationArguments(config, database));
+            try {
+                breaches = run(config, context);
+            } finally {
+                context.close();
+            }
+        }
+        if (!breaches.isEmpty()) {
+            System.out.println("SLO breached:");
+            breaches.forEach(breach -> System.out.println("  " + breach));
+            System.exit(1);
+        }
+        System.out.println("All SLOs met");
+        System.exit(0);
+    }
+
+    private static List<String> run(LoadTestConfig config, ConfigurableApplicationContext context) throws Exception {
+        long[] ids = seed(context, config.users());
+        int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+        HttpClient httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        UserTraffic traffic = new UserTraffic("http://localhost:" + port, ids, context.getBean(ObjectMapper.class));
+        OpenModelDriver driver = new OpenModelDriver(httpClient, traffic, config);
+
+        System.out.println("Offering " + config.rate() + " req/s with mix " + config.mix() + " against " + ids.length + " users");
+        if (!config.warmup().isZero()) {
+            System.out.println("Warming up for " + config.warmup());
+            driver.run(config.warmup());
+        }
+        System.out.println("Measuring for " + config.duration());
+        LatencyReport report = driver.run(config.duration());
+        report.print(System.out, config.rate());
+        report.write(config.reportDirectory());
+        System.out.println("Written to " + config.reportDirectory().toAbsolutePath());
+        return report.breaches(config);
+    }
+
+    /**
+     * All seeded users share one password, hashed once, so seeding does not take as long
+     * as hashing thousands of passwords would.
+     */
+    private static long[] seed(ConfigurableApplicationContext context, int users) {
+        String hash = context.getBean(PasswordHasher.class).encode(UserTraffic.PASSWORD);
+        List<User> seeded = context.getBean(UserRepository.class).saveAll(IntStream.range(0, users)
+                .mapToObj(i -> User.builder().name(UserTraffic.NAME_PREFIX + i).password(hash).build())
+                .toList());
+        return seeded.stream().mapToLong(User::getId).sorted().toArray();
+    }
+
+    /**
+     * Passed as command line arguments, which take precedence over every properties file.
+     * {@code spring.config.location} leaves out the test configuration on the classpath,
+     * so the application runs with its production settings unless {@code app.*} says
+     * otherwise.
+     */
+    private static String[] applicationArguments(LoadTestConfig config, Database database) {
+        List<String> arguments = new ArrayList<>(List.of(
+                "--spring.config.location=classpath:/",
+                "--server.port=0",
+                "--spring.datasource.url=" + database.jdbcUrl(),
+                "--spring.datasource.username=" + database.username(),
+                "--spring.datasource.password=" + database.password(),
+                "--spring.r2dbc.url=" + database.r2dbcUrl(),
+                "--spring.r2dbc.username=" + database.username(),
+                "--spring.r2dbc.password=" + database.password()));
+        for (Map.Entry<String, String> property : config.appProperties().entrySet()) {
+            arguments.add("--" + property.getKey() + "=" + property.getValue());
+        }
+        return arguments.toArray(String[]::new);
+    }
+
+    private record Database(String jdbcUrl, String r2dbcUrl, String username, String password,
+                            PostgreSQLContainer<?> container) implements AutoCloseable {
+        private static final String H2_OPTIONS = "MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+
+        static Database start(LoadTestConfig config) {
+            if (!config.jdbcUrl().isBlank()) {
+                return new Database(config.jdbcUrl(), config.jdbcUrl().replaceFirst("^jdbc:", "r2dbc:"),
+                        config.jdbcUsername(), config.jdbcPassword(), null);
+            }
+            return switch (config.database()) {
+                case "postgres" -> {
+                    PostgreSQLContainer<?> container = new PostgreSQLContainer<>(DockerImageName.parse(config.postgresImage()));
+                    container.start();
+                    String r2dbcUrl = "r2dbc:postgresql://" + container.getHost() + ":"
+                            + container.getMappedPort(PostgreSQLContainer.POSTGRESQL_PORT) + "/" + container.getDatabaseName();
+                    yield new Database(container.getJdbcUrl(), r2dbcUrl, container.getUsername(), container.getPassword(), container);
+                }
+                case "h2" -> new Database("jdbc:h2:mem:loadtest;" + H2_OPTIONS,
+                        "r2dbc:h2:mem:///loadtest?options=" + H2_OPTIONS, "sa", "", null);
+                default -> throw new IllegalArgumentException("Unknown database " + config.database() + ", use postgres or h2");
+            };
+        }
+
+        @Override
+        public void close() {
+            if (container != null) {
+                container.stop();
+            }
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.user.loadtest;
+
+import org.springframework.boot.convert.DurationStyle;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Settings of one run. Defaults come from {@code loadtest.properties} on the classpath,
+ * then from the file given with {@code --config=<file>}, then from {@code --<key>=<value>}
+ * arguments, so a production mix can be kept in a file and tweaked per run.
+ *
+ * @param rate        offered requests per second across all endpoints
+ * @param mix         relative weight of each operation
+ * @param slo         latency limits per operation, keyed by percentile ({@code p50}, {@code p99}, {@code p999})
+ * @param appProperties passed to the application as command line arguments
+ */
+public record LoadTestConfig(double rate,
+                             Duration warmup,
+                             Duration duration,
+                             int users,
+                             int maxInFlight,
+                             String database,
+                             String jdbcUrl,
+                             String jdbcUsername,
+                             String jdbcPassword,
+                             String postgresImage,
+                             Map<Operation, Integer> mix,
+                             Map<Operation, Map<String, Duration>> slo,
+                             double maxErrorRate,
+                             double minThroughputRatio,
+                             Map<String, String> appProperties,
+                             Path reportDirectory) {
+    static final String DEFAULTS = "loadtest.properties";
+    private static final String APP_PREFIX = "app.";
+    private static final String SLO_PREFIX = "slo.";
+
+    public static LoadTestConfig load(String[] args) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream defaults = LoadTestConfig.class.getClassLoader().getResourceAsStream(DEFAULTS)) {
+            if (defaults == null) {
+                throw new IllegalStateException(DEFAULTS + " is missing from the classpath");
+            }
+            properties.load(defaults);
+        }
+        Map<String, String> overrides = new LinkedHashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0) {
+                throw new IllegalArgumentException("Expected --key=value but got " + arg);
+            }
+            overrides.put(arg.substring(2, separator), arg.substring(separator + 1));
+        }
+        String file = overrides.remove("config");
+        if (file != null) {
+            try (Reader reader = Files.newBufferedReader(Path.of(file))) {
+                properties.load(reader);
+            }
+        }
+        properties.putAll(overrides);
+        return from(properties);
+    }
+
+    static LoadTestConfig from(Properties properties) {
+        Map<Operation, Integer> mix = new EnumMap<>(Operation.class);
+        for (String entry : properties.getProperty("mix").split(",")) {
+            String[] weight = entry.split(":");
+            mix.put(Operation.fromKey(weight[0]), Integer.parseInt(weight[1].trim()));
+        }
+
+        Map<Operation, Map<String, Duration>> slo = new EnumMap<>(Operation.class);
+        Map<String, String> appProperties = new LinkedHashMap<>();
+        for (String key : properties.stringPropertyNames()) {
+            String value = properties.getProperty(key);
+            if (key.startsWith(APP_PREFIX)) {
+                appProperties.put(key.substring(APP_PREFIX.length()), value);
+            } else if (key.startsWith(SLO_PREFIX) && key.indexOf('.', SLO_PREFIX.length()) > 0 && !value.isBlank()) {
+                String[] parts = key.substring(SLO_PREFIX.length()).split("\\.");
+                slo.computeIfAbsent(Operation.fromKey(parts[0]), operation -> new LinkedHashMap<>())
+                        .put(parts[1], DurationStyle.detectAndParse(value));
+            }
+        }
+
+        return new LoadTestConfig(
+                Double.parseDouble(properties.getProperty("rate")),
+                DurationStyle.detectAndParse(properties.getProperty("warmup")),
+                DurationStyle.detectAndParse(properties.getProperty("duration")),
+                Integer.parseInt(properties.getProperty("users")),
+                Integer.parseInt(properties.getProperty("max-in-flight")),
+                properties.getProperty("database"),
+                properties.getProperty("jdbc-url", ""),
+                properties.getProperty("jdbc-username", ""),
+                properties.getProperty("jdbc-password", ""),
+                properties.getProperty("postgres-image"),
+                mix,
+                slo,
+                Double.parseDouble(properties.getProperty("slo.error-rate")),
+                Double.parseDouble(properties.getProperty("slo.throughput-ratio")),
+                appProperties,
+                Path.of(properties.getProperty("report-directory")));
+    }
+}
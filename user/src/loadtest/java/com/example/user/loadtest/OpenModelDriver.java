@@ -0,0 +1,118 @@
+package com.example.user.loadtest;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sends requests at a fixed rate whatever the server does, like independent users would:
+ * request {@code n} is due at {@code start + n / rate} and goes out asynchronously at that
+ * time even if earlier ones are still waiting for their response. A closed loop of client
+ * threads would instead slow down together with the server and hide exactly the latency
+ * this is meant to find. Each request picks its operation at random by the weights of
+ * the mix.
+ */
+class OpenModelDriver {
+    private static final int LOGGED_FAILURES = 10;
+    private static final Duration DRAIN_TIMEOUT = Duration.ofSeconds(30);
+
+    private final HttpClient httpClient;
+    private final UserTraffic traffic;
+    private final double rate;
+    private final int maxInFlight;
+    private final Operation[] operations;
+    private final int[] cumulativeWeights;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger loggedFailures = new AtomicInteger();
+
+    OpenModelDriver(HttpClient httpClient, UserTraffic traffic, LoadTestConfig config) {
+        this.httpClient = httpClient;
+        this.traffic = traffic;
+        this.rate = config.rate();
+        this.maxInFlight = config.maxInFlight();
+        List<Operation> operations = new ArrayList<>();
+        List<Integer> weights = new ArrayList<>();
+        int total = 0;
+        for (Map.Entry<Operation, Integer> weight : config.mix().entrySet()) {
+            if (weight.getValue() > 0) {
+                total += weight.getValue();
+                operations.add(weight.getKey());
+                weights.add(total);
+            }
+        }
+        if (total == 0) {
+            throw new IllegalArgumentException("The mix needs at least one operation with a positive weight");
+        }
+        this.operations = operations.toArray(Operation[]::new);
+        this.cumulativeWeights = weights.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    LatencyReport run(Duration duration) throws InterruptedException {
+        long start = System.nanoTime();
+        long end = start + duration.toNanos();
+        LatencyReport report = new LatencyReport(start);
+        for (long n = 0; ; n++) {
+            long due = start + (long) (n * 1_000_000_000d / rate);
+            if (due >= end) {
+                break;
+            }
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            send(pick(), due, report);
+        }
+        report.finish(end);
+        drain();
+        return report;
+    }
+
+    private void send(Operation operation, long due, LatencyReport report) {
+        HttpRequest request = traffic.request(operation);
+        if (request == null) {
+            report.skipped(operation);
+            return;
+        }
+        if (inFlight.incrementAndGet() > maxInFlight) {
+            inFlight.decrementAndGet();
+            report.rejected(operation);
+            return;
+        }
+        httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString()).whenComplete((response, error) -> {
+            long latency = System.nanoTime() - due;
+            inFlight.decrementAndGet();
+            boolean success = error == null && response.statusCode() == operation.expectedStatus();
+            report.record(operation, latency, success);
+            if (response != null) {
+                traffic.completed(operation, response);
+            }
+            if (!success && loggedFailures.incrementAndGet() <= LOGGED_FAILURES) {
+                System.err.println(operation.endpoint() + " failed: "
+                        + (error != null ? error : response.statusCode() + " " + response.body()));
+            }
+        });
+    }
+
+    private Operation pick() {
+        int value = ThreadLocalRandom.current().nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        int i = 0;
+        while (value >= cumulativeWeights[i]) {
+            i++;
+        }
+        return operations[i];
+    }
+
+    private void drain() throws InterruptedException {
+        long deadline = System.nanoTime() + DRAIN_TIMEOUT.toNanos();
+        while (inFlight.get() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+}
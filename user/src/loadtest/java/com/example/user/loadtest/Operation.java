@@ -0,0 +1,44 @@
+package com.example.user.loadtest;
+
+import java.util.Locale;
+
+/**
+ * The {@code UserController} endpoints the load test drives, with the status that counts
+ * as success. Listing means one cursor page, as clients page through the users rather
+ * than fetching all of them.
+ */
+public enum Operation {
+    CREATE("POST /user", 201),
+    GET("GET /user/{id}", 200),
+    UPDATE("PUT /user/{id}", 200),
+    DELETE("DELETE /user/{id}", 200),
+    LIST("GET /user/page", 200),
+    SEARCH("GET /user/search", 200);
+
+    private final String endpoint;
+    private final int expectedStatus;
+
+    Operation(String endpoint, int expectedStatus) {
+        this.endpoint = endpoint;
+        this.expectedStatus = expectedStatus;
+    }
+
+    public String endpoint() {
+        return endpoint;
+    }
+
+    public int expectedStatus() {
+        return expectedStatus;
+    }
+
+    /**
+     * The name used in the configuration, e.g. {@code get} in {@code mix} and {@code slo.get.p99}.
+     */
+    public String key() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+
+    public static Operation fromKey(String key) {
+        return valueOf(key.trim().toUpperCase(Locale.ROOT));
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.user.loadtest;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Builds the requests of each operation. Reads and updates hit the seeded users, each
+ * request authenticated as a random one of them, so the credential cache sees a realistic
+ * spread of clients. Deletes only remove users this run created; when there are none left
+ * to delete the request is skipped and reported as such.
+ */
+class UserTraffic {
+    static final String PASSWORD = "load-test-password";
+    static final String NAME_PREFIX = "user";
+    private static final int PAGE_SIZE = 50;
+    private static final int SEARCH_LIMIT = 20;
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+
+    private final String baseUrl;
+    private final long[] seededIds;
+    private final String[] authorizations;
+    private final Queue<Long> created = new ConcurrentLinkedQueue<>();
+    private final ObjectMapper objectMapper;
+
+    UserTraffic(String baseUrl, long[] seededIds, ObjectMapper objectMapper) {
+        this.baseUrl = baseUrl;
+        this.seededIds = seededIds;
+        this.objectMapper = objectMapper;
+        this.authorizations = new String[seededIds.length];
+        for (int i = 0; i < seededIds.length; i++) {
+            authorizations[i] = "Basic " + Base64.getEncoder()
+                    .encodeToString((seededIds[i] + ":" + PASSWORD).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * @return the request, or null when the operation has nothing to act on
+     */
+    HttpRequest request(Operation operation) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long id = seededIds[random.nextInt(seededIds.length)];
+        return switch (operation) {
+            case CREATE -> json(newRequest(uri("/user")))
+                    .POST(body(Map.of("name", "load" + random.nextInt(1_000_000), "password", PASSWORD)))
+                    .build();
+            case GET -> authenticated(uri("/user/" + id)).GET().build();
+            case UPDATE -> json(authenticated(uri("/user/" + id)))
+                    .PUT(body(Map.of("id", id, "name", NAME_PREFIX + random.nextInt(seededIds.length), "password", PASSWORD)))
+                    .build();
+            case DELETE -> {
+                Long createdId = created.poll();
+                yield createdId == null ? null : authenticated(uri("/user/" + createdId)).DELETE().build();
+            }
+            case LIST -> authenticated(uri("/user/page?size=" + PAGE_SIZE + "&after="
+                    + (seededIds[0] + random.nextLong(seededIds[seededIds.length - 1] - seededIds[0] + 1)))).GET().build();
+            case SEARCH -> authenticated(uri("/user/search?match=PREFIX&limit=" + SEARCH_LIMIT
+                    + "&name=" + NAME_PREFIX + random.nextInt(100))).GET().build();
+        };
+    }
+
+    /**
+     * Remembers created users so deletes have something to remove.
+     */
+    void completed(Operation operation, HttpResponse<String> response) {
+        if (operation == Operation.CREATE && response.statusCode() == Operation.CREATE.expectedStatus()) {
+            try {
+                JsonNode user = objectMapper.readTree(response.body());
+                if (user.hasNonNull("id")) {
+                    created.add(user.get("id").asLong());
+                }
+            } catch (JsonProcessingException e) {
+                // not worth failing the run over; the user is just never deleted
+            }
+        }
+    }
+
+    private HttpRequest.Builder authenticated(URI uri) {
+        String authorization = authorizations[ThreadLocalRandom.current().nextInt(authorizations.length)];
+        return newRequest(uri).header("Authorization", authorization);
+    }
+
+    private static HttpRequest.Builder newRequest(URI uri) {
+        return HttpRequest.newBuilder(uri).timeout(REQUEST_TIMEOUT);
+    }
+
+    private static HttpRequest.Builder json(HttpRequest.Builder builder) {
+        return builder.header("Content-Type", "application/json");
+    }
+
+    private HttpRequest.BodyPublisher body(Map<String, ?> value) {
+        try {
+            return HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(value));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private URI uri(String path) {
+        return URI.create(baseUrl + path);
+    }
+}
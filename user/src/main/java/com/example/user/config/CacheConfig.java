@@ -0,0 +1,15 @@
+package com.example.user.config;
+
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Enables the in-process user cache. Size, TTL and statistics are set through
+ * {@code spring.cache.caffeine.spec}; hit, miss and eviction counts are published
+ * as {@code cache.*} metrics on the actuator.
+ */
+@Configuration
+@EnableCaching
+public class CacheConfig {
+    public static final String USERS_CACHE = "users";
+}
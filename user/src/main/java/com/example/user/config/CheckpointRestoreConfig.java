@@ -0,0 +1,67 @@
+package com.example.user.config;
+
+import com.example.user.security.CredentialCache;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.Lifecycle;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * CRaC checkpoint and restore. Spring stops every running {@link Lifecycle} before the
+ * checkpoint and starts it again on restore: the Hikari pools suspend and close their
+ * connections (Spring Boot's {@code HikariCheckpointRestoreLifecycle}, and
+ * {@code ReplicaRoutingDataSource} for the replicas and {@code ShardRoutingDataSource}
+ * for the shards), Tomcat releases its port and the
+ * schedulers pause. The {@code EntityManagerFactory} holds no connections of its own, so
+ * it stays open with its metamodel and compiled queries intact.
+ * <p>
+ * A restored image can be days old and shared by many instances, so the caches are
+ * cleared and the credential cache gets a new key.
+ */
+@Configuration
+public class CheckpointRestoreConfig {
+
+    @Bean
+    public Lifecycle cacheResetOnRestore(CacheManager cacheManager, CredentialCache credentialCache) {
+        return new CacheReset(cacheManager, credentialCache);
+    }
+
+    @Slf4j
+    static class CacheReset implements Lifecycle {
+        private final CacheManager cacheManager;
+        private final CredentialCache credentialCache;
+        private volatile boolean running = true;
+
+        CacheReset(CacheManager cacheManager, CredentialCache credentialCache) {
+            this.cacheManager = cacheManager;
+            this.credentialCache = credentialCache;
+        }
+
+        @Override
+        public void start() {
+            if (!running) {
+                log.info("Clearing caches after restore");
+                cacheManager.getCacheNames().forEach(name -> {
+                    Cache cache = cacheManager.getCache(name);
+                    if (cache != null) {
+                        cache.clear();
+                    }
+                });
+                credentialCache.reset();
+            }
+            running = true;
+        }
+
+        @Override
+        public void stop() {
+            running = false;
+        }
+
+        @Override
+        public boolean isRunning() {
+            return running;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.user.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.jdbc.metadata.CompositeDataSourcePoolMetadataProvider;
+import org.springframework.boot.jdbc.metadata.DataSourcePoolMetadata;
+import org.springframework.boot.jdbc.metadata.DataSourcePoolMetadataProvider;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+import java.util.Map;
+
+/**
+ * Publishes how saturated each connection pool is, as {@code jdbc.connections.usage}: the
+ * share of its connections in use, from 0 to 1, next to Spring Boot's
+ * {@code jdbc.connections.active} and {@code max}. The time requests wait for a connection
+ * is Hikari's {@code hikaricp.connections.acquire} timer, and {@code pending} the number
+ * waiting; both are also published for the replica pools, which are not beans.
+ */
+@Configuration
+public class DataSourceMetricsConfig {
+    private static final String DATASOURCE_SUFFIX = "datasource";
+
+    @Bean
+    public MeterBinder dataSourceUsageMetrics(Map<String, DataSource> dataSources,
+                                              ObjectProvider<DataSourcePoolMetadataProvider> metadataProviders) {
+        DataSourcePoolMetadataProvider provider = new CompositeDataSourcePoolMetadataProvider(metadataProviders.orderedStream().toList());
+        return registry -> dataSources.forEach((beanName, dataSource) -> {
+            DataSourcePoolMetadata metadata = provider.getDataSourcePoolMetadata(dataSource);
+            if (metadata != null) {
+                Gauge.builder("jdbc.connections.usage", metadata, DataSourceMetricsConfig::usage)
+                        .tag("name", name(beanName))
+                        .description("Share of the pool's connections in use")
+                        .register(registry);
+            }
+        });
+    }
+
+    private static double usage(DataSourcePoolMetadata metadata) {
+        Float usage = metadata.getUsage();
+        return usage == null ? Double.NaN : usage;
+    }
+
+    /**
+     * Same naming as Spring Boot's pool metrics, so the gauges line up by tag.
+     */
+    private static String name(String beanName) {
+        if (beanName.length() > DATASOURCE_SUFFIX.length() && beanName.toLowerCase().endsWith(DATASOURCE_SUFFIX)) {
+            return beanName.substring(0, beanName.length() - DATASOURCE_SUFFIX.length());
+        }
+        return beanName;
+    }
+}
@@ -0,0 +1,29 @@
+package com.example.user.config;
+
+import com.example.user.dto.UserView;
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import org.springframework.boot.autoconfigure.jackson.Jackson2ObjectMapperBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Set;
+
+@Configuration
+public class JacksonConfig {
+
+    /**
+     * Serializes every {@link UserView} property unless a request asks for fewer.
+     */
+    @Bean
+    public Jackson2ObjectMapperBuilderCustomizer userFieldsFilterCustomizer() {
+        return builder -> builder.filters(userFields(null));
+    }
+
+    public static SimpleFilterProvider userFields(Set<String> fields) {
+        SimpleBeanPropertyFilter filter = fields == null || fields.isEmpty()
+                ? SimpleBeanPropertyFilter.serializeAll()
+                : SimpleBeanPropertyFilter.filterOutAllExcept(fields);
+        return new SimpleFilterProvider().addFilter(UserView.FIELDS_FILTER, filter);
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.user.config;
+
+import ch.qos.logback.classic.AsyncAppender;
+import com.example.user.dto.BatchItemResult;
+import com.example.user.dto.BatchResult;
+import com.example.user.dto.ChangePage;
+import com.example.user.dto.ImportResult;
+import com.example.user.dto.LoginRequest;
+import com.example.user.dto.UserChange;
+import com.example.user.dto.UserPage;
+import com.example.user.dto.UserView;
+import com.example.user.entity.SnowflakeOrSequenceGenerator;
+import com.example.user.entity.User;
+import com.example.user.entity.UserChangeEvent;
+import com.example.user.filter.SampledDebugTurboFilter;
+import net.logstash.logback.encoder.LogstashEncoder;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.springframework.aot.hint.annotation.RegisterReflectionForBinding;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.ImportRuntimeHints;
+
+/**
+ * Reflection and resource hints for the native image that Spring AOT cannot infer.
+ * <ul>
+ * <li>JSON bodies wrapped in {@code MappingJacksonValue} or written by hand to a stream
+ * are invisible to the controller scan, so every DTO is registered for binding. This
+ * includes the Lombok-generated getters, setters and constructors of {@link User}. Lombok
+ * itself runs at compile time and needs nothing at runtime.</li>
+ * <li>JPQL constructor expressions ({@code select new ...UserView(...)}) instantiate the
+ * DTOs reflectively.</li>
+ * <li>Hibernate reads entity fields and Bean Validation checks {@code @Valid User}
+ * bodies, both through declared fields and methods.</li>
+ * <li>Hibernate instantiates the id generator named in {@code @GenericGenerator}.</li>
+ * <li>Flyway scripts live in per-vendor folders below the default location.</li>
+ * <li>Logback creates the appender, encoder and turbo filter named in
+ * {@code logback-spring.xml} by class name and configures them through their setters.</li>
+ * <li>springdoc ships hints for its own classes; the Swagger UI webjar is added here.</li>
+ * </ul>
+ */
+@Configuration
+@ImportRuntimeHints(NativeHintsConfig.UserRuntimeHints.class)
+@RegisterReflectionForBinding({User.class, UserView.class, UserPage.class, BatchResult.class, BatchItemResult.class,
+        ChangePage.class, UserChange.class, ImportResult.class, LoginRequest.class})
+public class NativeHintsConfig {
+
+    static class UserRuntimeHints implements RuntimeHintsRegistrar {
+        @Override
+        public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+            for (Class<?> entity : new Class<?>[]{User.class, UserChangeEvent.class}) {
+                hints.reflection().registerType(entity, MemberCategory.DECLARED_FIELDS,
+                        MemberCategory.INVOKE_DECLARED_CONSTRUCTORS, MemberCategory.INVOKE_DECLARED_METHODS);
+            }
+            hints.reflection().registerType(SnowflakeOrSequenceGenerator.class, MemberCategory.INVOKE_DECLARED_CONSTRUCTORS);
+            for (Class<?> projection : new Class<?>[]{UserView.class, UserChange.class}) {
+                hints.reflection().registerType(projection, MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS);
+            }
+            for (Class<?> logging : new Class<?>[]{AsyncAppender.class, LogstashEncoder.class, SampledDebugTurboFilter.class}) {
+                hints.reflection().registerType(logging, MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS,
+                        MemberCategory.INVOKE_PUBLIC_METHODS);
+            }
+            hints.resources()
+                    .registerPattern("db/migration/common/*.sql")
+                    .registerPattern("db/migration/postgresql/*.sql")
+                    .registerPattern("db/migration/h2/*.sql")
+                    .registerPattern("META-INF/resources/webjars/swagger-ui/*");
+        }
+    }
+}
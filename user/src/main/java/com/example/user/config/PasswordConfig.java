@@ -0,0 +1,123 @@
+package com.example.user.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.security.crypto.argon2.Argon2PasswordEncoder;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.DelegatingPasswordEncoder;
+import org.springframework.security.crypto.password.NoOpPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.crypto.password.Pbkdf2PasswordEncoder;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Password hashing setup. {@code user.password.encoder} picks the algorithm new hashes
+ * are written with; hashes are stored with an {@code {id}} prefix so older algorithms and
+ * costs keep verifying and can be detected for re-hashing. BCrypt and Argon2 keep their
+ * cost in the hash itself; PBKDF2 hashes are written as {@code {pbkdf2}<iterations>$<hash>}
+ * for the same reason.
+ */
+@Configuration
+public class PasswordConfig {
+    public static final String BCRYPT = "bcrypt";
+    public static final String PBKDF2 = "pbkdf2";
+    public static final String ARGON2 = "argon2";
+    public static final Set<String> ENCODER_IDS = Set.of(BCRYPT, PBKDF2, ARGON2);
+
+    @Bean
+    public PasswordEncoder passwordEncoder(@Value("${user.password.encoder:bcrypt}") String encoder,
+                                           @Value("${user.password.bcrypt.strength:10}") int bcryptStrength,
+                                           @Value("${user.password.pbkdf2.iterations:310000}") int pbkdf2Iterations,
+                                           @Value("${user.password.pbkdf2.legacy-iterations:310000}") int pbkdf2LegacyIterations,
+                                           @Value("${user.password.argon2.memory-kib:19456}") int argon2MemoryKib,
+                                           @Value("${user.password.argon2.iterations:2}") int argon2Iterations) {
+        return delegatingEncoder(encoder, bcryptStrength, pbkdf2Iterations, pbkdf2LegacyIterations, argon2MemoryKib,
+                argon2Iterations);
+    }
+
+    public static PasswordEncoder delegatingEncoder(String encoder, int bcryptStrength, int pbkdf2Iterations,
+                                                    int argon2MemoryKib, int argon2Iterations) {
+        return delegatingEncoder(encoder, bcryptStrength, pbkdf2Iterations, pbkdf2Iterations, argon2MemoryKib,
+                argon2Iterations);
+    }
+
+    @SuppressWarnings("deprecation")
+    public static PasswordEncoder delegatingEncoder(String encoder, int bcryptStrength, int pbkdf2Iterations,
+                                                    int pbkdf2LegacyIterations, int argon2MemoryKib,
+                                                    int argon2Iterations) {
+        Map<String, PasswordEncoder> encoders = Map.of(
+                BCRYPT, new BCryptPasswordEncoder(bcryptStrength),
+                PBKDF2, new Pbkdf2WithCost(pbkdf2Iterations, pbkdf2LegacyIterations),
+                ARGON2, new Argon2PasswordEncoder(16, 32, 1, argon2MemoryKib, argon2Iterations));
+        DelegatingPasswordEncoder delegatingEncoder = new DelegatingPasswordEncoder(encoder, encoders);
+        // Rows written before hashing existed hold the plain password without an {id} prefix.
+        // They still verify, and are reported as needing an upgrade so the next login hashes them.
+        delegatingEncoder.setDefaultPasswordEncoderForMatches(NoOpPasswordEncoder.getInstance());
+        return delegatingEncoder;
+    }
+
+    /**
+     * PBKDF2-HMAC-SHA256 with the iteration count written in front of the hash, so hashes
+     * keep verifying after {@code user.password.pbkdf2.iterations} changes and those with a
+     * lower count are re-hashed on the next login. Hashes from before the count was stored
+     * are checked with {@code user.password.pbkdf2.legacy-iterations}, the count they were
+     * written with, and always need an upgrade.
+     */
+    static final class Pbkdf2WithCost implements PasswordEncoder {
+        static final int MAX_ITERATIONS = 10_000_000;
+        private static final char SEPARATOR = '$';
+
+        private final int iterations;
+        private final int legacyIterations;
+        private final Map<Integer, Pbkdf2PasswordEncoder> encoders = new ConcurrentHashMap<>();
+
+        Pbkdf2WithCost(int iterations, int legacyIterations) {
+            this.iterations = iterations;
+            this.legacyIterations = legacyIterations;
+        }
+
+        @Override
+        public String encode(CharSequence rawPassword) {
+            return iterations + String.valueOf(SEPARATOR) + encoder(iterations).encode(rawPassword);
+        }
+
+        @Override
+        public boolean matches(CharSequence rawPassword, String encodedPassword) {
+            int cost = cost(encodedPassword);
+            if (cost < 1 || cost > MAX_ITERATIONS) {
+                return false;
+            }
+            return encoder(cost).matches(rawPassword, encodedPassword.substring(encodedPassword.indexOf(SEPARATOR) + 1));
+        }
+
+        @Override
+        public boolean upgradeEncoding(String encodedPassword) {
+            return encodedPassword.indexOf(SEPARATOR) < 0 || cost(encodedPassword) < iterations;
+        }
+
+        /**
+         * The stored iteration count, the legacy count when there is none, or -1 when it
+         * cannot be read.
+         */
+        private int cost(String encodedPassword) {
+            int separator = encodedPassword.indexOf(SEPARATOR);
+            if (separator < 0) {
+                return legacyIterations;
+            }
+            try {
+                return Integer.parseInt(encodedPassword, 0, separator, 10);
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+
+        private Pbkdf2PasswordEncoder encoder(int cost) {
+            return encoders.computeIfAbsent(cost, c -> new Pbkdf2PasswordEncoder("", 16, c,
+                    Pbkdf2PasswordEncoder.SecretKeyFactoryAlgorithm.PBKDF2WithHmacSHA256));
+        }
+    }
+}
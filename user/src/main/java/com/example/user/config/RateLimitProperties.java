@@ -0,0 +1,29 @@
+package com.example.user.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Rate and concurrency limits under {@code user.rate-limit}, one budget for reads
+ * ({@code GET}, {@code HEAD}) and one for writes. Rates are per second; a burst is how
+ * many requests may arrive at once after an idle period. Per-client buckets are dropped
+ * after {@code client-expiry} without requests.
+ */
+@ConfigurationProperties("user.rate-limit")
+public record RateLimitProperties(@DefaultValue("true") boolean enabled,
+                                  @DefaultValue("10m") Duration clientExpiry,
+                                  @DefaultValue("100000") int maxClients,
+                                  @DefaultValue Budget read,
+                                  @DefaultValue Budget write) {
+
+    public record Budget(@DefaultValue("1000") double globalRate,
+                         @DefaultValue("200") int globalBurst,
+                         @DefaultValue("50") double clientRate,
+                         @DefaultValue("20") int clientBurst,
+                         @DefaultValue("4") int minConcurrency,
+                         @DefaultValue("200") int maxConcurrency,
+                         @DefaultValue("250ms") Duration targetLatency) {
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.user.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.spi.ConnectionFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.r2dbc.R2dbcProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.jdbc.HikariCheckpointRestoreLifecycle;
+import org.springframework.boot.r2dbc.ConnectionFactoryBuilder;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.r2dbc.connection.R2dbcTransactionManager;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.transaction.reactive.TransactionalOperator;
+
+import javax.sql.DataSource;
+
+/**
+ * Only active when the application runs as a reactive web application, which the
+ * {@code reactive} profile switches on with {@code spring.main.web-application-type}.
+ * The user endpoints then run on Netty and R2DBC, configured under {@code spring.r2dbc.*}.
+ * The JDBC pool stays for Flyway, authentication and the outbox relay, so it can be small.
+ * <p>
+ * Spring Boot's R2DBC auto-configuration is excluded in {@code application.properties}: it
+ * would need an R2DBC url on the servlet stack too, and its {@code R2dbcTransactionManager}
+ * bean would stop the JPA transaction manager from being created. Transactions here go
+ * through the {@link TransactionalOperator} instead, whose manager is not a bean.
+ */
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@EnableConfigurationProperties({R2dbcProperties.class, DataSourceProperties.class})
+public class ReactiveConfig {
+    private static final String WITHOUT_REPLICAS = "'${user.datasource.replicas[0].url:}'.isEmpty()";
+
+    /**
+     * Tomcat is on the classpath for the servlet stack and would otherwise be picked for
+     * the reactive one as well.
+     */
+    @Bean
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+
+    /**
+     * Spring Boot backs off from configuring JDBC as soon as there is an R2DBC
+     * {@link ConnectionFactory}, so the pool is declared here, bound like Boot's own. With
+     * read replicas {@link ReplicaRoutingConfig} declares it instead.
+     */
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    @ConditionalOnExpression(WITHOUT_REPLICAS)
+    public HikariDataSource dataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    @Bean
+    @ConditionalOnExpression(WITHOUT_REPLICAS)
+    public HikariCheckpointRestoreLifecycle dataSourceCheckpointRestoreLifecycle(DataSource dataSource) {
+        return new HikariCheckpointRestoreLifecycle(dataSource);
+    }
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionPool connectionFactory(R2dbcProperties properties) {
+        ConnectionFactory connectionFactory = ConnectionFactoryBuilder.withUrl(properties.getUrl())
+                .username(properties.getUsername())
+                .password(properties.getPassword())
+                .build();
+        R2dbcProperties.Pool pool = properties.getPool();
+        ConnectionPoolConfiguration.Builder configuration = ConnectionPoolConfiguration.builder(connectionFactory)
+                .name(properties.getName() != null ? properties.getName() : "r2dbc")
+                .initialSize(pool.getInitialSize())
+                .maxSize(pool.getMaxSize())
+                .maxIdleTime(pool.getMaxIdleTime())
+                .maxAcquireTime(pool.getMaxAcquireTime())
+                .validationDepth(pool.getValidationDepth());
+        if (pool.getValidationQuery() != null) {
+            configuration.validationQuery(pool.getValidationQuery());
+        }
+        return new ConnectionPool(configuration.build());
+    }
+
+    @Bean
+    public DatabaseClient databaseClient(ConnectionFactory connectionFactory) {
+        return DatabaseClient.create(connectionFactory);
+    }
+
+    @Bean
+    public TransactionalOperator transactionalOperator(ConnectionFactory connectionFactory) {
+        return TransactionalOperator.create(new R2dbcTransactionManager(connectionFactory));
+    }
+}
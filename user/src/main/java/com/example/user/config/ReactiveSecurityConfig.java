@@ -0,0 +1,68 @@
+package com.example.user.config;
+
+import com.example.user.security.CredentialCache;
+import com.example.user.security.UserAccountService;
+import com.example.user.service.PasswordHasher;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpMethod;
+import org.springframework.security.authentication.ReactiveAuthenticationManager;
+import org.springframework.security.authentication.ReactiveAuthenticationManagerAdapter;
+import org.springframework.security.authorization.AuthorityReactiveAuthorizationManager;
+import org.springframework.security.authorization.AuthorizationDecision;
+import org.springframework.security.authorization.ReactiveAuthorizationManager;
+import org.springframework.security.config.web.server.ServerHttpSecurity;
+import org.springframework.security.web.server.SecurityWebFilterChain;
+import org.springframework.security.web.server.authorization.AuthorizationContext;
+import org.springframework.security.web.server.context.NoOpServerSecurityContextRepository;
+import reactor.core.publisher.Mono;
+
+/**
+ * {@link SecurityConfig} for the reactive stack: the same open endpoints, the same
+ * ownership and admin rules, and the same cached HTTP basic check. A cache hit answers without blocking; a miss loads the user
+ * over JDBC and checks the hash, which the adapter moves off the event loop onto the
+ * bounded elastic scheduler. There is no rate limiter in front of the reactive endpoints.
+ */
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveSecurityConfig {
+
+    @Bean
+    public SecurityWebFilterChain securityWebFilterChain(ServerHttpSecurity http,
+                                                         ReactiveAuthenticationManager authenticationManager) {
+        return http.authorizeExchange(exchanges -> exchanges
+                        .pathMatchers(HttpMethod.GET, "/user", "/user/page").hasRole(UserAccountService.ROLE_ADMIN)
+                        .pathMatchers(HttpMethod.POST, "/user", "/user/*/login").permitAll()
+                        .pathMatchers(HttpMethod.PUT, "/user/{id}").access(selfOrAdmin())
+                        .pathMatchers(HttpMethod.DELETE, "/user/{id}").access(selfOrAdmin())
+                        .pathMatchers("/actuator/health/**", "/error").permitAll()
+                        .pathMatchers("/actuator/**").hasRole(UserAccountService.ROLE_ADMIN)
+                        .anyExchange().authenticated())
+                .httpBasic(basic -> basic.authenticationManager(authenticationManager))
+                .csrf(ServerHttpSecurity.CsrfSpec::disable)
+                .securityContextRepository(NoOpServerSecurityContextRepository.getInstance())
+                .build();
+    }
+
+    private static ReactiveAuthorizationManager<AuthorizationContext> selfOrAdmin() {
+        ReactiveAuthorizationManager<AuthorizationContext> admin =
+                AuthorityReactiveAuthorizationManager.hasRole(UserAccountService.ROLE_ADMIN);
+        return (authentication, context) -> authentication
+                .filter(user -> SecurityConfig.isSelf(user, (String) context.getVariables().get("id")))
+                .map(user -> new AuthorizationDecision(true))
+                .switchIfEmpty(Mono.defer(() -> admin.check(authentication, context)));
+    }
+
+    /**
+     * A bean here, unlike on the servlet stack, so Spring Boot does not add its generated
+     * in-memory user.
+     */
+    @Bean
+    public ReactiveAuthenticationManager reactiveAuthenticationManager(UserAccountService userAccountService,
+                                                                       PasswordHasher passwordHasher,
+                                                                       CredentialCache credentialCache) {
+        return new ReactiveAuthenticationManagerAdapter(
+                SecurityConfig.authenticationManager(userAccountService, passwordHasher, credentialCache));
+    }
+}
@@ -0,0 +1,21 @@
+package com.example.user.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Read replicas under {@code user.datasource}. Username and password default to the
+ * primary's. The read-your-writes window should be longer than the usual replication lag.
+ */
+@ConfigurationProperties("user.datasource")
+public record ReplicaProperties(List<Replica> replicas,
+                                @DefaultValue("5s") Duration healthCheckInterval,
+                                @DefaultValue("5s") Duration readYourWritesWindow) {
+
+    public record Replica(String url, String username, String password,
+                          @DefaultValue("10") int maximumPoolSize) {
+    }
+}
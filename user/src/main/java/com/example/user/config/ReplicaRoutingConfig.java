@@ -0,0 +1,86 @@
+package com.example.user.config;
+
+import com.example.user.datasource.ReadYourWritesTracker;
+import com.example.user.datasource.ReplicaRoutingDataSource;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import net.ttddyy.observation.boot.autoconfigure.DataSourceObservationBeanPostProcessor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.flyway.FlywayDataSource;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.jdbc.HikariCheckpointRestoreLifecycle;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Only active when at least one {@code user.datasource.replicas[n].url} is set. The primary
+ * keeps using {@code spring.datasource.*} and {@code spring.datasource.hikari.*}; each
+ * replica gets its own read-only Hikari pool, set up like the primary's (see
+ * {@link SecondaryPools}). Flyway only migrates the primary.
+ * <p>
+ * JDBC observations wrap the primary and replica pools rather than the routing data
+ * source: they read the connection's metadata as soon as it is handed out, which would
+ * defeat the lazy connection and pin every transaction to the primary.
+ */
+@Configuration
+@ConditionalOnProperty("user.datasource.replicas[0].url")
+@EnableConfigurationProperties(ReplicaProperties.class)
+public class ReplicaRoutingConfig {
+
+    @Bean
+    @FlywayDataSource
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    /**
+     * Takes the place of Spring Boot's own lifecycle, which would look at the routing data
+     * source and find no Hikari pool behind it. The replica pools are handled by
+     * {@link ReplicaRoutingDataSource} itself.
+     */
+    @Bean
+    public HikariCheckpointRestoreLifecycle primaryCheckpointRestoreLifecycle(
+            @Qualifier("primaryDataSource") DataSource primaryDataSource) {
+        return new HikariCheckpointRestoreLifecycle(primaryDataSource);
+    }
+
+    @Bean
+    public ReplicaRoutingDataSource replicaRoutingDataSource(@Qualifier("primaryDataSource") DataSource primaryDataSource,
+                                                             DataSourceProperties primaryProperties,
+                                                             ReplicaProperties replicaProperties,
+                                                             Environment environment,
+                                                             ObjectProvider<MeterRegistry> meterRegistry,
+                                                             ObjectProvider<DataSourceObservationBeanPostProcessor> observation) {
+        SecondaryPools secondaryPools = new SecondaryPools(primaryProperties, environment, meterRegistry, observation);
+        List<ReplicaProperties.Replica> replicas = replicaProperties.replicas();
+        Map<String, DataSource> pools = new LinkedHashMap<>();
+        for (int i = 0; i < replicas.size(); i++) {
+            ReplicaProperties.Replica replica = replicas.get(i);
+            String poolName = "replica-" + i;
+            pools.put(poolName, secondaryPools.create(poolName, replica.url(), replica.username(), replica.password(),
+                    replica.maximumPoolSize(), true));
+        }
+        return new ReplicaRoutingDataSource(primaryDataSource, pools,
+                new ReadYourWritesTracker(replicaProperties.readYourWritesWindow()),
+                replicaProperties.healthCheckInterval());
+    }
+
+    @Bean
+    @Primary
+    public DataSource lazyRoutingDataSource(ReplicaRoutingDataSource replicaRoutingDataSource) {
+        return new LazyConnectionDataSourceProxy(replicaRoutingDataSource);
+    }
+}
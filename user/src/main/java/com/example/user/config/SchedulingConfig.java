@@ -0,0 +1,14 @@
+package com.example.user.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Runs the user change relay and outbox purge; intervals are set with
+ * {@code user.changes.relay-interval} and {@code user.changes.purge-interval}, as ISO-8601
+ * durations since {@code @Scheduled} does not read the {@code 200ms} style.
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
@@ -0,0 +1,64 @@
+package com.example.user.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import net.ttddyy.observation.boot.autoconfigure.DataSourceObservationBeanPostProcessor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.core.env.Environment;
+
+import javax.sql.DataSource;
+import java.util.Map;
+
+import static java.util.Objects.requireNonNullElse;
+
+/**
+ * Hikari pools for databases next to {@code spring.datasource}: read replicas and shards.
+ * They are not beans, so what Spring Boot does for its own pool is done here: they share
+ * its driver properties, auto-commit mode and suspendability, publish {@code hikaricp.*}
+ * metrics under their pool name and are wrapped for JDBC observations. Username and
+ * password default to the main pool's.
+ */
+final class SecondaryPools {
+    private final DataSourceProperties mainProperties;
+    private final Map<String, String> driverProperties;
+    private final boolean autoCommit;
+    private final boolean allowPoolSuspension;
+    private final ObjectProvider<MeterRegistry> meterRegistry;
+    private final ObjectProvider<DataSourceObservationBeanPostProcessor> observation;
+
+    SecondaryPools(DataSourceProperties mainProperties, Environment environment,
+                   ObjectProvider<MeterRegistry> meterRegistry,
+                   ObjectProvider<DataSourceObservationBeanPostProcessor> observation) {
+        Binder binder = Binder.get(environment);
+        this.mainProperties = mainProperties;
+        this.driverProperties = binder
+                .bind("spring.datasource.hikari.data-source-properties", Bindable.mapOf(String.class, String.class))
+                .orElse(Map.of());
+        this.autoCommit = binder.bind("spring.datasource.hikari.auto-commit", Boolean.class).orElse(true);
+        this.allowPoolSuspension = binder.bind("spring.datasource.hikari.allow-pool-suspension", Boolean.class).orElse(false);
+        this.meterRegistry = meterRegistry;
+        this.observation = observation;
+    }
+
+    DataSource create(String poolName, String url, String username, String password, int maximumPoolSize, boolean readOnly) {
+        HikariDataSource pool = new HikariDataSource();
+        pool.setPoolName(poolName);
+        pool.setJdbcUrl(url);
+        pool.setUsername(requireNonNullElse(username, mainProperties.determineUsername()));
+        pool.setPassword(requireNonNullElse(password, mainProperties.determinePassword()));
+        pool.setMaximumPoolSize(maximumPoolSize);
+        pool.setReadOnly(readOnly);
+        pool.setAutoCommit(autoCommit);
+        driverProperties.forEach(pool::addDataSourceProperty);
+        pool.setAllowPoolSuspension(allowPoolSuspension);
+        meterRegistry.ifAvailable(registry -> pool.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(registry)));
+        return observation.stream()
+                .map(processor -> (DataSource) processor.postProcessAfterInitialization(pool, poolName))
+                .findFirst()
+                .orElse(pool);
+    }
+}
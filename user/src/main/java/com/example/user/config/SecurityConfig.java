@@ -0,0 +1,139 @@
+package com.example.user.config;
+
+import com.example.user.filter.RateLimitFilter;
+import com.example.user.security.CachingAuthenticationProvider;
+import com.example.user.security.CredentialCache;
+import com.example.user.security.UserAccountService;
+import com.example.user.service.PasswordHasher;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.web.ServerProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpMethod;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.ProviderManager;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.authorization.AuthorityAuthorizationManager;
+import org.springframework.security.authorization.AuthorizationDecision;
+import org.springframework.security.authorization.AuthorizationManager;
+import org.springframework.security.config.annotation.web.builders.HttpSecurity;
+import org.springframework.security.config.annotation.web.configurers.AbstractHttpConfigurer;
+import org.springframework.security.config.http.SessionCreationPolicy;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.access.intercept.RequestAuthorizationContext;
+import org.springframework.security.web.authentication.www.BasicAuthenticationFilter;
+
+import static org.springframework.security.config.Customizer.withDefaults;
+
+/**
+ * Stateless HTTP basic authentication against the user table, with the user id as
+ * username. Signing up and the login endpoint are open, everything else needs
+ * credentials. A user may only update or delete itself; bulk writes, import, every
+ * endpoint that lists all users (list, pages, stream, export) and the actuator endpoints
+ * other than health need the admin role. Repeat requests are answered from the {@link CredentialCache}, so only the
+ * first request of a client within the cache TTL loads the user and checks its hash.
+ * The rate limiter sits ahead of authentication, apart from its per-client check, which
+ * needs the principal.
+ */
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@EnableConfigurationProperties(RateLimitProperties.class)
+public class SecurityConfig {
+
+    @Bean
+    public SecurityFilterChain securityFilterChain(HttpSecurity http, RateLimitProperties rateLimitProperties,
+                                                   MeterRegistry meterRegistry, UserAccountService userAccountService,
+                                                   PasswordHasher passwordHasher, CredentialCache credentialCache,
+                                                   ServerProperties serverProperties)
+            throws Exception {
+        http.authorizeHttpRequests(requests -> requests
+                        .requestMatchers("/user/batch", "/user/import", "/user/export").hasRole(UserAccountService.ROLE_ADMIN)
+                        .requestMatchers(HttpMethod.GET, "/user", "/user/page", "/user/stream")
+                        .hasRole(UserAccountService.ROLE_ADMIN)
+                        .requestMatchers(HttpMethod.POST, "/user", "/user/*/login").permitAll()
+                        .requestMatchers(HttpMethod.PUT, "/user/{id}").access(selfOrAdmin())
+                        .requestMatchers(HttpMethod.DELETE, "/user/{id}").access(selfOrAdmin())
+                        .requestMatchers("/actuator/health/**", "/error").permitAll()
+                        .requestMatchers("/actuator/**").hasRole(UserAccountService.ROLE_ADMIN)
+                        .anyRequest().authenticated())
+                .httpBasic(withDefaults())
+                .csrf(AbstractHttpConfigurer::disable)
+                .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
+                .authenticationManager(authenticationManager(userAccountService, passwordHasher, credentialCache));
+        if (rateLimitProperties.enabled()) {
+            ServerProperties.ForwardHeadersStrategy forwardHeaders = serverProperties.getForwardHeadersStrategy();
+            RateLimitFilter rateLimitFilter = new RateLimitFilter(rateLimitProperties, meterRegistry,
+                    forwardHeaders != null && forwardHeaders != ServerProperties.ForwardHeadersStrategy.NONE);
+            http.addFilterBefore(rateLimitFilter, BasicAuthenticationFilter.class)
+                    .addFilterAfter(rateLimitFilter.clientLimitFilter(), BasicAuthenticationFilter.class);
+        }
+        return http.build();
+    }
+
+    private static AuthorizationManager<RequestAuthorizationContext> selfOrAdmin() {
+        AuthorizationManager<RequestAuthorizationContext> admin =
+                AuthorityAuthorizationManager.hasRole(UserAccountService.ROLE_ADMIN);
+        return (authentication, context) -> {
+            Authentication user = authentication.get();
+            return isSelf(user, context.getVariables().get("id"))
+                    ? new AuthorizationDecision(true) : admin.check(authentication, context);
+        };
+    }
+
+    /**
+     * Whether the path id is the authenticated user's own. Both are compared as numbers,
+     * as the login and the controllers parse them.
+     */
+    static boolean isSelf(Authentication authentication, String id) {
+        if (authentication == null || !authentication.isAuthenticated()
+                || authentication instanceof AnonymousAuthenticationToken || id == null) {
+            return false;
+        }
+        try {
+            return Long.parseLong(authentication.getName()) == Long.parseLong(id);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Not a bean: a provider or manager bean would also be picked up by Spring Security's
+     * global configuration. Failed logins are not retried against a parent manager, so a
+     * wrong password is hashed exactly once.
+     */
+    public static AuthenticationManager authenticationManager(UserAccountService userAccountService,
+                                                              PasswordHasher passwordHasher,
+                                                              CredentialCache credentialCache) {
+        DaoAuthenticationProvider provider = new DaoAuthenticationProvider();
+        provider.setUserDetailsService(userAccountService);
+        provider.setUserDetailsPasswordService(userAccountService);
+        provider.setPasswordEncoder(new HashingPoolPasswordEncoder(passwordHasher));
+        return new ProviderManager(new CachingAuthenticationProvider(provider, credentialCache));
+    }
+
+    /**
+     * Lets Spring Security's password checks run on the bounded hashing pool instead of the
+     * request thread.
+     */
+    private record HashingPoolPasswordEncoder(PasswordHasher passwordHasher) implements PasswordEncoder {
+        @Override
+        public String encode(CharSequence rawPassword) {
+            return passwordHasher.encode(rawPassword.toString());
+        }
+
+        @Override
+        public boolean matches(CharSequence rawPassword, String encodedPassword) {
+            return passwordHasher.matches(rawPassword.toString(), encodedPassword);
+        }
+
+        @Override
+        public boolean upgradeEncoding(String encodedPassword) {
+            return passwordHasher.needsUpgrade(encodedPassword);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.example.user.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.util.List;
+
+/**
+ * Shards under {@code user.datasource}, next to the home shard {@code shard-0}, which is
+ * {@code spring.datasource}. Names default to {@code shard-1}, {@code shard-2}, ... by
+ * position and decide where users are placed, so new shards go at the end of the list.
+ * Username and password default to the home shard's.
+ * <p>
+ * A new shard is {@code JOINING} until the resharding tool has moved its users onto it,
+ * and a shard that is to be removed is {@code LEAVING} until its users have been moved
+ * off. Either makes every instance look for users that are not on their new owner yet on
+ * their old one.
+ */
+@ConfigurationProperties("user.datasource")
+public record ShardProperties(List<Shard> shards,
+                              @DefaultValue("128") int virtualNodes) {
+
+    public enum State { ACTIVE, JOINING, LEAVING }
+
+    public record Shard(String name, String url, String username, String password,
+                        @DefaultValue("10") int maximumPoolSize,
+                        @DefaultValue("ACTIVE") State state) {
+    }
+}
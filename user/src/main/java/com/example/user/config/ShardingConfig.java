@@ -0,0 +1,170 @@
+package com.example.user.config;
+
+import com.example.user.datasource.ShardRoutingDataSource;
+import com.example.user.entity.SnowflakeOrSequenceGenerator;
+import com.example.user.shard.ConsistentHashRing;
+import com.example.user.shard.ReshardEndpoint;
+import com.example.user.shard.UserResharder;
+import com.example.user.shard.UserShards;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import net.ttddyy.observation.boot.autoconfigure.DataSourceObservationBeanPostProcessor;
+import org.flywaydb.core.Flyway;
+import org.hibernate.jpa.boot.internal.EntityManagerFactoryBuilderImpl;
+import org.hibernate.jpa.boot.spi.IntegratorProvider;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.flyway.FlywayDataSource;
+import org.springframework.boot.autoconfigure.flyway.FlywayMigrationStrategy;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.jdbc.HikariCheckpointRestoreLifecycle;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Only active when at least one {@code user.datasource.shards[n].url} is set, and only on
+ * the servlet stack. Users are then spread over the home shard ({@code spring.datasource})
+ * and the configured shards by a consistent hash of their id, and get Snowflake ids, which
+ * need no sequence shared by the shards. Change events stay on the shard of their user, in
+ * the same transaction. Flyway migrates every shard.
+ * <p>
+ * Each shard gets its own Hikari pool, set up like the home shard's (see
+ * {@link SecondaryPools}); JDBC observations wrap those pools rather than the routing data
+ * source, as with read replicas. Shards cannot be combined with read replicas, and need
+ * {@code spring.jpa.open-in-view=false}: a request-scoped {@code EntityManager} keeps the
+ * first shard's connection for the whole request.
+ */
+@Configuration
+@ConditionalOnProperty("user.datasource.shards[0].url")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@EnableConfigurationProperties(ShardProperties.class)
+public class ShardingConfig {
+
+    @Bean
+    @FlywayDataSource
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource homeShardDataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    /**
+     * Takes the place of Spring Boot's own lifecycle, which would look at the routing data
+     * source and find no Hikari pool behind it. The other shards' pools are handled by
+     * {@link ShardRoutingDataSource} itself.
+     */
+    @Bean
+    public HikariCheckpointRestoreLifecycle homeShardCheckpointRestoreLifecycle(
+            @Qualifier("homeShardDataSource") DataSource homeShardDataSource) {
+        return new HikariCheckpointRestoreLifecycle(homeShardDataSource);
+    }
+
+    @Bean
+    public ShardRoutingDataSource shardRoutingDataSource(@Qualifier("homeShardDataSource") DataSource homeShardDataSource,
+                                                         DataSourceProperties homeProperties,
+                                                         ShardProperties shardProperties,
+                                                         @Value("${spring.jpa.open-in-view:true}") boolean openInView,
+                                                         Environment environment,
+                                                         ObjectProvider<MeterRegistry> meterRegistry,
+                                                         ObjectProvider<DataSourceObservationBeanPostProcessor> observation) {
+        if (environment.containsProperty("user.datasource.replicas[0].url")) {
+            throw new IllegalStateException("Shards cannot be combined with read replicas");
+        }
+        if (openInView) {
+            throw new IllegalStateException("Shards need spring.jpa.open-in-view=false");
+        }
+        SecondaryPools secondaryPools = new SecondaryPools(homeProperties, environment, meterRegistry, observation);
+        List<ShardProperties.Shard> shards = shardProperties.shards();
+        Map<String, DataSource> pools = new LinkedHashMap<>();
+        List<String> current = new ArrayList<>(List.of(ShardRoutingDataSource.HOME));
+        List<String> previous = new ArrayList<>(List.of(ShardRoutingDataSource.HOME));
+        for (int i = 0; i < shards.size(); i++) {
+            ShardProperties.Shard shard = shards.get(i);
+            String name = shard.name() != null ? shard.name() : "shard-" + (i + 1);
+            if (pools.containsKey(name) || ShardRoutingDataSource.HOME.equals(name)) {
+                throw new IllegalStateException("Shard name " + name + " is used twice");
+            }
+            pools.put(name, secondaryPools.create(name, shard.url(), shard.username(), shard.password(),
+                    shard.maximumPoolSize(), false));
+            if (shard.state() != ShardProperties.State.LEAVING) {
+                current.add(name);
+            }
+            if (shard.state() != ShardProperties.State.JOINING) {
+                previous.add(name);
+            }
+        }
+        int virtualNodes = shardProperties.virtualNodes();
+        return new ShardRoutingDataSource(homeShardDataSource, pools, new ConsistentHashRing(current, virtualNodes),
+                current.equals(previous) ? null : new ConsistentHashRing(previous, virtualNodes));
+    }
+
+    @Bean
+    @Primary
+    public DataSource lazyShardRoutingDataSource(ShardRoutingDataSource shardRoutingDataSource) {
+        return new LazyConnectionDataSourceProxy(shardRoutingDataSource);
+    }
+
+    /**
+     * Migrates the home shard as Spring Boot would, then every other shard with the same
+     * configuration.
+     */
+    @Bean
+    public FlywayMigrationStrategy shardMigrationStrategy(ShardRoutingDataSource shardRoutingDataSource) {
+        return flyway -> {
+            flyway.migrate();
+            for (String shard : shardRoutingDataSource.shardNames()) {
+                if (!ShardRoutingDataSource.HOME.equals(shard)) {
+                    Flyway.configure(flyway.getConfiguration().getClassLoader())
+                            .configuration(flyway.getConfiguration())
+                            .dataSource(shardRoutingDataSource.shard(shard))
+                            .load()
+                            .migrate();
+                }
+            }
+        };
+    }
+
+    /**
+     * There is no default worker id: two instances left on the same one hand out the same
+     * ids, so an instance without one does not start.
+     */
+    @Bean
+    public HibernatePropertiesCustomizer snowflakeIds(@Value("${user.ids.worker-id:#{null}}") Integer workerId) {
+        if (workerId == null) {
+            throw new IllegalStateException("Shards need user.ids.worker-id, unique per instance");
+        }
+        return properties -> {
+            properties.put(SnowflakeOrSequenceGenerator.WORKER_ID, workerId);
+            properties.put(EntityManagerFactoryBuilderImpl.INTEGRATOR_PROVIDER,
+                    (IntegratorProvider) () -> List.of(new SnowflakeOrSequenceGenerator.AssignedIds()));
+        };
+    }
+
+    @Bean
+    public UserResharder userResharder(UserShards userShards, JdbcTemplate jdbcTemplate,
+                                       PlatformTransactionManager transactionManager,
+                                       @Value("${user.shards.reshard-batch-size:500}") int batchSize) {
+        return new UserResharder(userShards, jdbcTemplate, transactionManager, batchSize);
+    }
+
+    @Bean
+    public ReshardEndpoint reshardEndpoint(UserResharder userResharder) {
+        return new ReshardEndpoint(userResharder);
+    }
+}
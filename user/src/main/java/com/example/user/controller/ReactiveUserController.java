@@ -0,0 +1,106 @@
+package com.example.user.controller;
+
+import com.example.user.config.JacksonConfig;
+import com.example.user.dto.LoginRequest;
+import com.example.user.dto.NameMatch;
+import com.example.user.dto.UserView;
+import com.example.user.entity.User;
+import com.example.user.exceptions.UserDoesNotMatchException;
+import com.example.user.service.ReactiveUserService;
+import jakarta.validation.Valid;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.json.MappingJacksonValue;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Set;
+
+/**
+ * The {@code /user} API of {@link UserController} on WebFlux, active when the application
+ * runs as a reactive web application (the {@code reactive} profile). Listing the users
+ * streams them as they are read: a JSON array or, with {@code Accept: application/x-ndjson},
+ * one user per line. Either way rows are only fetched as fast as the client reads them.
+ * The streamed list always carries every property; the codecs only apply {@code ?fields=}
+ * to single values.
+ * <p>
+ * Batch writes, import and export, and the change stream stay on the servlet stack.
+ */
+@RestController
+@RequestMapping("/user")
+@Validated
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveUserController {
+
+    private ReactiveUserService userService;
+    @Autowired
+    public ReactiveUserController(ReactiveUserService userService) {
+        this.userService = userService;
+    }
+
+    @PostMapping
+    @ResponseStatus(HttpStatus.CREATED)
+    public Mono<UserView> createUser(@Valid @RequestBody User user) {
+        return userService.createUser(user).map(UserView::from);
+    }
+
+    @GetMapping(produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public Flux<UserView> getAllUsers() {
+        return userService.streamAllUsers();
+    }
+
+    @GetMapping("/page")
+    public Mono<MappingJacksonValue> getUsersPage(@RequestParam(required = false) Long after,
+                                                  @RequestParam(defaultValue = "100") int size,
+                                                  @RequestParam(required = false) Set<String> fields) {
+        return userService.findUsersPage(after, size).map(page -> withFields(page, fields));
+    }
+
+    @GetMapping("/search")
+    public Mono<MappingJacksonValue> searchUsers(@RequestParam String name,
+                                                 @RequestParam(defaultValue = "EXACT") NameMatch match,
+                                                 @RequestParam(defaultValue = "false") boolean ignoreCase,
+                                                 @RequestParam(defaultValue = "50") int limit,
+                                                 @RequestParam(required = false) Set<String> fields) {
+        return userService.searchByName(name, match, ignoreCase, limit).collectList().map(users -> withFields(users, fields));
+    }
+
+    @GetMapping("/{id}")
+    public Mono<MappingJacksonValue> findUserById(@PathVariable long id,
+                                                  @RequestParam(required = false) Set<String> fields) {
+        return userService.findUserById(id).map(user -> withFields(user, fields));
+    }
+
+    @PostMapping("/{id}/login")
+    public Mono<ResponseEntity<Void>> login(@PathVariable long id, @RequestBody LoginRequest loginRequest) {
+        return userService.authenticate(id, loginRequest.password())
+                .map(authenticated -> authenticated
+                        ? ResponseEntity.noContent().<Void>build()
+                        : ResponseEntity.status(HttpStatus.UNAUTHORIZED).<Void>build());
+    }
+
+    @DeleteMapping("/{id}")
+    public Mono<ResponseEntity<Void>> deleteUserById(@PathVariable long id) {
+        return userService.deleteUserById(id).then(Mono.fromSupplier(() -> ResponseEntity.ok().<Void>build()));
+    }
+
+    @PutMapping("/{id}")
+    @ResponseStatus(HttpStatus.OK)
+    public Mono<UserView> updateUserById(@RequestBody User user, @PathVariable final Long id) {
+        if (!id.equals(user.getId())) {
+            return Mono.error(new UserDoesNotMatchException("User IDs do not match"));
+        }
+        return userService.updateUserById(user, id).map(UserView::from);
+    }
+
+    private static MappingJacksonValue withFields(Object body, Set<String> fields) {
+        MappingJacksonValue value = new MappingJacksonValue(body);
+        value.setFilters(JacksonConfig.userFields(fields));
+        return value;
+    }
+}
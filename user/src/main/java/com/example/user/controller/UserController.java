@@ -1,71 +1,305 @@
 package com.example.user.controller;
 
+import com.example.user.config.JacksonConfig;
+import com.example.user.dto.BatchResult;
+import com.example.user.dto.ChangePage;
+import com.example.user.dto.ImportResult;
+import com.example.user.dto.LoginRequest;
+import com.example.user.dto.NameMatch;
+import com.example.user.dto.UserPage;
+import com.example.user.dto.UserView;
 import com.example.user.entity.User;
 import com.example.user.exceptions.UserDoesNotMatchException;
 import com.example.user.exceptions.UserIdNotFoundException;
+import com.example.user.service.IdempotencyStore;
+import com.example.user.service.UserBatchService;
+import com.example.user.service.Csv;
+import com.example.user.service.UserChangeStream;
+import com.example.user.service.UserImportService;
 import com.example.user.service.UserService;
+import com.example.user.snapshot.UserSnapshot;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.TransientDataAccessException;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.json.MappingJacksonValue;
+import org.springframework.transaction.CannotCreateTransactionException;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
+@Slf4j
 @RestController
 @RequestMapping("/user")
 @Validated
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class UserController {
+    public static final String TEXT_CSV_VALUE = "text/csv";
 
     private UserService userService;
+    private UserBatchService userBatchService;
+    private UserChangeStream userChangeStream;
+    private UserImportService userImportService;
+    private ObjectMapper objectMapper;
+    private IdempotencyStore idempotencyStore;
+    private ObjectProvider<UserSnapshot> userSnapshot;
     @Autowired
-    public UserController(UserService userService) {
+    public UserController(UserService userService, UserBatchService userBatchService, UserChangeStream userChangeStream,
+                          UserImportService userImportService, ObjectMapper objectMapper, IdempotencyStore idempotencyStore,
+                          ObjectProvider<UserSnapshot> userSnapshot) {
         this.userService = userService;
+        this.userBatchService = userBatchService;
+        this.userChangeStream = userChangeStream;
+        this.userImportService = userImportService;
+        this.objectMapper = objectMapper;
+        this.idempotencyStore = idempotencyStore;
+        this.userSnapshot = userSnapshot;
     }
 
 
     @PostMapping
     @ResponseStatus(HttpStatus.CREATED)
-    public User createUser(@Valid @RequestBody User user) {
-        return userService.createUser(user);
+    public UserView createUser(@Valid @RequestBody User user,
+                               @RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey) {
+        return idempotencyStore.execute("POST /user", idempotencyKey, user, UserView.class, () -> {
+            User createdUser = userService.createUser(user);
+            return createdUser == null ? null : UserView.from(createdUser);
+        });
+    }
+
+    @PostMapping("/batch")
+    @ResponseStatus(HttpStatus.OK)
+    public BatchResult createUsers(@RequestBody List<User> users,
+                                   @RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey) {
+        return idempotencyStore.execute("POST /user/batch", idempotencyKey, users, BatchResult.class,
+                () -> userBatchService.createUsers(users));
+    }
+
+    @PutMapping("/batch")
+    @ResponseStatus(HttpStatus.OK)
+    public BatchResult updateUsers(@RequestBody List<User> users,
+                                   @RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey) {
+        return idempotencyStore.execute("PUT /user/batch", idempotencyKey, users, BatchResult.class,
+                () -> userBatchService.updateUsers(users));
+    }
+
+    @DeleteMapping("/batch")
+    @ResponseStatus(HttpStatus.OK)
+    public BatchResult deleteUsers(@RequestBody List<Long> ids,
+                                   @RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey) {
+        return idempotencyStore.execute("DELETE /user/batch", idempotencyKey, ids, BatchResult.class,
+                () -> userBatchService.deleteUsers(ids));
     }
 
     @GetMapping
     @ResponseStatus(HttpStatus.OK)
-    public List<User> getAllUsers() {
-        List<User> userList = userService.getAllUsers();
+    public MappingJacksonValue getAllUsers(@RequestParam(required = false) Set<String> fields) {
+        List<UserView> userList = userService.getAllUsers();
         if (userList == null) {
             throw new UserIdNotFoundException("Lista de usuários não encontrada");
         }
-        return userList;
+        return withFields(userList, fields);
+    }
+
+    @GetMapping("/page")
+    @ResponseStatus(HttpStatus.OK)
+    public MappingJacksonValue getUsersPage(@RequestParam(required = false) Long after,
+                                            @RequestParam(defaultValue = "100") int size,
+                                            @RequestParam(required = false) Set<String> fields) {
+        return withFields(userService.findUsersPage(after, size), fields);
+    }
+
+    @GetMapping(value = "/stream", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamAllUsers(@RequestParam(required = false) Set<String> fields) {
+        ObjectWriter writer = objectMapper.writerFor(UserView.class)
+                .with(JacksonConfig.userFields(fields))
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        StreamingResponseBody body = outputStream -> {
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+                generator.writeStartArray();
+                userService.streamAllUsers(user -> writeUser(generator, writer, user));
+                generator.writeEndArray();
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
+    @PostMapping(value = "/import", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    @ResponseStatus(HttpStatus.OK)
+    public ImportResult importNdjson(InputStream body, @RequestParam(defaultValue = "false") boolean passwordsHashed)
+            throws IOException {
+        return userImportService.importUsers(new InputStreamReader(body, StandardCharsets.UTF_8),
+                UserImportService.Format.NDJSON, passwordsHashed);
+    }
+
+    @PostMapping(value = "/import", consumes = TEXT_CSV_VALUE)
+    @ResponseStatus(HttpStatus.OK)
+    public ImportResult importCsv(InputStream body, @RequestParam(defaultValue = "false") boolean passwordsHashed)
+            throws IOException {
+        return userImportService.importUsers(new InputStreamReader(body, StandardCharsets.UTF_8),
+                UserImportService.Format.CSV, passwordsHashed);
+    }
+
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportNdjson(@RequestParam(required = false) Set<String> fields) {
+        ObjectWriter writer = objectMapper.writerFor(UserView.class)
+                .with(JacksonConfig.userFields(fields))
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        StreamingResponseBody body = outputStream -> {
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+                generator.setRootValueSeparator(null);
+                userService.streamAllUsers(user -> {
+                    writeUser(generator, writer, user);
+                    try {
+                        generator.writeRaw('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
+    @GetMapping(value = "/export", produces = TEXT_CSV_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportCsv() {
+        StreamingResponseBody body = outputStream -> {
+            Writer out = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+            out.write("id,name,version\n");
+            userService.streamAllUsers(user -> {
+                try {
+                    out.write(user.id() + "," + Csv.field(user.name()) + "," + user.version() + "\n");
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            out.flush();
+        };
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(TEXT_CSV_VALUE)).body(body);
+    }
+
+    @GetMapping(value = "/changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamChanges(@RequestParam(defaultValue = "0") long since,
+                                    @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId) {
+        return userChangeStream.subscribe(lastEventId != null ? lastEventId : since);
+    }
+
+    @GetMapping(value = "/changes", produces = MediaType.APPLICATION_JSON_VALUE)
+    public DeferredResult<ChangePage> pollChanges(@RequestParam(defaultValue = "0") long since,
+                                                  @RequestParam(defaultValue = "500") int limit) {
+        return userChangeStream.poll(since, Math.min(limit, UserService.MAX_PAGE_SIZE));
+    }
+
+    /**
+     * Exact, case-sensitive searches are answered from the local snapshot, flagged as
+     * stale, while the database is unavailable. The snapshot writes those answers to the
+     * response itself.
+     */
+    @GetMapping("/search")
+    public ResponseEntity<MappingJacksonValue> searchUsers(@RequestParam String name,
+                                                           @RequestParam(defaultValue = "EXACT") NameMatch match,
+                                                           @RequestParam(defaultValue = "false") boolean ignoreCase,
+                                                           @RequestParam(defaultValue = "50") int limit,
+                                                           @RequestParam(required = false) Set<String> fields,
+                                                           HttpServletResponse response) throws IOException {
+        try {
+            return ResponseEntity.ok(withFields(userService.searchByName(name, match, ignoreCase, limit), fields));
+        } catch (DataAccessResourceFailureException | TransientDataAccessException | CannotCreateTransactionException e) {
+            if (match != NameMatch.EXACT || ignoreCase) {
+                throw e;
+            }
+            snapshotInsteadOf(e).writeByName(name, Math.min(limit, UserService.MAX_PAGE_SIZE), fields, response);
+            return null;
+        }
     }
 
     @GetMapping("/{id}")
-    public ResponseEntity<User> findUserById(@PathVariable(required = true) long id) {
-        Optional<User> userOptional = userService.findUserById(id);
+    public ResponseEntity<MappingJacksonValue> findUserById(@PathVariable(required = true) long id,
+                                                            @RequestParam(required = false) Set<String> fields,
+                                                            HttpServletResponse response) throws IOException {
+        Optional<UserView> userOptional;
+        try {
+            userOptional = userService.findUserById(id);
+        } catch (DataAccessResourceFailureException | TransientDataAccessException | CannotCreateTransactionException e) {
+            if (!snapshotInsteadOf(e).writeById(id, fields, response)) {
+                throw new UserIdNotFoundException("Users with name " + id + " do not exist");
+            }
+            return null;
+        }
         return userOptional
-                .map(user -> ResponseEntity.ok().body(user))
+                .map(user -> ResponseEntity.ok().body(withFields(user, fields)))
                 .orElse(ResponseEntity.notFound().build());
     }
 
-    @DeleteMapping("/{id}")
-    public ResponseEntity<User> deleteUserById(@PathVariable long id) {
-        Optional<User> userOptional = userService.findUserById(id);
-        if (userOptional.isEmpty()) {
-            return ResponseEntity.notFound().build();
+    @PostMapping("/{id}/login")
+    public ResponseEntity<Void> login(@PathVariable long id, @RequestBody LoginRequest loginRequest) {
+        if (!userService.authenticate(id, loginRequest.password())) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
         }
+        return ResponseEntity.noContent().build();
+    }
 
+    @DeleteMapping("/{id}")
+    public ResponseEntity<Void> deleteUserById(@PathVariable long id) {
         userService.deleteUserById(id);
         return ResponseEntity.ok().build();
     }
 
     @PutMapping("/{id}")
     @ResponseStatus(HttpStatus.OK)
-    public User updateUserById(@RequestBody User user, @PathVariable final Long id){
+    public UserView updateUserById(@RequestBody User user, @PathVariable final Long id){
         if (!id.equals(user.getId())) {
             throw new UserDoesNotMatchException("User IDs do not match");
         }
-        return userService.updateUserById(user, id);
+        User updatedUser = userService.updateUserById(user, id);
+        return updatedUser == null ? null : UserView.from(updatedUser);
+    }
+
+    private UserSnapshot snapshotInsteadOf(RuntimeException databaseFailure) {
+        UserSnapshot snapshot = userSnapshot.getIfAvailable();
+        if (snapshot == null || !snapshot.isLoaded()) {
+            throw databaseFailure;
+        }
+        log.debug("Answering from the user snapshot at position {}: {}", snapshot.position(), databaseFailure.getMessage());
+        return snapshot;
+    }
+
+    private static MappingJacksonValue withFields(Object body, Set<String> fields) {
+        MappingJacksonValue value = new MappingJacksonValue(body);
+        value.setFilters(JacksonConfig.userFields(fields));
+        return value;
+    }
+
+    private void writeUser(JsonGenerator generator, ObjectWriter writer, UserView user) {
+        try {
+            writer.writeValue(generator, user);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
     }
@@ -0,0 +1,89 @@
+package com.example.user.datasource;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Optional;
+
+/**
+ * Remembers which clients wrote recently, so their reads keep going to the primary until
+ * the replicas have had time to catch up. A client is identified by the
+ * {@code X-Client-Id} header when present, otherwise by the HTTP basic username or the
+ * authenticated user or, failing that, the remote address. The username is read from the
+ * {@code Authorization} header, not from the principal, so that the credential lookup
+ * during authentication, which runs before there is a principal, counts as the same client
+ * as the write: a client that just changed its password is checked against the primary.
+ * Usernames are user ids and are compared as such, like the login does. Work outside an
+ * HTTP request has no client and is never pinned.
+ */
+public class ReadYourWritesTracker {
+    public static final String CLIENT_ID_HEADER = "X-Client-Id";
+
+    private static final String BASIC = "Basic ";
+
+    private final Cache<String, Boolean> recentWriters;
+
+    public ReadYourWritesTracker(Duration window) {
+        this.recentWriters = Caffeine.newBuilder()
+                .expireAfterWrite(window)
+                .maximumSize(100_000)
+                .build();
+    }
+
+    public void recordWrite() {
+        currentClientKey().ifPresent(client -> recentWriters.put(client, Boolean.TRUE));
+    }
+
+    public boolean wroteRecently() {
+        return currentClientKey().map(client -> recentWriters.getIfPresent(client) != null).orElse(false);
+    }
+
+    private static Optional<String> currentClientKey() {
+        if (!(RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes attributes)) {
+            return Optional.empty();
+        }
+        HttpServletRequest request = attributes.getRequest();
+        String clientId = request.getHeader(CLIENT_ID_HEADER);
+        if (clientId != null && !clientId.isBlank()) {
+            return Optional.of(clientId);
+        }
+        String username = basicUsername(request.getHeader(HttpHeaders.AUTHORIZATION));
+        if (username != null) {
+            return Optional.of("user:" + username);
+        }
+        if (request.getUserPrincipal() != null) {
+            return Optional.of("user:" + request.getUserPrincipal().getName());
+        }
+        return Optional.ofNullable(request.getRemoteAddr());
+    }
+
+    private static String basicUsername(String authorization) {
+        if (authorization == null || !authorization.regionMatches(true, 0, BASIC, 0, BASIC.length())) {
+            return null;
+        }
+        String credentials;
+        try {
+            credentials = new String(Base64.getDecoder().decode(authorization.substring(BASIC.length()).trim()),
+                    StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        int colon = credentials.indexOf(':');
+        if (colon < 0) {
+            return null;
+        }
+        String username = credentials.substring(0, colon);
+        try {
+            return Long.toString(Long.parseLong(username));
+        } catch (NumberFormatException e) {
+            return username;
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package com.example.user.datasource;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.jdbc.HikariCheckpointRestoreLifecycle;
+import org.springframework.context.Lifecycle;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Sends connections for read-only transactions to the replicas, round-robin, and
+ * everything else to the primary. A replica is taken out of rotation when it fails a
+ * periodic {@link Connection#isValid(int)} check or a connection attempt, and put back
+ * once a check passes again; with no healthy replica reads fall back to the primary.
+ * <p>
+ * The routing decision is made when a connection is requested, so this must be wrapped in
+ * a {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy}: the
+ * transaction manager opens its connection before the read-only flag is visible.
+ * <p>
+ * Reads whose result outlives the request, such as those that fill the shared user cache,
+ * run in {@link #onPrimary(Supplier)}: a lagging replica would otherwise put an old row
+ * back right after a write evicted it, and every client would be served that row.
+ * <p>
+ * Stopping it (on a CRaC checkpoint) pauses the health checks and suspends the replica
+ * pools with all their connections closed; starting it again on restore resumes both.
+ */
+@Slf4j
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource implements DisposableBean, Lifecycle {
+    public static final String PRIMARY = "primary";
+
+    private static final ThreadLocal<Boolean> PRIMARY_READS = new ThreadLocal<>();
+
+    private final DataSource primary;
+    private final List<Replica> replicas;
+    private final ReadYourWritesTracker readYourWrites;
+    private final Duration healthCheckInterval;
+    private final AtomicInteger next = new AtomicInteger();
+    private final List<HikariCheckpointRestoreLifecycle> poolLifecycles;
+    private ScheduledExecutorService healthChecker;
+    private volatile boolean running = true;
+
+    public ReplicaRoutingDataSource(DataSource primary, Map<String, DataSource> replicas,
+                                    ReadYourWritesTracker readYourWrites, Duration healthCheckInterval) {
+        this.primary = primary;
+        this.replicas = replicas.entrySet().stream()
+                .map(replica -> new Replica(replica.getKey(), replica.getValue(), new AtomicBoolean(true)))
+                .toList();
+        this.poolLifecycles = replicas.values().stream().map(HikariCheckpointRestoreLifecycle::new).toList();
+        this.readYourWrites = readYourWrites;
+        this.healthCheckInterval = healthCheckInterval;
+
+        Map<Object, Object> targets = new HashMap<>(replicas);
+        targets.put(PRIMARY, primary);
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        super.afterPropertiesSet();
+        startHealthChecks();
+    }
+
+    @Override
+    public void start() {
+        poolLifecycles.forEach(HikariCheckpointRestoreLifecycle::start);
+        startHealthChecks();
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (healthChecker != null) {
+            healthChecker.shutdownNow();
+        }
+        poolLifecycles.forEach(HikariCheckpointRestoreLifecycle::stop);
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void startHealthChecks() {
+        healthChecker = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform()
+                .name("replica-health-check")
+                .daemon(true)
+                .factory());
+        long interval = healthCheckInterval.toMillis();
+        healthChecker.scheduleWithFixedDelay(this::checkReplicas, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Runs the work with its read-only transactions on the primary, without pinning the
+     * client to it as a write would. Without replicas it simply runs the work.
+     */
+    public static <T> T onPrimary(Supplier<T> work) {
+        Boolean outer = PRIMARY_READS.get();
+        PRIMARY_READS.set(Boolean.TRUE);
+        try {
+            return work.get();
+        } finally {
+            if (outer == null) {
+                PRIMARY_READS.remove();
+            }
+        }
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            if (TransactionSynchronizationManager.isActualTransactionActive()) {
+                readYourWrites.recordWrite();
+            }
+            return PRIMARY;
+        }
+        if (PRIMARY_READS.get() != null || readYourWrites.wroteRecently()) {
+            return PRIMARY;
+        }
+        return nextHealthyReplica().map(Replica::name).orElse(PRIMARY);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        Object key = determineCurrentLookupKey();
+        DataSource target = getResolvedDataSources().get(key);
+        if (PRIMARY.equals(key)) {
+            return target.getConnection();
+        }
+        try {
+            return target.getConnection();
+        } catch (SQLException e) {
+            markDown(key.toString(), e);
+            return primary.getConnection();
+        }
+    }
+
+    /**
+     * Runs one round of health checks now; also called on the fixed schedule.
+     */
+    public void checkReplicas() {
+        for (Replica replica : replicas) {
+            try (Connection connection = replica.dataSource().getConnection()) {
+                if (connection.isValid(1)) {
+                    if (replica.healthy().compareAndSet(false, true)) {
+                        log.info("Replica {} is healthy again", replica.name());
+                    }
+                } else {
+                    markDown(replica.name(), null);
+                }
+            } catch (SQLException | RuntimeException e) {
+                markDown(replica.name(), e);
+            }
+        }
+    }
+
+    public boolean isHealthy(String replicaName) {
+        return replicas.stream().anyMatch(replica -> replica.name().equals(replicaName) && replica.healthy().get());
+    }
+
+    /**
+     * Stops the health checks and closes the replica pools, which are not beans of their own.
+     */
+    @Override
+    public void destroy() {
+        if (healthChecker != null) {
+            healthChecker.shutdownNow();
+        }
+        for (Replica replica : replicas) {
+            if (replica.dataSource() instanceof AutoCloseable pool) {
+                try {
+                    pool.close();
+                } catch (Exception e) {
+                    log.warn("Could not close replica {}", replica.name(), e);
+                }
+            }
+        }
+    }
+
+    private Optional<Replica> nextHealthyReplica() {
+        int size = replicas.size();
+        int start = Math.floorMod(next.getAndIncrement(), size);
+        for (int i = 0; i < size; i++) {
+            Replica replica = replicas.get((start + i) % size);
+            if (replica.healthy().get()) {
+                return Optional.of(replica);
+            }
+        }
+        return Optional.empty();
+    }
+
+    private void markDown(String name, Exception cause) {
+        replicas.stream()
+                .filter(replica -> replica.name().equals(name))
+                .findFirst()
+                .filter(replica -> replica.healthy().compareAndSet(true, false))
+                .ifPresent(replica -> log.warn("Replica {} is unhealthy, reading from the primary until it recovers", name, cause));
+    }
+
+    private record Replica(String name, DataSource dataSource, AtomicBoolean healthy) {
+    }
+}
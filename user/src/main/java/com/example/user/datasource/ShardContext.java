@@ -0,0 +1,43 @@
+package com.example.user.datasource;
+
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.function.Supplier;
+
+/**
+ * The shard that {@link ShardRoutingDataSource} takes the current thread's connections
+ * from, set around a unit of work with {@link #call}. A transaction keeps the connection
+ * it started with, so switching to another shard inside one would silently keep using
+ * the old shard; that is refused instead.
+ */
+public final class ShardContext {
+    private static final ThreadLocal<String> CURRENT = new ThreadLocal<>();
+
+    private ShardContext() {
+    }
+
+    /**
+     * The shard set for this thread, or {@code null} for the home shard.
+     */
+    public static String current() {
+        return CURRENT.get();
+    }
+
+    public static <T> T call(String shard, Supplier<T> work) {
+        String previous = CURRENT.get();
+        String active = previous == null ? ShardRoutingDataSource.HOME : previous;
+        if (!shard.equals(active) && TransactionSynchronizationManager.isActualTransactionActive()) {
+            throw new IllegalStateException("Cannot switch to shard " + shard + " inside a transaction on " + active);
+        }
+        CURRENT.set(shard);
+        try {
+            return work.get();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+}
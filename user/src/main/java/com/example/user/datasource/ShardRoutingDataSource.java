@@ -0,0 +1,118 @@
+package com.example.user.datasource;
+
+import com.example.user.shard.ConsistentHashRing;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.jdbc.HikariCheckpointRestoreLifecycle;
+import org.springframework.context.Lifecycle;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Sends connections to the shard named in {@link ShardContext}, or to the home shard
+ * ({@code spring.datasource}, where Flyway's baseline and the change relay's lock live)
+ * when none is set. It also carries the placement of users: the ring of the shards that
+ * own ids now and, while shards join or leave, the ring from before, under which users
+ * that have not been moved yet are still found.
+ * <p>
+ * The shard is picked when a connection is requested, so like
+ * {@link ReplicaRoutingDataSource} this must be wrapped in a
+ * {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy}. Stopping it
+ * (on a CRaC checkpoint) suspends the pools of the other shards; the home pool has its
+ * own lifecycle.
+ */
+@Slf4j
+public class ShardRoutingDataSource extends AbstractRoutingDataSource implements DisposableBean, Lifecycle {
+    public static final String HOME = "shard-0";
+
+    private final Map<String, DataSource> shards;
+    private final ConsistentHashRing ring;
+    private final ConsistentHashRing previousRing;
+    private final List<HikariCheckpointRestoreLifecycle> poolLifecycles;
+    private volatile boolean running = true;
+
+    /**
+     * @param others       the shards besides the home shard, by name
+     * @param previousRing the placement before the current resharding, or {@code null}
+     */
+    public ShardRoutingDataSource(DataSource home, Map<String, DataSource> others,
+                                  ConsistentHashRing ring, ConsistentHashRing previousRing) {
+        Map<String, DataSource> all = new LinkedHashMap<>();
+        all.put(HOME, home);
+        all.putAll(others);
+        this.shards = all;
+        this.ring = ring;
+        this.previousRing = previousRing;
+        this.poolLifecycles = others.values().stream().map(HikariCheckpointRestoreLifecycle::new).toList();
+
+        setTargetDataSources(new HashMap<>(all));
+        setDefaultTargetDataSource(home);
+        setLenientFallback(false);
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        String shard = ShardContext.current();
+        return shard == null ? HOME : shard;
+    }
+
+    public List<String> shardNames() {
+        return new ArrayList<>(shards.keySet());
+    }
+
+    public DataSource shard(String name) {
+        DataSource dataSource = shards.get(name);
+        if (dataSource == null) {
+            throw new IllegalArgumentException("Unknown shard " + name);
+        }
+        return dataSource;
+    }
+
+    public ConsistentHashRing ring() {
+        return ring;
+    }
+
+    public Optional<ConsistentHashRing> previousRing() {
+        return Optional.ofNullable(previousRing);
+    }
+
+    @Override
+    public void start() {
+        poolLifecycles.forEach(HikariCheckpointRestoreLifecycle::start);
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        poolLifecycles.forEach(HikariCheckpointRestoreLifecycle::stop);
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Closes the pools of the other shards, which are not beans of their own.
+     */
+    @Override
+    public void destroy() {
+        shards.forEach((name, dataSource) -> {
+            if (!HOME.equals(name) && dataSource instanceof AutoCloseable pool) {
+                try {
+                    pool.close();
+                } catch (Exception e) {
+                    log.warn("Could not close shard {}", name, e);
+                }
+            }
+        });
+    }
+}
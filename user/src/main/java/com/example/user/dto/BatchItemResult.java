@@ -0,0 +1,20 @@
+package com.example.user.dto;
+
+/**
+ * Outcome of one item of a batch request. {@code index} is the item's position in the
+ * request body so clients can match results back to what they sent.
+ */
+public record BatchItemResult(int index, Long id, Status status, String error) {
+
+    public enum Status {
+        CREATED, UPDATED, DELETED, INVALID, NOT_FOUND, CONFLICT, FAILED
+    }
+
+    public static BatchItemResult success(int index, Long id, Status status) {
+        return new BatchItemResult(index, id, status, null);
+    }
+
+    public static BatchItemResult failure(int index, Long id, Status status, String error) {
+        return new BatchItemResult(index, id, status, error);
+    }
+}
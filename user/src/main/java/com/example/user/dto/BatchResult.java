@@ -0,0 +1,14 @@
+package com.example.user.dto;
+
+import java.util.List;
+
+public record BatchResult(int succeeded, int failed, long elapsedMillis, double rowsPerSecond,
+                          List<BatchItemResult> items) {
+
+    public static BatchResult of(List<BatchItemResult> items, long elapsedNanos) {
+        int succeeded = (int) items.stream().filter(item -> item.error() == null).count();
+        double seconds = elapsedNanos / 1_000_000_000d;
+        double rowsPerSecond = seconds > 0 ? succeeded / seconds : 0;
+        return new BatchResult(succeeded, items.size() - succeeded, elapsedNanos / 1_000_000, rowsPerSecond, items);
+    }
+}
@@ -0,0 +1,14 @@
+package com.example.user.dto;
+
+import java.util.List;
+
+/**
+ * Changes after the requested position, oldest first. {@code next} is the position to pass
+ * as {@code since} on the following call; it equals the request's when nothing changed.
+ */
+public record ChangePage(List<UserChange> changes, long next) {
+
+    public static ChangePage of(List<UserChange> changes, long since) {
+        return new ChangePage(changes, changes.isEmpty() ? since : changes.get(changes.size() - 1).position());
+    }
+}
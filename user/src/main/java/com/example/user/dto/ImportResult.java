@@ -0,0 +1,20 @@
+package com.example.user.dto;
+
+import java.util.List;
+
+/**
+ * Outcome of a bulk import. Only the first {@code errors} are listed; {@code rejected}
+ * counts all of them. {@code line} is the line of the request body the error refers to.
+ */
+public record ImportResult(long imported, long rejected, long elapsedMillis, double rowsPerSecond,
+                           List<Error> errors) {
+
+    public record Error(long line, String message) {
+    }
+
+    public static ImportResult of(long imported, long rejected, List<Error> errors, long elapsedNanos) {
+        double seconds = elapsedNanos / 1_000_000_000d;
+        double rowsPerSecond = seconds > 0 ? imported / seconds : 0;
+        return new ImportResult(imported, rejected, elapsedNanos / 1_000_000, rowsPerSecond, errors);
+    }
+}
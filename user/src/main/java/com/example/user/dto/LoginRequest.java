@@ -0,0 +1,4 @@
+package com.example.user.dto;
+
+public record LoginRequest(String password) {
+}
@@ -0,0 +1,5 @@
+package com.example.user.dto;
+
+public enum NameMatch {
+    EXACT, PREFIX
+}
@@ -0,0 +1,18 @@
+package com.example.user.dto;
+
+import com.example.user.entity.UserChangeEvent;
+
+import java.time.Instant;
+
+/**
+ * A published change as consumers see it. {@code name} and {@code version} are the user's
+ * state after the change; both are {@code null} for deletes.
+ */
+public record UserChange(long position, long userId, UserChangeEvent.Type type, String name, Long version,
+                         Instant createdAt) {
+
+    public static UserChange from(UserChangeEvent event) {
+        return new UserChange(event.getPosition(), event.getUserId(), event.getType(), event.getName(),
+                event.getUserVersion(), event.getCreatedAt());
+    }
+}
@@ -0,0 +1,10 @@
+package com.example.user.dto;
+
+import java.util.List;
+
+/**
+ * One page of users ordered by id. {@code nextCursor} is the id to pass as {@code after}
+ * to fetch the following page, or {@code null} when there are no more users.
+ */
+public record UserPage(List<UserView> content, Long nextCursor) {
+}
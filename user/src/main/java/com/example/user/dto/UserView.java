@@ -0,0 +1,20 @@
+package com.example.user.dto;
+
+import com.example.user.entity.User;
+import com.fasterxml.jackson.annotation.JsonFilter;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * What the API returns for a user. Read queries build it directly with a constructor
+ * expression, so no entity is hydrated or tracked; the password never leaves the service.
+ * Responses can be narrowed to some of the properties with {@code ?fields=}. Sending the
+ * {@code version} back with an update makes it fail with 409 if the user changed meanwhile.
+ */
+@JsonFilter(UserView.FIELDS_FILTER)
+public record UserView(Long id, String name, @JsonInclude(JsonInclude.Include.NON_NULL) Long version) {
+    public static final String FIELDS_FILTER = "userFields";
+
+    public static UserView from(User user) {
+        return new UserView(user.getId(), user.getName(), user.getVersion());
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.user.entity;
+
+import com.example.user.shard.SnowflakeIdGenerator;
+import org.hibernate.MappingException;
+import org.hibernate.boot.Metadata;
+import org.hibernate.boot.spi.BootstrapContext;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.mapping.SimpleValue;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.service.spi.SessionFactoryServiceRegistry;
+import org.hibernate.type.Type;
+
+import java.util.Properties;
+
+/**
+ * Ids from the entity's database sequence, exactly like {@code @SequenceGenerator}, unless
+ * the Hibernate setting {@link #WORKER_ID} is present, which {@code ShardingConfig} adds.
+ * Then ids are Snowflake ids, unique across all shards without a central sequence, and an
+ * id the service already assigned to route the row to its shard is kept.
+ * <p>
+ * Hibernate takes a new entity that already has a generated id for a detached one, unless
+ * the id is mapped as assigned; {@link AssignedIds} marks these ids that way too.
+ */
+public class SnowflakeOrSequenceGenerator extends SequenceStyleGenerator {
+    public static final String WORKER_ID = "user.ids.worker-id";
+
+    private SnowflakeIdGenerator snowflake;
+
+    @Override
+    public void configure(Type type, Properties parameters, ServiceRegistry serviceRegistry) throws MappingException {
+        super.configure(type, parameters, serviceRegistry);
+        Object workerId = serviceRegistry.requireService(ConfigurationService.class).getSettings().get(WORKER_ID);
+        if (workerId != null) {
+            snowflake = SnowflakeIdGenerator.forWorker(Integer.parseInt(workerId.toString()));
+        }
+    }
+
+    @Override
+    public Object generate(SharedSessionContractImplementor session, Object object) {
+        if (snowflake == null) {
+            return super.generate(session, object);
+        }
+        Object assigned = session.getEntityPersister(null, object).getIdentifier(object, session);
+        return assigned != null ? assigned : snowflake.nextId();
+    }
+
+    /**
+     * Gives ids from this generator the unsaved-value {@code undefined} that assigned ids
+     * have, so an entity with an id but no version yet is persisted as new. Runs before the
+     * persisters are built from the mapping.
+     */
+    public static class AssignedIds implements Integrator {
+        @Override
+        public void integrate(Metadata metadata, BootstrapContext bootstrapContext, SessionFactoryImplementor sessionFactory) {
+            metadata.getEntityBindings().forEach(entity -> {
+                if (entity.getIdentifier() instanceof SimpleValue id
+                        && SnowflakeOrSequenceGenerator.class.getName().equals(id.getIdentifierGeneratorStrategy())) {
+                    id.setNullValue("undefined");
+                }
+            });
+        }
+
+        @Override
+        public void disintegrate(SessionFactoryImplementor sessionFactory, SessionFactoryServiceRegistry serviceRegistry) {
+        }
+    }
+}
@@ -1,25 +1,30 @@
 package com.example.user.entity;
 
-import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
 
 
 import java.io.Serializable;
 
 @Entity
 @Table(name = "user_table")
-@JsonIgnoreProperties({"hibernateLazyInitializer", "handler"})
 @Data
 @NoArgsConstructor
 @Builder
 @AllArgsConstructor
 public class User implements Serializable {
     @Id
-    @GeneratedValue(strategy= GenerationType.IDENTITY)
+    @GeneratedValue(generator = "user_id_seq")
+    @GenericGenerator(name = "user_id_seq", type = SnowflakeOrSequenceGenerator.class, parameters = {
+            @Parameter(name = "sequence_name", value = "user_table_id_seq"),
+            @Parameter(name = "increment_size", value = "50")})
     private Long id;
     private String name;
     private String password;
+    @Version
+    private Long version;
 
 
 }
@@ -0,0 +1,49 @@
+package com.example.user.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+
+import java.time.Instant;
+
+/**
+ * Outbox row for one create, update or delete of a user. The password is never copied
+ * here. {@code position} is assigned by the relay when the event is published and is what
+ * consumers of {@code GET /user/changes} resume from.
+ */
+@Entity
+@Table(name = "user_change_event")
+@Data
+@NoArgsConstructor
+@Builder
+@AllArgsConstructor
+public class UserChangeEvent {
+    public enum Type {
+        CREATED, UPDATED, DELETED
+    }
+
+    @Id
+    @GeneratedValue(generator = "user_change_event_id_seq")
+    @GenericGenerator(name = "user_change_event_id_seq", type = SnowflakeOrSequenceGenerator.class, parameters = {
+            @Parameter(name = "sequence_name", value = "user_change_event_id_seq"),
+            @Parameter(name = "increment_size", value = "50")})
+    private Long id;
+    private Long userId;
+    @Enumerated(EnumType.STRING)
+    private Type type;
+    private String name;
+    private Long userVersion;
+    private Instant createdAt;
+    private Long position;
+
+    public static UserChangeEvent of(Type type, Long userId, String name, Long userVersion) {
+        return UserChangeEvent.builder()
+                .type(type)
+                .userId(userId)
+                .name(name)
+                .userVersion(userVersion)
+                .createdAt(Instant.now())
+                .build();
+    }
+}
@@ -0,0 +1,11 @@
+package com.example.user.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(value = HttpStatus.CONFLICT)
+public class UserVersionConflictException extends RuntimeException{
+    public UserVersionConflictException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.user.filter;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Picks {@code user.logging.debug-sample-rate} of the requests (0 to 1, off by default)
+ * and marks them in the MDC, so {@link SampledDebugTurboFilter} logs their debug output
+ * whatever the configured level. The mark is also in the JSON logs, which makes the
+ * sampled requests easy to find. Runs after {@link TraceIdResponseFilter}, so the trace
+ * id is already in the MDC of every line it lets through.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 3)
+public class DebugSamplingFilter extends OncePerRequestFilter {
+    private final double sampleRate;
+
+    public DebugSamplingFilter(@Value("${user.logging.debug-sample-rate:0}") double sampleRate) {
+        if (sampleRate < 0 || sampleRate > 1) {
+            throw new IllegalArgumentException("user.logging.debug-sample-rate must be between 0 and 1");
+        }
+        this.sampleRate = sampleRate;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        if (sampleRate == 0 || ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        MDC.put(SampledDebugTurboFilter.MDC_KEY, "true");
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            MDC.remove(SampledDebugTurboFilter.MDC_KEY);
+        }
+    }
+}
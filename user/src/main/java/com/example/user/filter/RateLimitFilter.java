@@ -0,0 +1,271 @@
+package com.example.user.filter;
+
+import com.example.user.config.RateLimitProperties;
+import com.example.user.ratelimit.AdaptiveConcurrencyLimit;
+import com.example.user.ratelimit.TokenBucket;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Sheds load in front of {@code /user/**}. Each request is charged to the read or the
+ * write budget, and within it to a global token bucket, an adaptive concurrency limit and
+ * a per-client token bucket. An exhausted bucket answers 429 with the time until the next
+ * token in {@code Retry-After}; a full concurrency limit answers 503.
+ * <p>
+ * The global bucket and the concurrency limit are checked before the credentials, so a
+ * request rejected by them never pays for a password hash. The per-client bucket is keyed
+ * on the authenticated user, so it is checked by {@link #clientLimitFilter()} after
+ * authentication; repeat credentials come from the credential cache there. Anonymous
+ * requests are keyed on their address, but only when {@code server.forward-headers-strategy}
+ * is set: behind a proxy without it, every client would share the proxy's bucket.
+ * <p>
+ * A request that goes asynchronous keeps its concurrency permit until it completes, and
+ * does not count as a latency sample. Neither does a request turned away by its client
+ * bucket. The change feed is not limited, for the reasons given on
+ * {@link ConcurrencyLimitFilter}.
+ * <p>
+ * Neither filter is a bean, otherwise Spring Boot would register it a second time as a
+ * servlet filter.
+ */
+@Slf4j
+public class RateLimitFilter extends OncePerRequestFilter {
+    enum Budget { READ, WRITE }
+
+    private static final String LIMITED_PATH = "/user";
+    private static final String CHANGES_PATH = "/user/changes";
+    private static final String CLIENT_REJECTED = RateLimitFilter.class.getName() + ".CLIENT_REJECTED";
+
+    private final Map<Budget, Limits> limits = new EnumMap<>(Budget.class);
+    private final boolean addressIsClient;
+
+    /**
+     * @param addressIsClient whether the remote address is the client's own, i.e. forwarded
+     *                        headers are applied; only then are anonymous requests limited
+     *                        per client
+     */
+    public RateLimitFilter(RateLimitProperties properties, MeterRegistry meterRegistry, boolean addressIsClient) {
+        this.addressIsClient = addressIsClient;
+        long now = System.nanoTime();
+        limits.put(Budget.READ, new Limits(Budget.READ, properties, properties.read(), meterRegistry, now));
+        limits.put(Budget.WRITE, new Limits(Budget.WRITE, properties, properties.write(), meterRegistry, now));
+    }
+
+    /**
+     * The per-client check, to be placed after authentication.
+     */
+    public OncePerRequestFilter clientLimitFilter() {
+        return new ClientLimitFilter();
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !limited(request);
+    }
+
+    static boolean limited(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        return (path.equals(LIMITED_PATH) || path.startsWith(LIMITED_PATH + "/")) && !path.equals(CHANGES_PATH);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        Budget budget = budget(request);
+        Limits limit = limits.get(budget);
+        long now = System.nanoTime();
+
+        long wait = limit.global.tryAcquire(now);
+        if (wait > 0) {
+            limit.globalRejected.increment();
+            reject(request, response, HttpStatus.TOO_MANY_REQUESTS, wait, "global " + budget + " rate exceeded");
+            return;
+        }
+        if (!limit.concurrency.tryAcquire()) {
+            limit.concurrencyRejected.increment();
+            reject(request, response, HttpStatus.SERVICE_UNAVAILABLE, TimeUnit.SECONDS.toNanos(1),
+                    budget + " concurrency limit of " + limit.concurrency.getLimit() + " reached");
+            return;
+        }
+
+        long start = System.nanoTime();
+        boolean async = false;
+        try {
+            filterChain.doFilter(request, response);
+            if (request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new ReleaseOnCompletion(limit.concurrency, start));
+                async = true;
+            }
+        } finally {
+            if (!async) {
+                long end = System.nanoTime();
+                limit.concurrency.release(end - start, request.getAttribute(CLIENT_REJECTED) == null, end);
+            }
+        }
+    }
+
+    /**
+     * The authenticated user's name, or the remote address of an anonymous request when it
+     * can be trusted to be the client's; {@code null} when there is neither.
+     */
+    private String clientKey(HttpServletRequest request) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.isAuthenticated()
+                && !(authentication instanceof AnonymousAuthenticationToken)) {
+            return "principal:" + authentication.getName();
+        }
+        return addressIsClient ? "address:" + request.getRemoteAddr() : null;
+    }
+
+    static Budget budget(HttpServletRequest request) {
+        String method = request.getMethod();
+        return HttpMethod.GET.matches(method) || HttpMethod.HEAD.matches(method) || HttpMethod.OPTIONS.matches(method)
+                ? Budget.READ : Budget.WRITE;
+    }
+
+    private void reject(HttpServletRequest request, HttpServletResponse response, HttpStatus status, long waitNanos,
+                        String reason) throws IOException {
+        log.debug("Rejecting {} {}: {}", request.getMethod(), request.getRequestURI(), reason);
+        long retryAfter = Math.max(1, (waitNanos + 999_999_999L) / 1_000_000_000L);
+        response.setStatus(status.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(retryAfter));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.getWriter().write("{\"status\":" + status.value() + ",\"error\":\"" + status.getReasonPhrase() + "\"}");
+    }
+
+    private final class ClientLimitFilter extends OncePerRequestFilter {
+        @Override
+        protected boolean shouldNotFilter(HttpServletRequest request) {
+            return !limited(request);
+        }
+
+        @Override
+        protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+                throws ServletException, IOException {
+            String client = clientKey(request);
+            if (client != null) {
+                Budget budget = budget(request);
+                Limits limit = limits.get(budget);
+                long now = System.nanoTime();
+                long wait = limit.clients.get(client, key -> limit.newClientBucket(now)).tryAcquire(now);
+                if (wait > 0) {
+                    limit.clientRejected.increment();
+                    request.setAttribute(CLIENT_REJECTED, Boolean.TRUE);
+                    reject(request, response, HttpStatus.TOO_MANY_REQUESTS, wait,
+                            "client " + client + " is over its " + budget + " rate");
+                    return;
+                }
+            }
+            filterChain.doFilter(request, response);
+        }
+    }
+
+    /**
+     * Timeouts and errors are followed by a completion, so the permit is only given back
+     * once.
+     */
+    private static final class ReleaseOnCompletion implements AsyncListener {
+        private final AdaptiveConcurrencyLimit concurrency;
+        private final long start;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        ReleaseOnCompletion(AdaptiveConcurrencyLimit concurrency, long start) {
+            this.concurrency = concurrency;
+            this.start = start;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            release();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            release();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            release();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            event.getAsyncContext().addListener(this);
+        }
+
+        private void release() {
+            if (released.compareAndSet(false, true)) {
+                long end = System.nanoTime();
+                concurrency.release(end - start, false, end);
+            }
+        }
+    }
+
+    private static final class Limits {
+        final RateLimitProperties.Budget budget;
+        final TokenBucket global;
+        final Cache<String, TokenBucket> clients;
+        final AdaptiveConcurrencyLimit concurrency;
+        final Counter clientRejected;
+        final Counter globalRejected;
+        final Counter concurrencyRejected;
+
+        Limits(Budget name, RateLimitProperties properties, RateLimitProperties.Budget budget, MeterRegistry meterRegistry,
+               long now) {
+            this.budget = budget;
+            this.global = new TokenBucket(budget.globalRate(), budget.globalBurst(), now);
+            this.clients = Caffeine.newBuilder()
+                    .expireAfterAccess(properties.clientExpiry())
+                    .maximumSize(properties.maxClients())
+                    .build();
+            this.concurrency = new AdaptiveConcurrencyLimit(budget.minConcurrency(), budget.maxConcurrency(),
+                    budget.targetLatency().toNanos(), now);
+
+            String tag = name.name().toLowerCase();
+            this.clientRejected = rejected(meterRegistry, tag, "client");
+            this.globalRejected = rejected(meterRegistry, tag, "global");
+            this.concurrencyRejected = rejected(meterRegistry, tag, "concurrency");
+            Gauge.builder("user.rate_limit.concurrency.limit", concurrency, AdaptiveConcurrencyLimit::getLimit)
+                    .tag("budget", tag)
+                    .register(meterRegistry);
+            Gauge.builder("user.rate_limit.concurrency.in_flight", concurrency, AdaptiveConcurrencyLimit::getInFlight)
+                    .tag("budget", tag)
+                    .register(meterRegistry);
+        }
+
+        TokenBucket newClientBucket(long now) {
+            return new TokenBucket(budget.clientRate(), budget.clientBurst(), now);
+        }
+
+        private static Counter rejected(MeterRegistry meterRegistry, String budget, String reason) {
+            return Counter.builder("user.rate_limit.rejected")
+                    .tag("budget", budget)
+                    .tag("reason", reason)
+                    .register(meterRegistry);
+        }
+    }
+}
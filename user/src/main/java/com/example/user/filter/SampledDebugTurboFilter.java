@@ -0,0 +1,33 @@
+package com.example.user.filter;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.spi.FilterReply;
+import org.slf4j.MDC;
+import org.slf4j.Marker;
+
+/**
+ * Lets debug output of the application's own loggers through while the current request
+ * was picked by {@link DebugSamplingFilter}, and leaves every other decision to the
+ * logger's level. Installed in {@code logback-spring.xml}. Logback asks turbo filters
+ * before it builds an event, so a request that was not picked pays one MDC lookup per
+ * debug call and nothing more.
+ */
+public class SampledDebugTurboFilter extends TurboFilter {
+    public static final String MDC_KEY = "debugSampled";
+
+    private String loggerPrefix = "com.example.user";
+
+    public void setLoggerPrefix(String loggerPrefix) {
+        this.loggerPrefix = loggerPrefix;
+    }
+
+    @Override
+    public FilterReply decide(Marker marker, Logger logger, Level level, String format, Object[] params, Throwable t) {
+        if (level != Level.DEBUG || !isStarted() || !logger.getName().startsWith(loggerPrefix)) {
+            return FilterReply.NEUTRAL;
+        }
+        return MDC.get(MDC_KEY) == null ? FilterReply.NEUTRAL : FilterReply.ACCEPT;
+    }
+}
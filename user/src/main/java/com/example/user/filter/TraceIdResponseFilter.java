@@ -0,0 +1,43 @@
+package com.example.user.filter;
+
+import io.micrometer.tracing.Span;
+import io.micrometer.tracing.Tracer;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Echoes the trace id of the current request in an {@code X-Trace-Id} response header, so
+ * a slow or failed call seen by a client can be looked up in the logs and traces. Runs
+ * right after Spring MVC's observation filter, which is the one that starts the span.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 2)
+public class TraceIdResponseFilter extends OncePerRequestFilter {
+    public static final String TRACE_ID_HEADER = "X-Trace-Id";
+
+    private final ObjectProvider<Tracer> tracer;
+
+    public TraceIdResponseFilter(ObjectProvider<Tracer> tracer) {
+        this.tracer = tracer;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        Tracer currentTracer = tracer.getIfAvailable();
+        Span span = currentTracer == null ? null : currentTracer.currentSpan();
+        if (span != null && !span.context().traceId().isEmpty()) {
+            response.setHeader(TRACE_ID_HEADER, span.context().traceId());
+        }
+        filterChain.doFilter(request, response);
+    }
+}
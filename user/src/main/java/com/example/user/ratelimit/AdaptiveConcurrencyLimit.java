@@ -0,0 +1,73 @@
+package com.example.user.ratelimit;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caps the requests in flight with an AIMD limit that follows latency: every response
+ * slower than the target cuts the limit by {@link #BACKOFF} (at most once per target
+ * latency, so one slow burst does not collapse it), and every fast response while the
+ * limit is at least half used raises it by one. When the database slows down, requests
+ * take longer, the limit shrinks and the excess is shed instead of queueing for a
+ * connection. All state is in atomics; acquiring is a CAS loop and never blocks.
+ */
+public class AdaptiveConcurrencyLimit {
+    static final double BACKOFF = 0.9;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long targetLatencyNanos;
+    private final AtomicInteger limit;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong lastDecrease;
+
+    public AdaptiveConcurrencyLimit(int minLimit, int maxLimit, long targetLatencyNanos, long nowNanos) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.targetLatencyNanos = targetLatencyNanos;
+        this.limit = new AtomicInteger(this.maxLimit);
+        this.lastDecrease = new AtomicLong(nowNanos - targetLatencyNanos);
+    }
+
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit.get()) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Gives back a permit taken with {@link #tryAcquire()}.
+     *
+     * @param latencyNanos how long the request took
+     * @param sample       false when the latency says nothing about the backend, e.g. for
+     *                     a request that went asynchronous
+     */
+    public void release(long latencyNanos, boolean sample, long nowNanos) {
+        int used = inFlight.getAndDecrement();
+        if (!sample) {
+            return;
+        }
+        if (latencyNanos > targetLatencyNanos) {
+            long last = lastDecrease.get();
+            if (nowNanos - last >= targetLatencyNanos && lastDecrease.compareAndSet(last, nowNanos)) {
+                limit.updateAndGet(l -> Math.max(minLimit, (int) (l * BACKOFF)));
+            }
+        } else if (used * 2 >= limit.get()) {
+            limit.updateAndGet(l -> Math.min(maxLimit, l + 1));
+        }
+    }
+
+    public int getLimit() {
+        return limit.get();
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+}
@@ -0,0 +1,184 @@
+package com.example.user.repository;
+
+import com.example.user.dto.UserView;
+import com.example.user.entity.User;
+import com.example.user.entity.UserChangeEvent;
+import io.r2dbc.spi.Readable;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * The queries of {@link UserRepository} that the reactive stack needs, on R2DBC. Same
+ * tables, same projections: reads map rows straight to {@link UserView}, and updates and
+ * deletes are single statements whose row count says whether anything matched.
+ * <p>
+ * Ids are drawn from the same sequences Hibernate uses. Hibernate hands out the
+ * {@code allocationSize} ids ending at each value it draws, so taking the drawn value
+ * itself as the id can never collide with an id allocated through JPA.
+ */
+@Repository
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveUserRepository {
+    /**
+     * Rows per round trip when the whole table is streamed; the driver only asks for the
+     * next batch once the subscriber has requested it.
+     */
+    static final int STREAM_FETCH_SIZE = 500;
+
+    private static final String SELECT_VIEW = "SELECT id, name, version FROM user_table";
+
+    private final DatabaseClient databaseClient;
+
+    public ReactiveUserRepository(DatabaseClient databaseClient) {
+        this.databaseClient = databaseClient;
+    }
+
+    public Mono<UserView> findViewById(long id) {
+        return databaseClient.sql(SELECT_VIEW + " WHERE id = :id")
+                .bind("id", id)
+                .map(ReactiveUserRepository::toView)
+                .one();
+    }
+
+    public Mono<User> findById(long id) {
+        return databaseClient.sql("SELECT id, name, password, version FROM user_table WHERE id = :id")
+                .bind("id", id)
+                .map(row -> User.builder()
+                        .id(row.get("id", Long.class))
+                        .name(row.get("name", String.class))
+                        .password(row.get("password", String.class))
+                        .version(row.get("version", Long.class))
+                        .build())
+                .one();
+    }
+
+    public Mono<Boolean> existsById(long id) {
+        return databaseClient.sql("SELECT 1 FROM user_table WHERE id = :id")
+                .bind("id", id)
+                .map(row -> true)
+                .first()
+                .defaultIfEmpty(false);
+    }
+
+    public Flux<UserView> streamAllViews() {
+        return databaseClient.sql(SELECT_VIEW + " ORDER BY id")
+                .filter(statement -> statement.fetchSize(STREAM_FETCH_SIZE))
+                .map(ReactiveUserRepository::toView)
+                .all();
+    }
+
+    public Flux<UserView> findViewsAfter(long after, int limit) {
+        return databaseClient.sql(SELECT_VIEW + " WHERE id > :after ORDER BY id LIMIT :limit")
+                .bind("after", after)
+                .bind("limit", limit)
+                .map(ReactiveUserRepository::toView)
+                .all();
+    }
+
+    public Flux<UserView> findViewsByName(String name, int limit) {
+        return findViews("name = :name", name, limit);
+    }
+
+    public Flux<UserView> findViewsByNameIgnoreCase(String name, int limit) {
+        return findViews("lower(name) = lower(:name)", name, limit);
+    }
+
+    public Flux<UserView> findViewsByNamePrefix(String prefix, int limit) {
+        return findViews("name LIKE :name || '%' ESCAPE '\\'", prefix, limit);
+    }
+
+    public Flux<UserView> findViewsByNamePrefixIgnoreCase(String prefix, int limit) {
+        return findViews("lower(name) LIKE lower(:name) || '%' ESCAPE '\\'", prefix, limit);
+    }
+
+    /**
+     * Inserts with version 0 and returns the stored user.
+     */
+    public Mono<User> insert(User user) {
+        return databaseClient.sql("SELECT nextval('user_table_id_seq')")
+                .map(row -> row.get(0, Long.class))
+                .one()
+                .flatMap(id -> databaseClient.sql("INSERT INTO user_table (id, name, password, version) VALUES (:id, :name, :password, 0)")
+                        .bind("id", id)
+                        .bind("name", user.getName())
+                        .bind("password", user.getPassword())
+                        .then()
+                        .thenReturn(User.builder().id(id).name(user.getName()).password(user.getPassword()).version(0L).build()));
+    }
+
+    public Mono<Long> findVersionById(long id) {
+        return databaseClient.sql("SELECT version FROM user_table WHERE id = :id")
+                .bind("id", id)
+                .map(row -> row.get("version", Long.class))
+                .one();
+    }
+
+    public Mono<Long> updateUser(long id, String name, String password) {
+        return databaseClient.sql("UPDATE user_table SET name = :name, password = :password, version = version + 1 WHERE id = :id")
+                .bind("id", id)
+                .bind("name", name)
+                .bind("password", password)
+                .fetch()
+                .rowsUpdated();
+    }
+
+    public Mono<Long> updateUserIfVersion(long id, long version, String name, String password) {
+        return databaseClient.sql("UPDATE user_table SET name = :name, password = :password, version = version + 1"
+                        + " WHERE id = :id AND version = :version")
+                .bind("id", id)
+                .bind("version", version)
+                .bind("name", name)
+                .bind("password", password)
+                .fetch()
+                .rowsUpdated();
+    }
+
+    public Mono<Long> removeById(long id) {
+        return databaseClient.sql("DELETE FROM user_table WHERE id = :id")
+                .bind("id", id)
+                .fetch()
+                .rowsUpdated();
+    }
+
+    public Mono<Long> updatePasswordIfUnchanged(long id, String oldPassword, String newPassword) {
+        return databaseClient.sql("UPDATE user_table SET password = :newPassword WHERE id = :id AND password = :oldPassword")
+                .bind("id", id)
+                .bind("oldPassword", oldPassword)
+                .bind("newPassword", newPassword)
+                .fetch()
+                .rowsUpdated();
+    }
+
+    /**
+     * Writes an outbox row; run it in the same transaction as the change it describes.
+     */
+    public Mono<Void> insertChangeEvent(UserChangeEvent event) {
+        DatabaseClient.GenericExecuteSpec spec = databaseClient.sql("INSERT INTO user_change_event"
+                        + " (id, user_id, type, name, user_version, created_at)"
+                        + " VALUES (nextval('user_change_event_id_seq'), :userId, :type, :name, :userVersion, :createdAt)")
+                .bind("userId", event.getUserId())
+                .bind("type", event.getType().name())
+                .bind("createdAt", OffsetDateTime.ofInstant(event.getCreatedAt(), ZoneOffset.UTC));
+        spec = event.getName() == null ? spec.bindNull("name", String.class) : spec.bind("name", event.getName());
+        spec = event.getUserVersion() == null ? spec.bindNull("userVersion", Long.class) : spec.bind("userVersion", event.getUserVersion());
+        return spec.then();
+    }
+
+    private Flux<UserView> findViews(String condition, String name, int limit) {
+        return databaseClient.sql(SELECT_VIEW + " WHERE " + condition + " ORDER BY id LIMIT :limit")
+                .bind("name", name)
+                .bind("limit", limit)
+                .map(ReactiveUserRepository::toView)
+                .all();
+    }
+
+    private static UserView toView(Readable row) {
+        return new UserView(row.get("id", Long.class), row.get("name", String.class), row.get("version", Long.class));
+    }
+}
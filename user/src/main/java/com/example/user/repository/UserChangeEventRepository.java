@@ -0,0 +1,39 @@
+package com.example.user.repository;
+
+import com.example.user.dto.UserChange;
+import com.example.user.entity.UserChangeEvent;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.List;
+
+@Repository
+public interface UserChangeEventRepository extends JpaRepository<UserChangeEvent, Long> {
+
+    /**
+     * Locks the oldest unpublished events, so a second relay instance waits and then finds
+     * them already published instead of numbering them again.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select e from UserChangeEvent e where e.position is null order by e.id")
+    List<UserChangeEvent> findUnpublished(Limit limit);
+
+    @Query("select coalesce(max(e.position), 0) from UserChangeEvent e")
+    long findLastPosition();
+
+    @Query("select new com.example.user.dto.UserChange(e.position, e.userId, e.type, e.name, e.userVersion, e.createdAt) "
+            + "from UserChangeEvent e where e.position > :since order by e.position")
+    List<UserChange> findChangesSince(long since, Limit limit);
+
+    @Transactional
+    @Modifying
+    @Query("delete from UserChangeEvent e where e.position is not null and e.createdAt < :before")
+    int deletePublishedBefore(Instant before);
+}
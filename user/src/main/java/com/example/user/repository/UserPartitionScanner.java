@@ -0,0 +1,224 @@
+package com.example.user.repository;
+
+import com.example.user.dto.NameMatch;
+import com.example.user.dto.UserView;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Reads that touch every partition of a hash-partitioned {@code user_table} (see the
+ * PostgreSQL migration {@code V6}). Each partition is queried on its own connection and
+ * thread, and the results are merged here. Lookups by id need none of this: PostgreSQL
+ * prunes them to the one partition the id hashes to. Neither do id-ordered pages, which it
+ * already serves by merging the partitions' primary key indexes and stopping after one page.
+ * <p>
+ * The partitions are read from the catalog on first use. On H2, or a table that is not
+ * partitioned, {@link #isPartitioned()} is false and callers use {@link UserRepository}.
+ * Searches and exports run on separate, small pools so a long export cannot hold up
+ * searches; each scan takes one connection from the data source while it runs. Both pools
+ * are deliberately not beans, like the password hashing pool.
+ */
+@Slf4j
+@Repository
+public class UserPartitionScanner implements DisposableBean {
+    static final String PARTITIONS_SQL = """
+            select c.relname from pg_inherits i join pg_class c on c.oid = i.inhrelid
+            where i.inhparent = to_regclass('user_table') order by c.relname""";
+    private static final RowMapper<UserView> VIEW = (rs, row) ->
+            new UserView(rs.getLong("id"), rs.getString("name"), rs.getLong("version"));
+    private static final int EXPORT_BATCH_SIZE = 500;
+    private static final long EXPORT_POLL_MILLIS = 100;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final JdbcTemplate cursorTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final ThreadPoolTaskExecutor searchExecutor;
+    private final ThreadPoolTaskExecutor exportExecutor;
+    private volatile List<String> partitions;
+
+    @Autowired
+    public UserPartitionScanner(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                                @Value("${user.partitions.search-threads:4}") int searchThreads,
+                                @Value("${user.partitions.export-threads:2}") int exportThreads) {
+        this(jdbcTemplate, transactionManager, searchThreads, exportThreads, null);
+    }
+
+    /**
+     * With the partition tables given instead of read from the catalog.
+     */
+    UserPartitionScanner(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                         int searchThreads, int exportThreads, List<String> partitions) {
+        this.partitions = partitions;
+        this.jdbcTemplate = jdbcTemplate;
+        this.cursorTemplate = new JdbcTemplate(jdbcTemplate.getDataSource());
+        this.cursorTemplate.setFetchSize(EXPORT_BATCH_SIZE);
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.searchExecutor = executor("partition-search-", searchThreads, new ThreadPoolExecutor.CallerRunsPolicy());
+        this.exportExecutor = executor("partition-export-", exportThreads, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    public boolean isPartitioned() {
+        return !partitions().isEmpty();
+    }
+
+    /**
+     * Same results as the name queries of {@link UserRepository}: ordered by id and at most
+     * {@code limit} of them. For {@link NameMatch#PREFIX} the name must already have its
+     * {@code LIKE} wildcards escaped. Every partition returns its first {@code limit}
+     * matches and the lowest ids across all of them win.
+     */
+    public List<UserView> findViewsByName(String name, NameMatch match, boolean ignoreCase, int limit) {
+        String condition = switch (match) {
+            case EXACT -> ignoreCase ? "lower(name) = lower(?)" : "name = ?";
+            case PREFIX -> ignoreCase ? "lower(name) like lower(?) escape '\\'" : "name like ? escape '\\'";
+        };
+        Object value = match == NameMatch.PREFIX ? name + "%" : name;
+        List<CompletableFuture<List<UserView>>> scans = new ArrayList<>();
+        for (String partition : partitions()) {
+            String sql = "select id, name, version from " + quote(partition) + " where " + condition + " order by id limit ?";
+            scans.add(CompletableFuture.supplyAsync(
+                    () -> readOnlyTransaction.execute(status -> jdbcTemplate.query(sql, VIEW, value, limit)), searchExecutor));
+        }
+        return join(CompletableFuture.allOf(scans.toArray(CompletableFuture[]::new))
+                .thenApply(done -> scans.stream()
+                        .flatMap(scan -> scan.join().stream())
+                        .sorted(Comparator.comparing(UserView::id))
+                        .limit(limit)
+                        .toList()));
+    }
+
+    /**
+     * Hands every user to the consumer, on the calling thread. Partitions are read in
+     * parallel, each through a forward-only cursor in id order, and their rows are passed
+     * on in batches as they arrive, so users come out in id order within a partition but
+     * not overall. At most a few batches are buffered; when the consumer falls behind, the
+     * readers wait, and when it throws they stop.
+     */
+    public void forEachView(Consumer<UserView> consumer) {
+        List<String> scanned = partitions();
+        BlockingQueue<List<UserView>> batches = new ArrayBlockingQueue<>(2 * scanned.size());
+        AtomicBoolean cancelled = new AtomicBoolean();
+        List<CompletableFuture<Void>> scans = new ArrayList<>();
+        try {
+            for (String partition : scanned) {
+                String sql = "select id, name, version from " + quote(partition) + " order by id";
+                scans.add(CompletableFuture.runAsync(() -> readOnlyTransaction.executeWithoutResult(status -> {
+                    if (cancelled.get()) {
+                        return;
+                    }
+                    List<UserView> batch = new ArrayList<>(EXPORT_BATCH_SIZE);
+                    cursorTemplate.query(sql, rs -> {
+                        batch.add(VIEW.mapRow(rs, 0));
+                        if (batch.size() == EXPORT_BATCH_SIZE) {
+                            hand(batches, List.copyOf(batch), cancelled);
+                            batch.clear();
+                        }
+                    });
+                    if (!batch.isEmpty()) {
+                        hand(batches, List.copyOf(batch), cancelled);
+                    }
+                }), exportExecutor));
+            }
+            CompletableFuture<Void> all = CompletableFuture.allOf(scans.toArray(CompletableFuture[]::new));
+            while (!all.isDone() || !batches.isEmpty()) {
+                List<UserView> batch = batches.poll(EXPORT_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (batch != null) {
+                    batch.forEach(consumer);
+                }
+                for (CompletableFuture<Void> scan : scans) {
+                    if (scan.isCompletedExceptionally()) {
+                        join(scan);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while exporting users", e);
+        } finally {
+            cancelled.set(true);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        searchExecutor.shutdown();
+        exportExecutor.shutdown();
+    }
+
+    private List<String> partitions() {
+        List<String> found = partitions;
+        if (found == null) {
+            String database = jdbcTemplate.execute((ConnectionCallback<String>) connection -> connection.getMetaData().getDatabaseProductName());
+            found = "PostgreSQL".equals(database) ? jdbcTemplate.queryForList(PARTITIONS_SQL, String.class) : List.of();
+            log.info("user_table has {} partitions", found.size());
+            partitions = found;
+        }
+        return found;
+    }
+
+    private static void hand(BlockingQueue<List<UserView>> batches, List<UserView> batch, AtomicBoolean cancelled) {
+        try {
+            while (!batches.offer(batch, EXPORT_POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (cancelled.get()) {
+                    throw new IllegalStateException("Export was abandoned");
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while exporting users", e);
+        }
+    }
+
+    private static String quote(String identifier) {
+        return '"' + identifier.replace("\"", "\"\"") + '"';
+    }
+
+    /**
+     * When the queue is full, searches run the scan on the calling thread, which slows them
+     * down instead of failing them. Exports fail: their caller is the one draining the rows.
+     */
+    private static ThreadPoolTaskExecutor executor(String threadNamePrefix, int threads, RejectedExecutionHandler rejected) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(1000);
+        executor.setThreadNamePrefix(threadNamePrefix);
+        executor.setRejectedExecutionHandler(rejected);
+        executor.initialize();
+        return executor;
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+}
@@ -1,11 +1,74 @@
 package com.example.user.repository;
 
+import com.example.user.dto.UserView;
 import com.example.user.entity.User;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
 @Repository
 public interface UserRepository extends JpaRepository<User,Long> {
     List<User> findByName(String name);
+
+    @Query("select new com.example.user.dto.UserView(u.id, u.name, u.version) from User u where u.id = :id")
+    Optional<UserView> findViewById(long id);
+
+    @Query("select new com.example.user.dto.UserView(u.id, u.name, u.version) from User u")
+    List<UserView> findAllViews();
+
+    @Query("select new com.example.user.dto.UserView(u.id, u.name, u.version) from User u where u.id > :after order by u.id")
+    List<UserView> findViewsAfter(long after, Limit limit);
+
+    @Query("select new com.example.user.dto.UserView(u.id, u.name, u.version) from User u order by u.id")
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    Stream<UserView> streamAllViews();
+
+    @Query("select new com.example.user.dto.UserView(u.id, u.name, u.version) from User u where u.name = :name order by u.id")
+    List<UserView> findViewsByName(String name, Limit limit);
+
+    @Query("select new com.example.user.dto.UserView(u.id, u.name, u.version) from User u where lower(u.name) = lower(:name) order by u.id")
+    List<UserView> findViewsByNameIgnoreCase(String name, Limit limit);
+
+    @Query("select new com.example.user.dto.UserView(u.id, u.name, u.version) from User u where u.name like concat(:prefix, '%') escape '\\' order by u.id")
+    List<UserView> findViewsByNamePrefix(String prefix, Limit limit);
+
+    @Query("select new com.example.user.dto.UserView(u.id, u.name, u.version) from User u where lower(u.name) like concat(lower(:prefix), '%') escape '\\' order by u.id")
+    List<UserView> findViewsByNamePrefixIgnoreCase(String prefix, Limit limit);
+
+    @Query("select u.id from User u where u.id in :ids")
+    List<Long> findExistingIds(Collection<Long> ids);
+
+    @Query("select u.version from User u where u.id = :id")
+    Optional<Long> findVersionById(long id);
+
+    @Transactional
+    @Modifying
+    @Query("update User u set u.name = :name, u.password = :password, u.version = u.version + 1 where u.id = :id")
+    int updateUser(long id, String name, String password);
+
+    @Transactional
+    @Modifying
+    @Query("update User u set u.name = :name, u.password = :password, u.version = u.version + 1 where u.id = :id and u.version = :version")
+    int updateUserIfVersion(long id, long version, String name, String password);
+
+    @Transactional
+    @Modifying
+    @Query("delete from User u where u.id = :id")
+    int removeById(long id);
+
+    @Transactional
+    @Modifying
+    @Query("update User u set u.password = :newPassword where u.id = :id and u.password = :oldPassword")
+    int updatePasswordIfUnchanged(long id, String oldPassword, String newPassword);
 }
@@ -0,0 +1,104 @@
+package com.example.user.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+
+/**
+ * Short-lived cache of credentials that were verified recently, one entry per user.
+ * Usernames are user ids, which the login parses, so {@code 007} and {@code +7} are user 7
+ * too; entries are kept under the id in its plain form, so that dropping user 7 drops them
+ * whatever spelling the client logged in with. Other usernames are never cached. Only an HMAC of the password is kept, under a key generated at startup, so the cache
+ * contents are useless outside this process. Entries expire after
+ * {@code user.auth.cache-ttl} and are dropped as soon as the user is updated or deleted.
+ */
+@Component
+public class CredentialCache {
+    private static final String HMAC = "HmacSHA256";
+
+    private final Cache<String, Entry> entries;
+    private volatile SecretKeySpec key;
+
+    public CredentialCache(@Value("${user.auth.cache-ttl:60s}") Duration ttl,
+                           @Value("${user.auth.cache-size:10000}") long maximumSize) {
+        this.entries = Caffeine.newBuilder()
+                .expireAfterWrite(ttl)
+                .maximumSize(maximumSize)
+                .build();
+        this.key = newKey();
+    }
+
+    /**
+     * @return the authentication cached for this username and password, or null
+     */
+    public Authentication get(String username, String password) {
+        String id = canonical(username);
+        Entry entry = id == null ? null : entries.getIfPresent(id);
+        if (entry == null || !MessageDigest.isEqual(entry.digest(), digest(id, password))) {
+            return null;
+        }
+        return entry.authentication();
+    }
+
+    public void put(String username, String password, Authentication authentication) {
+        String id = canonical(username);
+        if (id != null) {
+            entries.put(id, new Entry(digest(id, password), authentication));
+        }
+    }
+
+    public void invalidate(Object username) {
+        String id = canonical(String.valueOf(username));
+        if (id != null) {
+            entries.invalidate(id);
+        }
+    }
+
+    /**
+     * Drops every entry and switches to a new key, e.g. after a restore from a checkpoint
+     * image that may be shared by many instances.
+     */
+    public void reset() {
+        key = newKey();
+        entries.invalidateAll();
+    }
+
+    private static String canonical(String username) {
+        try {
+            return Long.toString(Long.parseLong(username));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static SecretKeySpec newKey() {
+        byte[] secret = new byte[32];
+        new SecureRandom().nextBytes(secret);
+        return new SecretKeySpec(secret, HMAC);
+    }
+
+    private byte[] digest(String username, String password) {
+        try {
+            Mac mac = Mac.getInstance(HMAC);
+            mac.init(key);
+            mac.update(username.getBytes(StandardCharsets.UTF_8));
+            mac.update((byte) 0);
+            return mac.doFinal(password.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HMAC-SHA256 is not available", e);
+        }
+    }
+
+    private record Entry(byte[] digest, Authentication authentication) {
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.user.security;
+
+import com.example.user.repository.UserRepository;
+import com.example.user.shard.UserShards;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.stereotype.Service;
+
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Users log in with their id as username; however it is spelled, the principal is named by
+ * the id in its plain form. Hashes written with an outdated algorithm or
+ * cost are replaced after a successful login; like {@code UserService#authenticate}, the
+ * write only lands if the stored hash has not changed in the meantime. With shards, both
+ * go to the user's shard. Users listed in {@code user.security.admin-ids} also get the
+ * admin role, which bulk operations and the actuator endpoints other than health require.
+ */
+@Slf4j
+@Service
+public class UserAccountService implements UserDetailsService, UserDetailsPasswordService {
+    public static final String ROLE_USER = "USER";
+    public static final String ROLE_ADMIN = "ADMIN";
+
+    @Autowired
+    UserRepository userRepository;
+    @Autowired
+    UserShards userShards;
+    @Value("${user.security.admin-ids:}")
+    Set<Long> adminIds;
+
+    @Override
+    public UserDetails loadUserByUsername(String username) {
+        long id;
+        try {
+            id = Long.parseLong(username);
+        } catch (NumberFormatException e) {
+            throw new UsernameNotFoundException("User not found");
+        }
+        return userShards.onOwner(id, () -> userRepository.findById(id), Optional::isPresent)
+                .filter(user -> user.getPassword() != null)
+                .map(user -> User.withUsername(Long.toString(id)).password(user.getPassword()).roles(roles(id)).build())
+                .orElseThrow(() -> new UsernameNotFoundException("User not found"));
+    }
+
+    private String[] roles(long id) {
+        return adminIds.contains(id) ? new String[]{ROLE_USER, ROLE_ADMIN} : new String[]{ROLE_USER};
+    }
+
+    @Override
+    public UserDetails updatePassword(UserDetails user, String newPassword) {
+        long id = Long.parseLong(user.getUsername());
+        if (userShards.onOwner(id, () -> userRepository.updatePasswordIfUnchanged(id, user.getPassword(), newPassword), rows -> rows > 0) == 0) {
+            log.info("Password of user {} changed during login, hash not upgraded", user.getUsername());
+            return user;
+        }
+        return User.withUserDetails(user).password(newPassword).build();
+    }
+}
@@ -0,0 +1,187 @@
+package com.example.user.service;
+
+import com.example.user.exceptions.IdempotencyKeyReusedException;
+import com.example.user.exceptions.UserInvalidAttributesException;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Remembers the response to each write sent with an {@code Idempotency-Key} header for
+ * {@code user.idempotency.ttl}, so a client that retries after a timeout gets the original
+ * response instead of creating the users a second time. Keys are scoped by endpoint and
+ * authenticated user. Anonymous sign-ups are scoped by the client's address, and only when
+ * {@code server.forward-headers-strategy} is set: behind a proxy the remote address is the
+ * proxy's, so unrelated clients would share keys and could get each other's responses.
+ * Without it, a key on an anonymous request is ignored. The response is kept as its JSON bytes, next to a SHA-256 digest of
+ * the request body that answers a key reused for a different body with 422; the status is
+ * the endpoint's own. The store holds at most {@code user.idempotency.max-size} of these,
+ * by their size in bytes, so a few large batch responses push out many small ones rather
+ * than growing the heap.
+ * <p>
+ * A retry that arrives while the original is still running waits for it. A request that
+ * fails leaves no entry behind, so it can be retried with the same key.
+ * <p>
+ * The store lives in this instance's memory. A retry that a load balancer sends to another
+ * instance is not recognized there and writes again.
+ */
+@Slf4j
+@Component
+public class IdempotencyStore {
+    public static final String HEADER = "Idempotency-Key";
+    public static final int MAX_KEY_LENGTH = 255;
+
+    /**
+     * Rough per-entry cost of the cache node, the entry and the array headers.
+     */
+    private static final int ENTRY_OVERHEAD = 128;
+
+    private final ObjectMapper objectMapper;
+    private final Cache<String, Entry> responses;
+    private final ConcurrentMap<String, CompletableFuture<Entry>> inFlight = new ConcurrentHashMap<>();
+    private final boolean addressIsClient;
+
+    public IdempotencyStore(ObjectMapper objectMapper,
+                            @Value("${user.idempotency.ttl:24h}") Duration ttl,
+                            @Value("${user.idempotency.max-size:64MB}") DataSize maximumSize,
+                            @Value("${server.forward-headers-strategy:none}") String forwardHeadersStrategy) {
+        this.objectMapper = objectMapper;
+        this.addressIsClient = !forwardHeadersStrategy.equalsIgnoreCase("none");
+        this.responses = Caffeine.newBuilder()
+                .expireAfterWrite(ttl)
+                .maximumWeight(maximumSize.toBytes())
+                .weigher((String key, Entry entry) -> entry.weight(key))
+                .build();
+    }
+
+    /**
+     * Runs the work once per key and returns its response; without a key it simply runs it.
+     */
+    public <T> T execute(String operation, String key, Object request, Class<T> responseType, Supplier<T> work) {
+        if (key == null) {
+            return work.get();
+        }
+        if (key.isBlank() || key.length() > MAX_KEY_LENGTH) {
+            throw new UserInvalidAttributesException(HEADER + " must be between 1 and " + MAX_KEY_LENGTH + " characters");
+        }
+        String client = currentClient();
+        if (client == null) {
+            return work.get();
+        }
+        String scopedKey = operation + " " + client + " " + key;
+        byte[] fingerprint = fingerprint(request);
+        while (true) {
+            Entry entry = responses.getIfPresent(scopedKey);
+            if (entry == null) {
+                CompletableFuture<Entry> pending = new CompletableFuture<>();
+                CompletableFuture<Entry> existing = inFlight.putIfAbsent(scopedKey, pending);
+                if (existing == null) {
+                    entry = responses.getIfPresent(scopedKey);
+                    if (entry == null) {
+                        return run(scopedKey, pending, fingerprint, work);
+                    }
+                    inFlight.remove(scopedKey, pending);
+                    pending.complete(entry);
+                } else {
+                    try {
+                        entry = existing.join();
+                    } catch (CompletionException e) {
+                        continue;
+                    }
+                }
+            }
+            if (!MessageDigest.isEqual(entry.fingerprint(), fingerprint)) {
+                log.warn("Idempotency key reused for a different request to {}", operation);
+                throw new IdempotencyKeyReusedException(HEADER + " was already used for a different request");
+            }
+            log.info("Replaying response for idempotency key on {}", operation);
+            return replay(entry, responseType);
+        }
+    }
+
+    /**
+     * The response is stored before the in-flight marker goes, so a retry always finds one
+     * of them.
+     */
+    private <T> T run(String scopedKey, CompletableFuture<Entry> pending, byte[] fingerprint, Supplier<T> work) {
+        T response;
+        try {
+            response = work.get();
+        } catch (RuntimeException | Error e) {
+            inFlight.remove(scopedKey, pending);
+            pending.completeExceptionally(e);
+            throw e;
+        }
+        Entry entry;
+        try {
+            entry = new Entry(fingerprint, objectMapper.writeValueAsBytes(response));
+        } catch (JsonProcessingException e) {
+            log.warn("Could not store the response for an idempotency key", e);
+            inFlight.remove(scopedKey, pending);
+            pending.completeExceptionally(e);
+            return response;
+        }
+        responses.put(scopedKey, entry);
+        inFlight.remove(scopedKey, pending);
+        pending.complete(entry);
+        return response;
+    }
+
+    private <T> T replay(Entry entry, Class<T> responseType) {
+        try {
+            return objectMapper.readValue(entry.body(), responseType);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not replay the stored response", e);
+        }
+    }
+
+    private byte[] fingerprint(Object request) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(objectMapper.writeValueAsBytes(request));
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Could not fingerprint the request", e);
+        }
+    }
+
+    /**
+     * The authenticated user, or the address of an anonymous client when it can be trusted
+     * to be the client's own; {@code null} when there is neither.
+     */
+    private String currentClient() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.isAuthenticated()
+                && !(authentication instanceof AnonymousAuthenticationToken)) {
+            return "principal:" + authentication.getName();
+        }
+        if (addressIsClient && RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes request) {
+            return "address:" + request.getRequest().getRemoteAddr();
+        }
+        return null;
+    }
+
+    private record Entry(byte[] fingerprint, byte[] body) {
+        int weight(String key) {
+            return ENTRY_OVERHEAD + 2 * key.length() + fingerprint.length + body.length;
+        }
+    }
+}
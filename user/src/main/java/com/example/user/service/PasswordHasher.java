@@ -0,0 +1,106 @@
+package com.example.user.service;
+
+import com.example.user.config.PasswordConfig;
+import com.example.user.exceptions.PasswordHashingUnavailableException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Runs the configured {@link PasswordEncoder} on a dedicated, bounded pool. Callers that
+ * need the result block on it, but the pool, not the number of request threads, decides
+ * how many hashes are computed at once; once its queue is full new work is rejected with
+ * a 503 instead of every request thread ending up in key stretching.
+ * <p>
+ * The pool is deliberately not a bean: an {@code Executor} bean would replace Spring
+ * Boot's {@code applicationTaskExecutor}.
+ */
+@Slf4j
+@Component
+public class PasswordHasher implements DisposableBean {
+    private final PasswordEncoder passwordEncoder;
+    private final ThreadPoolTaskExecutor executor;
+
+    @Autowired
+    public PasswordHasher(PasswordEncoder passwordEncoder,
+                          @Value("${user.password.hash-threads:0}") int threads,
+                          @Value("${user.password.queue-capacity:1000}") int queueCapacity) {
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.passwordEncoder = passwordEncoder;
+        this.executor = new ThreadPoolTaskExecutor();
+        this.executor.setCorePoolSize(poolSize);
+        this.executor.setMaxPoolSize(poolSize);
+        this.executor.setQueueCapacity(queueCapacity);
+        this.executor.setThreadNamePrefix("password-hash-");
+        this.executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        this.executor.initialize();
+    }
+
+    public CompletableFuture<String> encodeAsync(String rawPassword) {
+        try {
+            return CompletableFuture.supplyAsync(() -> passwordEncoder.encode(rawPassword), executor);
+        } catch (RejectedExecutionException e) {
+            log.warn("Password hashing queue is full");
+            return CompletableFuture.failedFuture(new PasswordHashingUnavailableException("Password hashing is busy, try again later"));
+        }
+    }
+
+    public String encode(String rawPassword) {
+        return join(encodeAsync(rawPassword));
+    }
+
+    public CompletableFuture<Boolean> matchesAsync(String rawPassword, String encodedPassword) {
+        try {
+            return CompletableFuture.supplyAsync(() -> passwordEncoder.matches(rawPassword, encodedPassword), executor);
+        } catch (RejectedExecutionException e) {
+            log.warn("Password hashing queue is full");
+            return CompletableFuture.failedFuture(new PasswordHashingUnavailableException("Password hashing is busy, try again later"));
+        }
+    }
+
+    public boolean matches(String rawPassword, String encodedPassword) {
+        return join(matchesAsync(rawPassword, encodedPassword));
+    }
+
+    /**
+     * True when the hash was written with another algorithm or a lower cost than the one
+     * currently configured, or is not hashed at all.
+     */
+    public boolean needsUpgrade(String encodedPassword) {
+        return passwordEncoder.upgradeEncoding(encodedPassword);
+    }
+
+    /**
+     * True when the value already carries the {@code {id}} prefix of one of the configured
+     * algorithms, i.e. it is a hash and not a raw password.
+     */
+    public boolean isEncoded(String password) {
+        int end = password.indexOf('}');
+        return password.startsWith("{") && end > 0 && PasswordConfig.ENCODER_IDS.contains(password.substring(1, end));
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdown();
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+}
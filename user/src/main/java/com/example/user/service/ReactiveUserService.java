@@ -0,0 +1,201 @@
+package com.example.user.service;
+
+import com.example.user.dto.NameMatch;
+import com.example.user.dto.UserPage;
+import com.example.user.dto.UserView;
+import com.example.user.entity.User;
+import com.example.user.entity.UserChangeEvent;
+import com.example.user.exceptions.UserIdNotFoundException;
+import com.example.user.exceptions.UserInvalidAttributesException;
+import com.example.user.exceptions.UserVersionConflictException;
+import com.example.user.repository.ReactiveUserRepository;
+import com.example.user.security.CredentialCache;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.logging.log4j.util.Strings;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import static java.util.Objects.isNull;
+
+/**
+ * {@link UserService} for the reactive stack: same validation, same exceptions, same
+ * outbox events in the same transaction as the change, but nothing blocks. Queries run on
+ * R2DBC and password hashes are computed on the hashing pool, so an event loop thread is
+ * never held while either is in progress.
+ * <p>
+ * There is no user cache here; reads go to the database every time.
+ */
+@Slf4j
+@Service
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveUserService {
+    @Autowired
+    ReactiveUserRepository userRepository;
+    @Autowired
+    PasswordHasher passwordHasher;
+    @Autowired
+    TransactionalOperator transactionalOperator;
+    @Autowired
+    CredentialCache credentialCache;
+
+    public Mono<User> createUser(User user) {
+        if (isUserInvalid(user)) {
+            log.error("One or more user attributes was empty");
+            return Mono.error(new UserInvalidAttributesException("One or more user attributes was empty"));
+        }
+        return Mono.fromFuture(() -> passwordHasher.encodeAsync(user.getPassword()))
+                .flatMap(password -> userRepository.insert(User.builder().name(user.getName()).password(password).build())
+                        .flatMap(saved -> userRepository.insertChangeEvent(
+                                        UserChangeEvent.of(UserChangeEvent.Type.CREATED, saved.getId(), saved.getName(), saved.getVersion()))
+                                .thenReturn(saved))
+                        .as(transactionalOperator::transactional));
+    }
+
+    /**
+     * Every user, read from the database as the subscriber asks for them. Demand travels
+     * back to the driver, so a slow client holds at most a fetch-size batch in memory.
+     */
+    public Flux<UserView> streamAllUsers() {
+        return userRepository.streamAllViews();
+    }
+
+    public Mono<UserPage> findUsersPage(final Long after, final int size) {
+        if (size < 1) {
+            log.error("Invalid page size {}", size);
+            return Mono.error(new UserInvalidAttributesException("Page size must be greater than zero"));
+        }
+        int pageSize = Math.min(size, UserService.MAX_PAGE_SIZE);
+        return userRepository.findViewsAfter(isNull(after) ? 0L : after, pageSize)
+                .collectList()
+                .map(users -> new UserPage(users, users.size() == pageSize ? users.get(users.size() - 1).id() : null));
+    }
+
+    public Mono<UserView> findUserById(final long id) {
+        log.debug("Received request to find users with id: {}", id);
+        return userRepository.findViewById(id)
+                .switchIfEmpty(Mono.defer(() -> {
+                    log.error("No users found with this id: {}", id);
+                    return Mono.error(new UserIdNotFoundException("Users with name " + id + " do not exist"));
+                }));
+    }
+
+    public Flux<UserView> searchByName(String name, NameMatch match, boolean ignoreCase, int limit) {
+        if (Strings.isBlank(name) || isNull(match) || limit < 1) {
+            log.error("Invalid search for name {} with match {} and limit {}", name, match, limit);
+            return Flux.error(new UserInvalidAttributesException("Name cannot be blank and limit must be greater than zero"));
+        }
+        int resultLimit = Math.min(limit, UserService.MAX_PAGE_SIZE);
+        return switch (match) {
+            case EXACT -> ignoreCase
+                    ? userRepository.findViewsByNameIgnoreCase(name, resultLimit)
+                    : userRepository.findViewsByName(name, resultLimit);
+            case PREFIX -> ignoreCase
+                    ? userRepository.findViewsByNamePrefixIgnoreCase(escapeLike(name), resultLimit)
+                    : userRepository.findViewsByNamePrefix(escapeLike(name), resultLimit);
+        };
+    }
+
+    /**
+     * Same single conditional {@code UPDATE} as {@link UserService#updateUserById}; the id
+     * is only looked up again when no row was touched, to tell 404 from 409.
+     */
+    public Mono<User> updateUserById(User user, final Long userId) {
+        if (user == null || user.getName() == null || user.getPassword() == null) {
+            log.error("User or its properties cannot be null {}", userId);
+            return Mono.error(new UserInvalidAttributesException("User or its properties cannot be null"));
+        }
+        if (user.getName().isBlank() || user.getPassword().isBlank()) {
+            log.error("Name or password cannot be empty or blank {}", userId);
+            return Mono.error(new UserInvalidAttributesException("Name or password cannot be null, empty or blank"));
+        }
+
+        Long version = user.getVersion();
+        return Mono.fromFuture(() -> passwordHasher.encodeAsync(user.getPassword()))
+                .flatMap(password -> (isNull(version)
+                        ? userRepository.updateUser(userId, user.getName(), password)
+                        : userRepository.updateUserIfVersion(userId, version, user.getName(), password))
+                        .filter(rows -> rows > 0)
+                        .flatMap(rows -> isNull(version) ? userRepository.findVersionById(userId) : Mono.just(version + 1))
+                        .flatMap(stored -> userRepository.insertChangeEvent(
+                                        UserChangeEvent.of(UserChangeEvent.Type.UPDATED, userId, user.getName(), stored))
+                                .thenReturn(stored))
+                        .as(transactionalOperator::transactional)
+                        .doFinally(signal -> credentialCache.invalidate(userId))
+                        .map(stored -> User.builder().id(userId).name(user.getName()).password(password).version(stored).build())
+                        .switchIfEmpty(Mono.defer(() -> notUpdated(userId, version))));
+    }
+
+    public Mono<Void> deleteUserById(final Long userId) {
+        return userRepository.removeById(userId)
+                .flatMap(rows -> rows == 0
+                        ? Mono.just(false)
+                        : userRepository.insertChangeEvent(UserChangeEvent.of(UserChangeEvent.Type.DELETED, userId, null, null))
+                        .thenReturn(true))
+                .as(transactionalOperator::transactional)
+                .doFinally(signal -> credentialCache.invalidate(userId))
+                .flatMap(deleted -> {
+                    if (!deleted) {
+                        log.error("No users found with this id: {}", userId);
+                        return Mono.error(new UserIdNotFoundException("User Not Found"));
+                    }
+                    return Mono.empty();
+                });
+    }
+
+    /**
+     * Like {@link UserService#authenticate}, including the background re-hash of outdated
+     * hashes, with the hash check on the hashing pool.
+     */
+    public Mono<Boolean> authenticate(final long id, String rawPassword) {
+        if (Strings.isBlank(rawPassword)) {
+            return Mono.just(false);
+        }
+        return userRepository.findById(id)
+                .filter(user -> !isNull(user.getPassword()))
+                .flatMap(user -> Mono.fromFuture(() -> passwordHasher.matchesAsync(rawPassword, user.getPassword()))
+                        .doOnNext(matches -> {
+                            if (matches && passwordHasher.needsUpgrade(user.getPassword())) {
+                                upgradeHash(id, user.getPassword(), rawPassword);
+                            }
+                        }))
+                .defaultIfEmpty(false)
+                .doOnNext(matches -> {
+                    if (!matches) {
+                        log.info("Login failed for user {}", id);
+                    }
+                });
+    }
+
+    private void upgradeHash(long id, String storedHash, String rawPassword) {
+        Mono.fromFuture(() -> passwordHasher.encodeAsync(rawPassword))
+                .flatMap(newHash -> userRepository.updatePasswordIfUnchanged(id, storedHash, newHash))
+                .subscribe(rows -> { }, e -> log.warn("Could not upgrade password hash for user {}", id, e));
+    }
+
+    private Mono<User> notUpdated(Long userId, Long version) {
+        if (isNull(version)) {
+            log.error("No users found with this id: {}", userId);
+            return Mono.error(new UserIdNotFoundException("User not found"));
+        }
+        return userRepository.existsById(userId).flatMap(exists -> {
+            if (!exists) {
+                log.error("No users found with this id: {}", userId);
+                return Mono.error(new UserIdNotFoundException("User not found"));
+            }
+            log.error("Version {} of user {} is outdated", version, userId);
+            return Mono.error(new UserVersionConflictException("User was modified by another request"));
+        });
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    private boolean isUserInvalid(User user) {
+        return isNull(user) || Strings.isBlank(user.getPassword()) || Strings.isBlank(user.getName());
+    }
+}
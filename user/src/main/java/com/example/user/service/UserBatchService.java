@@ -0,0 +1,278 @@
+package com.example.user.service;
+
+import com.example.user.config.CacheConfig;
+import com.example.user.dto.BatchItemResult;
+import com.example.user.dto.BatchItemResult.Status;
+import com.example.user.dto.BatchResult;
+import com.example.user.entity.User;
+import com.example.user.entity.UserChangeEvent;
+import com.example.user.exceptions.UserInvalidAttributesException;
+import com.example.user.repository.UserRepository;
+import com.example.user.security.CredentialCache;
+import com.example.user.shard.UserShards;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import io.micrometer.observation.annotation.Observed;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.logging.log4j.util.Strings;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.stream.Collectors;
+
+import static java.util.Objects.isNull;
+
+/**
+ * Bulk create, update and delete. Every item is validated up front, then the valid ones
+ * are written in chunks of {@code user.batch.chunk-size}, one transaction per chunk, so
+ * Hibernate can send each chunk as JDBC batches. A failing chunk is reported item by item
+ * and does not roll back the chunks before it. Change events for the outbox are written in
+ * the same chunk transaction as the rows they describe. With shards, a chunk is split by
+ * shard and each part gets its own transaction on its shard.
+ */
+@Slf4j
+@Service
+@Observed(name = "user.batch")
+public class UserBatchService {
+    @Autowired
+    UserRepository userRepository;
+    @PersistenceContext
+    EntityManager entityManager;
+    @Autowired
+    TransactionTemplate transactionTemplate;
+    @Autowired
+    CacheManager cacheManager;
+    @Autowired
+    PasswordHasher passwordHasher;
+    @Autowired
+    CredentialCache credentialCache;
+    @Autowired
+    UserShards userShards;
+
+    @Value("${user.batch.chunk-size:500}")
+    int chunkSize;
+    @Value("${user.batch.max-items:100000}")
+    int maxItems;
+
+    public BatchResult createUsers(List<User> users) {
+        checkBatchSize(users);
+        long start = System.nanoTime();
+        BatchItemResult[] results = new BatchItemResult[users.size()];
+
+        List<Integer> valid = new ArrayList<>();
+        for (int i = 0; i < users.size(); i++) {
+            if (isUserInvalid(users.get(i))) {
+                results[i] = BatchItemResult.failure(i, null, Status.INVALID, "One or more user attributes was empty");
+            } else {
+                valid.add(i);
+            }
+        }
+
+        for (List<Integer> chunk : chunks(valid)) {
+            if (!hashPasswords(users, chunk, "create", index -> null, results)) {
+                continue;
+            }
+            chunk.forEach(index -> users.get(index).setId(userShards.newId()));
+            userShards.byOwner(chunk, index -> users.get(index).getId()).forEach((shard, part) ->
+                    writeOnShard(shard, part, "create", index -> null, results, group -> {
+                        for (int index : group) {
+                            User user = users.get(index);
+                            user.setVersion(null);
+                            entityManager.persist(user);
+                            entityManager.persist(UserChangeEvent.of(UserChangeEvent.Type.CREATED, user.getId(), user.getName(), 0L));
+                            results[index] = BatchItemResult.success(index, user.getId(), Status.CREATED);
+                        }
+                        entityManager.flush();
+                        entityManager.clear();
+                    }));
+        }
+        return finish("create", results, start);
+    }
+
+    public BatchResult updateUsers(List<User> users) {
+        checkBatchSize(users);
+        long start = System.nanoTime();
+        BatchItemResult[] results = new BatchItemResult[users.size()];
+
+        List<Integer> valid = new ArrayList<>();
+        for (int i = 0; i < users.size(); i++) {
+            User user = users.get(i);
+            if (isUserInvalid(user) || isNull(user.getId())) {
+                results[i] = BatchItemResult.failure(i, isNull(user) ? null : user.getId(), Status.INVALID,
+                        "Id, name and password cannot be null, empty or blank");
+            } else {
+                valid.add(i);
+            }
+        }
+
+        for (List<Integer> chunk : chunks(valid)) {
+            if (hashPasswords(users, chunk, "update", index -> users.get(index).getId(), results)) {
+                writeByOwner(chunk, "update", index -> users.get(index).getId(), results, group -> {
+                    Set<Long> ids = group.stream().map(index -> users.get(index).getId()).collect(Collectors.toSet());
+                    Map<Long, User> existing = userRepository.findAllById(ids).stream()
+                            .collect(Collectors.toMap(User::getId, Function.identity()));
+                    for (int index : group) {
+                        User user = users.get(index);
+                        User stored = existing.get(user.getId());
+                        if (isNull(stored)) {
+                            results[index] = BatchItemResult.failure(index, user.getId(), Status.NOT_FOUND, "User not found");
+                            continue;
+                        }
+                        if (!isNull(user.getVersion()) && !user.getVersion().equals(stored.getVersion())) {
+                            results[index] = BatchItemResult.failure(index, user.getId(), Status.CONFLICT, "User was modified by another request");
+                            continue;
+                        }
+                        stored.setName(user.getName());
+                        stored.setPassword(user.getPassword());
+                        entityManager.persist(UserChangeEvent.of(UserChangeEvent.Type.UPDATED, stored.getId(), stored.getName(),
+                                stored.getVersion() + 1));
+                        results[index] = BatchItemResult.success(index, user.getId(), Status.UPDATED);
+                    }
+                    entityManager.flush();
+                    entityManager.clear();
+                });
+            }
+            evict(chunk.stream().map(index -> users.get(index).getId()).toList());
+        }
+        return finish("update", results, start);
+    }
+
+    public BatchResult deleteUsers(List<Long> ids) {
+        checkBatchSize(ids);
+        long start = System.nanoTime();
+        BatchItemResult[] results = new BatchItemResult[ids.size()];
+
+        List<Integer> valid = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i++) {
+            if (isNull(ids.get(i))) {
+                results[i] = BatchItemResult.failure(i, null, Status.INVALID, "Id cannot be null");
+            } else {
+                valid.add(i);
+            }
+        }
+
+        for (List<Integer> chunk : chunks(valid)) {
+            List<Long> chunkIds = chunk.stream().map(ids::get).toList();
+            writeByOwner(chunk, "delete", ids::get, results, group -> {
+                Set<Long> found = new HashSet<>(userRepository.findExistingIds(group.stream().map(ids::get).toList()));
+                userRepository.deleteAllByIdInBatch(found);
+                found.forEach(id -> entityManager.persist(UserChangeEvent.of(UserChangeEvent.Type.DELETED, id, null, null)));
+                for (int index : group) {
+                    Long id = ids.get(index);
+                    results[index] = found.contains(id)
+                            ? BatchItemResult.success(index, id, Status.DELETED)
+                            : BatchItemResult.failure(index, id, Status.NOT_FOUND, "User not found");
+                }
+            });
+            evict(chunkIds);
+        }
+        return finish("delete", results, start);
+    }
+
+    /**
+     * Hashes a chunk's passwords in parallel on the hashing pool before its transaction
+     * starts, so no connection is held while the hashes are computed. When that fails, the
+     * whole chunk is reported as failed.
+     */
+    private boolean hashPasswords(List<User> users, List<Integer> chunk, String operation, IntFunction<Long> idOf,
+                                  BatchItemResult[] results) {
+        List<CompletableFuture<Void>> hashes = chunk.stream()
+                .map(users::get)
+                .map(user -> passwordHasher.encodeAsync(user.getPassword()).thenAccept(user::setPassword))
+                .toList();
+        try {
+            CompletableFuture.allOf(hashes.toArray(CompletableFuture[]::new)).join();
+            return true;
+        } catch (CompletionException e) {
+            RuntimeException cause = e.getCause() instanceof RuntimeException failure ? failure : e;
+            fail(chunk, operation, idOf, results, cause);
+            return false;
+        } catch (RuntimeException e) {
+            fail(chunk, operation, idOf, results, e);
+            return false;
+        }
+    }
+
+    /**
+     * Writes each shard's part of a chunk on that shard. While resharding, items whose user
+     * was not found on its new shard are tried once more on the shard it comes from.
+     */
+    private void writeByOwner(List<Integer> chunk, String operation, IntFunction<Long> idOf,
+                              BatchItemResult[] results, Consumer<List<Integer>> write) {
+        userShards.byOwner(chunk, index -> idOf.apply(index))
+                .forEach((shard, part) -> writeOnShard(shard, part, operation, idOf, results, write));
+        if (userShards.isResharding()) {
+            List<Integer> notFound = chunk.stream()
+                    .filter(index -> results[index].status() == Status.NOT_FOUND)
+                    .filter(index -> !userShards.previousOwnerOf(idOf.apply(index)).equals(userShards.ownerOf(idOf.apply(index))))
+                    .toList();
+            userShards.byPreviousOwner(notFound, index -> idOf.apply(index))
+                    .forEach((shard, part) -> writeOnShard(shard, part, operation, idOf, results, write));
+        }
+    }
+
+    private void writeOnShard(String shard, List<Integer> part, String operation, IntFunction<Long> idOf,
+                              BatchItemResult[] results, Consumer<List<Integer>> write) {
+        try {
+            userShards.onShard(shard, () -> {
+                transactionTemplate.executeWithoutResult(status -> write.accept(part));
+                return null;
+            });
+        } catch (RuntimeException e) {
+            fail(part, operation, idOf, results, e);
+        }
+    }
+
+    private void fail(List<Integer> chunk, String operation, IntFunction<Long> idOf, BatchItemResult[] results, RuntimeException e) {
+        log.error("Batch {} chunk of {} users failed", operation, chunk.size(), e);
+        chunk.forEach(index -> results[index] = BatchItemResult.failure(index, idOf.apply(index), Status.FAILED, e.getMessage()));
+    }
+
+    private void checkBatchSize(List<?> items) {
+        if (isNull(items) || items.isEmpty()) {
+            log.error("Batch request without items");
+            throw new UserInvalidAttributesException("Batch must contain at least one item");
+        }
+        if (items.size() > maxItems) {
+            log.error("Batch request with {} items exceeds the limit of {}", items.size(), maxItems);
+            throw new UserInvalidAttributesException("Batch cannot have more than " + maxItems + " items");
+        }
+    }
+
+    private List<List<Integer>> chunks(List<Integer> indexes) {
+        List<List<Integer>> chunks = new ArrayList<>();
+        for (int from = 0; from < indexes.size(); from += chunkSize) {
+            chunks.add(indexes.subList(from, Math.min(from + chunkSize, indexes.size())));
+        }
+        return chunks;
+    }
+
+    private void evict(Collection<Long> ids) {
+        Cache cache = cacheManager.getCache(CacheConfig.USERS_CACHE);
+        if (cache != null) {
+            ids.forEach(cache::evict);
+        }
+        ids.forEach(credentialCache::invalidate);
+    }
+
+    private BatchResult finish(String operation, BatchItemResult[] results, long start) {
+        BatchResult result = BatchResult.of(Arrays.asList(results), System.nanoTime() - start);
+        log.info("Batch {} of {} users: {} succeeded, {} failed in {} ms ({} rows/s)", operation, results.length,
+                result.succeeded(), result.failed(), result.elapsedMillis(), Math.round(result.rowsPerSecond()));
+        return result;
+    }
+
+    private boolean isUserInvalid(User user) {
+        return isNull(user) || Strings.isBlank(user.getPassword()) || Strings.isBlank(user.getName());
+    }
+}
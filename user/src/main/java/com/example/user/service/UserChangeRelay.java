@@ -0,0 +1,123 @@
+package com.example.user.service;
+
+import com.example.user.datasource.ShardRoutingDataSource;
+import com.example.user.dto.UserChange;
+import com.example.user.entity.UserChangeEvent;
+import com.example.user.repository.UserChangeEventRepository;
+import com.example.user.shard.UserShards;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Publishes outbox rows in batches of {@code user.changes.batch-size}. Each batch gets
+ * consecutive positions after the last published one, in a single transaction, so the
+ * change stream has no gaps and never reorders what a consumer has already seen. Events
+ * that commit late simply get a later position.
+ * <p>
+ * With shards, every shard has its own outbox, written together with its users. The relay
+ * then holds the lock row on the home shard while it numbers one batch per shard, going on
+ * from the highest position on any of them, so positions stay unique and gapless across
+ * shards and relay instances.
+ */
+@Slf4j
+@Component
+public class UserChangeRelay {
+    @Autowired
+    UserChangeEventRepository changeEvents;
+    @Autowired
+    UserChangeStream changeStream;
+    @Autowired
+    TransactionTemplate transactionTemplate;
+    @Autowired
+    UserShards userShards;
+
+    @Value("${user.changes.batch-size:500}")
+    int batchSize;
+    @Value("${user.changes.retention:7d}")
+    Duration retention;
+
+    @Scheduled(fixedDelayString = "${user.changes.relay-interval:PT0.2S}", initialDelayString = "${user.changes.relay-interval:PT0.2S}")
+    public void relay() {
+        try {
+            while (publishPending() >= batchSize) {
+                log.debug("Outbox backlog, publishing the next batch right away");
+            }
+        } catch (RuntimeException e) {
+            log.warn("Publishing user changes failed, retrying on the next run", e);
+        }
+    }
+
+    public int publishPending() {
+        if (userShards.isSharded()) {
+            return publishPendingOnShards();
+        }
+        List<UserChange> published = transactionTemplate.execute(status -> {
+            List<UserChangeEvent> pending = changeEvents.findUnpublished(Limit.of(batchSize));
+            if (pending.isEmpty()) {
+                return List.of();
+            }
+            return number(pending, changeEvents.findLastPosition());
+        });
+        long latestPosition = published.isEmpty()
+                ? changeEvents.findLastPosition()
+                : published.get(published.size() - 1).position();
+        changeStream.publish(published, latestPosition);
+        return published.size();
+    }
+
+    private int publishPendingOnShards() {
+        List<UserChange> published = new ArrayList<>();
+        long lastPosition;
+        try (Connection lock = userShards.dataSource(ShardRoutingDataSource.HOME).getConnection()) {
+            lock.setAutoCommit(false);
+            try (Statement statement = lock.createStatement()) {
+                statement.executeQuery("select id from user_change_relay_lock where id = 1 for update").close();
+                lastPosition = userShards.max(changeEvents::findLastPosition);
+                for (String shard : userShards.shards()) {
+                    long after = lastPosition + published.size();
+                    published.addAll(userShards.onShard(shard, () -> transactionTemplate.execute(status ->
+                            number(changeEvents.findUnpublished(Limit.of(batchSize)), after))));
+                }
+            } finally {
+                lock.rollback();
+            }
+        } catch (SQLException e) {
+            throw new CannotAcquireLockException("Could not lock the change relay", e);
+        }
+        changeStream.publish(published, lastPosition + published.size());
+        return published.size();
+    }
+
+    private static List<UserChange> number(List<UserChangeEvent> pending, long lastPosition) {
+        long position = lastPosition;
+        for (UserChangeEvent event : pending) {
+            event.setPosition(++position);
+        }
+        return pending.stream().map(UserChange::from).toList();
+    }
+
+    @Scheduled(fixedDelayString = "${user.changes.purge-interval:PT1H}", initialDelayString = "${user.changes.purge-interval:PT1H}")
+    public void purge() {
+        Instant before = Instant.now().minus(retention);
+        int deleted = userShards.shards().stream()
+                .mapToInt(shard -> userShards.onShard(shard, () -> changeEvents.deletePublishedBefore(before)))
+                .sum();
+        if (deleted > 0) {
+            log.info("Purged {} user changes older than {}", deleted, retention);
+        }
+    }
+}
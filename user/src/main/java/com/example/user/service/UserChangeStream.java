@@ -0,0 +1,216 @@
+package com.example.user.service;
+
+import com.example.user.dto.ChangePage;
+import com.example.user.dto.UserChange;
+import com.example.user.exceptions.UserInvalidAttributesException;
+import com.example.user.repository.UserChangeEventRepository;
+import com.example.user.shard.UserShards;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Serves published user changes to consumers, either as a Server-Sent Events stream or as
+ * long-poll pages. The most recent changes are kept in memory, so live consumers are fed
+ * without touching the database; anyone further behind, or asking for a range this
+ * instance did not publish itself, reads from the outbox table, of every shard if sharded.
+ * <p>
+ * Sending happens on virtual threads, one drain at a time per subscriber, so a slow client
+ * never holds up the relay or other subscribers.
+ */
+@Slf4j
+@Component
+public class UserChangeStream implements DisposableBean {
+    private final UserChangeEventRepository changeEvents;
+    private final UserShards userShards;
+    private final int bufferSize;
+    private final int pageSize;
+    private final Duration pollTimeout;
+    private final Duration streamTimeout;
+    private final ConcurrentSkipListMap<Long, UserChange> recent = new ConcurrentSkipListMap<>();
+    private final AtomicInteger buffered = new AtomicInteger();
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final Set<Waiter> waiters = ConcurrentHashMap.newKeySet();
+    private final ExecutorService senders = Executors.newVirtualThreadPerTaskExecutor();
+    private volatile long lastPosition;
+
+    @Autowired
+    public UserChangeStream(UserChangeEventRepository changeEvents,
+                            UserShards userShards,
+                            @Value("${user.changes.buffer-size:10000}") int bufferSize,
+                            @Value("${user.changes.page-size:500}") int pageSize,
+                            @Value("${user.changes.poll-timeout:30s}") Duration pollTimeout,
+                            @Value("${user.changes.stream-timeout:30m}") Duration streamTimeout) {
+        this.changeEvents = changeEvents;
+        this.userShards = userShards;
+        this.bufferSize = bufferSize;
+        this.pageSize = pageSize;
+        this.pollTimeout = pollTimeout;
+        this.streamTimeout = streamTimeout;
+        this.lastPosition = userShards.max(changeEvents::findLastPosition);
+    }
+
+    /**
+     * Called by the relay after each commit with the changes it just published, and with
+     * the newest position in the table so changes published by other instances are noticed.
+     */
+    public void publish(List<UserChange> changes, long latestPosition) {
+        for (UserChange change : changes) {
+            if (recent.put(change.position(), change) == null && buffered.incrementAndGet() > bufferSize) {
+                recent.pollFirstEntry();
+                buffered.decrementAndGet();
+            }
+        }
+        if (latestPosition <= lastPosition) {
+            return;
+        }
+        lastPosition = latestPosition;
+        waiters.forEach(Waiter::wake);
+        subscribers.forEach(Subscriber::wake);
+    }
+
+    /**
+     * The newest published position this instance knows of.
+     */
+    public long lastPosition() {
+        return lastPosition;
+    }
+
+    public List<UserChange> changesSince(long since, int limit) {
+        if (since < 0 || limit < 1) {
+            log.error("Invalid change request since {} with limit {}", since, limit);
+            throw new UserInvalidAttributesException("Since cannot be negative and limit must be greater than zero");
+        }
+        long end = Math.min(since + limit, lastPosition);
+        if (end <= since) {
+            return List.of();
+        }
+        NavigableMap<Long, UserChange> range = recent.subMap(since, false, end, true);
+        if (range.size() == end - since) {
+            return List.copyOf(range.values());
+        }
+        return userShards.scatter(() -> changeEvents.findChangesSince(since, Limit.of(limit)), UserChange::position, limit);
+    }
+
+    /**
+     * Answers right away when there are changes after {@code since}, otherwise once the
+     * next change is published or with an empty page when the poll timeout runs out.
+     */
+    public DeferredResult<ChangePage> poll(long since, int limit) {
+        DeferredResult<ChangePage> result = new DeferredResult<>(pollTimeout.toMillis(), () -> ChangePage.of(List.of(), since));
+        List<UserChange> changes = changesSince(since, limit);
+        if (!changes.isEmpty()) {
+            result.setResult(ChangePage.of(changes, since));
+            return result;
+        }
+        Waiter waiter = new Waiter(since, limit, result);
+        waiters.add(waiter);
+        result.onCompletion(() -> waiters.remove(waiter));
+        // A change published between the read above and the registration would be missed.
+        if (lastPosition > since) {
+            waiter.wake();
+        }
+        return result;
+    }
+
+    /**
+     * Streams every change after {@code since}, each as an event whose id is its position,
+     * so a reconnecting client can resume from {@code Last-Event-ID}.
+     */
+    public SseEmitter subscribe(long since) {
+        changesSince(since, 1);
+        SseEmitter emitter = new SseEmitter(streamTimeout.toMillis());
+        Subscriber subscriber = new Subscriber(emitter, since);
+        subscribers.add(subscriber);
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(() -> subscribers.remove(subscriber));
+        emitter.onError(e -> subscribers.remove(subscriber));
+        subscriber.wake();
+        return emitter;
+    }
+
+    @Override
+    public void destroy() {
+        subscribers.forEach(subscriber -> subscriber.emitter.complete());
+        senders.shutdownNow();
+    }
+
+    private final class Waiter {
+        private final long since;
+        private final int limit;
+        private final DeferredResult<ChangePage> result;
+
+        private Waiter(long since, int limit, DeferredResult<ChangePage> result) {
+            this.since = since;
+            this.limit = limit;
+            this.result = result;
+        }
+
+        private void wake() {
+            senders.execute(() -> {
+                try {
+                    List<UserChange> changes = changesSince(since, limit);
+                    if (!changes.isEmpty()) {
+                        result.setResult(ChangePage.of(changes, since));
+                    }
+                } catch (RuntimeException e) {
+                    result.setErrorResult(e);
+                }
+            });
+        }
+    }
+
+    private final class Subscriber {
+        private final SseEmitter emitter;
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private volatile long lastSent;
+
+        private Subscriber(SseEmitter emitter, long since) {
+            this.emitter = emitter;
+            this.lastSent = since;
+        }
+
+        private void wake() {
+            if (draining.compareAndSet(false, true)) {
+                senders.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            try {
+                do {
+                    List<UserChange> changes;
+                    while (!(changes = changesSince(lastSent, pageSize)).isEmpty()) {
+                        for (UserChange change : changes) {
+                            emitter.send(SseEmitter.event().id(Long.toString(change.position())).name("change").data(change));
+                        }
+                        lastSent = changes.get(changes.size() - 1).position();
+                    }
+                    draining.set(false);
+                } while (lastPosition > lastSent && draining.compareAndSet(false, true));
+            } catch (IOException | RuntimeException e) {
+                log.info("Closing change stream after position {}: {}", lastSent, e.getMessage());
+                subscribers.remove(this);
+                draining.set(false);
+                emitter.completeWithError(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package com.example.user.service;
+
+import com.example.user.dto.ImportResult;
+import com.example.user.entity.User;
+import com.example.user.entity.UserChangeEvent;
+import com.example.user.shard.UserShards;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.observation.annotation.Observed;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.logging.log4j.util.Strings;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.generator.BeforeExecutionGenerator;
+import org.hibernate.generator.EventType;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Streaming bulk import. The body is read line by line and every line is parsed and
+ * validated on its own, so memory is bounded by one chunk of {@code user.import.chunk-size}
+ * rows however large the upload is. Each chunk is written in its own transaction, together
+ * with its {@code CREATED} change events: on PostgreSQL with {@code COPY}, elsewhere (or
+ * with {@code user.import.copy=false}) as batched inserts. A failing chunk is reported and
+ * does not roll back the chunks before it. With shards, a chunk is split by shard and each
+ * part is written on its shard.
+ * <p>
+ * Passwords are hashed like on sign-up, whatever they look like. Only an import that says
+ * its passwords are hashed keeps values that carry the prefix of a configured algorithm,
+ * such as {@code {bcrypt}}, as they are, so users can be moved over from another system;
+ * anyone who may ask for that can set any user's hash, which is why the import endpoint
+ * is admin-only.
+ */
+@Slf4j
+@Service
+@Observed(name = "user.import")
+public class UserImportService {
+    public enum Format { NDJSON, CSV }
+
+    static final int MAX_NAME_LENGTH = 255;
+    static final int MAX_REPORTED_ERRORS = 100;
+
+    private static final String COPY_USERS =
+            "COPY user_table (id, name, password, version) FROM STDIN WITH (FORMAT csv)";
+    private static final String COPY_EVENTS =
+            "COPY user_change_event (id, user_id, type, name, user_version, created_at) FROM STDIN WITH (FORMAT csv)";
+
+    @PersistenceContext
+    EntityManager entityManager;
+    @Autowired
+    TransactionTemplate transactionTemplate;
+    @Autowired
+    PasswordHasher passwordHasher;
+    @Autowired
+    ObjectMapper objectMapper;
+    @Autowired
+    UserShards userShards;
+
+    @Value("${user.import.chunk-size:1000}")
+    int chunkSize;
+    @Value("${user.import.copy:true}")
+    boolean copyEnabled;
+    @Value("${user.import.progress-interval:10000}")
+    long progressInterval;
+
+    public ImportResult importUsers(Reader body, Format format) throws IOException {
+        return importUsers(body, format, false);
+    }
+
+    /**
+     * @param passwordsHashed whether password values with a known hash prefix are hashes to
+     *                        store as they are; raw values are hashed either way
+     */
+    public ImportResult importUsers(Reader body, Format format, boolean passwordsHashed) throws IOException {
+        Progress progress = new Progress(System.nanoTime());
+        BufferedReader reader = new BufferedReader(body);
+        List<Row> chunk = new ArrayList<>(chunkSize);
+        int nameColumn = 0;
+        int passwordColumn = 1;
+        boolean first = true;
+        long lineNumber = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank()) {
+                continue;
+            }
+            if (format == Format.CSV && first) {
+                first = false;
+                List<String> header = Csv.parseLine(line).stream().map(column -> column.trim().toLowerCase(Locale.ROOT)).toList();
+                if (header.contains("name") && header.contains("password")) {
+                    nameColumn = header.indexOf("name");
+                    passwordColumn = header.indexOf("password");
+                    continue;
+                }
+            }
+            User user;
+            try {
+                user = format == Format.NDJSON ? objectMapper.readValue(line, User.class) : fromCsv(line, nameColumn, passwordColumn);
+            } catch (JsonProcessingException | IllegalArgumentException e) {
+                progress.reject(lineNumber, "Malformed " + format + " record");
+                continue;
+            }
+            String error = validate(user);
+            if (error != null) {
+                progress.reject(lineNumber, error);
+                continue;
+            }
+            chunk.add(new Row(lineNumber, user));
+            if (chunk.size() == chunkSize) {
+                write(chunk, passwordsHashed, progress);
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            write(chunk, passwordsHashed, progress);
+        }
+
+        ImportResult result = ImportResult.of(progress.imported, progress.rejected, progress.errors, System.nanoTime() - progress.start);
+        log.info("Import of {} finished: {} users imported, {} rejected in {} ms ({} rows/s)", format, result.imported(),
+                result.rejected(), result.elapsedMillis(), Math.round(result.rowsPerSecond()));
+        return result;
+    }
+
+    private void write(List<Row> chunk, boolean passwordsHashed, Progress progress) {
+        try {
+            hashPasswords(chunk, passwordsHashed);
+        } catch (RuntimeException e) {
+            reject(chunk, progress, e);
+            return;
+        }
+        chunk.forEach(row -> row.user().setId(userShards.newId()));
+        userShards.byOwner(chunk, row -> row.user().getId()).forEach((shard, part) -> {
+            try {
+                userShards.onShard(shard, () -> {
+                    transactionTemplate.executeWithoutResult(status -> {
+                        SessionImplementor session = entityManager.unwrap(SessionImplementor.class);
+                        if (copyEnabled && session.doReturningWork(connection -> connection.isWrapperFor(PGConnection.class))) {
+                            copy(session, part);
+                        } else {
+                            insert(part);
+                        }
+                    });
+                    return null;
+                });
+                progress.imported(part.size());
+            } catch (RuntimeException e) {
+                reject(part, progress, e);
+            }
+        });
+    }
+
+    private static void reject(List<Row> chunk, Progress progress, RuntimeException e) {
+        log.error("Import chunk of {} users failed", chunk.size(), e);
+        chunk.forEach(row -> progress.reject(row.line(), e.getMessage()));
+    }
+
+    private void insert(List<Row> chunk) {
+        for (Row row : chunk) {
+            entityManager.persist(row.user());
+            entityManager.persist(UserChangeEvent.of(UserChangeEvent.Type.CREATED, row.user().getId(), row.user().getName(), 0L));
+        }
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    /**
+     * Ids come from Hibernate's own generators, so rows loaded with {@code COPY} never
+     * collide with ids handed out to inserts through JPA.
+     */
+    private void copy(SessionImplementor session, List<Row> chunk) {
+        StringBuilder users = new StringBuilder();
+        StringBuilder events = new StringBuilder();
+        String createdAt = Instant.now().toString();
+        for (Row row : chunk) {
+            User user = row.user();
+            user.setId((Long) nextId(session, user));
+            UserChangeEvent event = UserChangeEvent.of(UserChangeEvent.Type.CREATED, user.getId(), user.getName(), 0L);
+            Object eventId = nextId(session, event);
+            users.append(user.getId()).append(',').append(Csv.field(user.getName())).append(',')
+                    .append(Csv.field(user.getPassword())).append(",0\n");
+            events.append(eventId).append(',').append(user.getId()).append(',').append(event.getType()).append(',')
+                    .append(Csv.field(user.getName())).append(",0,").append(createdAt).append('\n');
+        }
+        session.doWork(connection -> {
+            CopyManager copyManager = connection.unwrap(PGConnection.class).getCopyAPI();
+            try {
+                copyManager.copyIn(COPY_USERS, new StringReader(users.toString()));
+                copyManager.copyIn(COPY_EVENTS, new StringReader(events.toString()));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private static Object nextId(SessionImplementor session, Object entity) {
+        BeforeExecutionGenerator generator = (BeforeExecutionGenerator) session.getEntityPersister(null, entity).getGenerator();
+        return generator.generate(session, entity, null, EventType.INSERT);
+    }
+
+    private void hashPasswords(List<Row> chunk, boolean passwordsHashed) {
+        List<CompletableFuture<Void>> hashes = chunk.stream()
+                .map(Row::user)
+                .filter(user -> !(passwordsHashed && passwordHasher.isEncoded(user.getPassword())))
+                .map(user -> passwordHasher.encodeAsync(user.getPassword()).thenAccept(user::setPassword))
+                .toList();
+        try {
+            CompletableFuture.allOf(hashes.toArray(CompletableFuture[]::new)).join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+    }
+
+    private static User fromCsv(String line, int nameColumn, int passwordColumn) {
+        List<String> fields = Csv.parseLine(line);
+        if (fields.size() <= Math.max(nameColumn, passwordColumn)) {
+            throw new IllegalArgumentException("Missing columns");
+        }
+        return User.builder().name(fields.get(nameColumn)).password(fields.get(passwordColumn)).build();
+    }
+
+    private static String validate(User user) {
+        if (user == null || Strings.isBlank(user.getName()) || Strings.isBlank(user.getPassword())) {
+            return "Name and password cannot be null, empty or blank";
+        }
+        if (user.getName().length() > MAX_NAME_LENGTH) {
+            return "Name cannot be longer than " + MAX_NAME_LENGTH + " characters";
+        }
+        user.setId(null);
+        user.setVersion(null);
+        return null;
+    }
+
+    private record Row(long line, User user) {
+    }
+
+    private final class Progress {
+        final long start;
+        final List<ImportResult.Error> errors = new ArrayList<>();
+        long imported;
+        long rejected;
+
+        Progress(long start) {
+            this.start = start;
+        }
+
+        void imported(int rows) {
+            long before = imported;
+            imported += rows;
+            if (imported / progressInterval > before / progressInterval) {
+                double seconds = (System.nanoTime() - start) / 1_000_000_000d;
+                log.info("Imported {} users so far, {} rejected ({} rows/s)", imported, rejected,
+                        Math.round(seconds > 0 ? imported / seconds : 0));
+            }
+        }
+
+        void reject(long line, String message) {
+            rejected++;
+            if (errors.size() < MAX_REPORTED_ERRORS) {
+                errors.add(new ImportResult.Error(line, message));
+            }
+        }
+    }
+}
@@ -1,53 +1,159 @@
 package com.example.user.service;
 
+import com.example.user.config.CacheConfig;
+import com.example.user.datasource.ReplicaRoutingDataSource;
+import com.example.user.dto.NameMatch;
+import com.example.user.dto.UserPage;
+import com.example.user.dto.UserView;
 import com.example.user.entity.User;
+import com.example.user.entity.UserChangeEvent;
 import com.example.user.exceptions.UserIdNotFoundException;
 import com.example.user.exceptions.UserInvalidAttributesException;
+import com.example.user.exceptions.UserVersionConflictException;
+import com.example.user.repository.UserChangeEventRepository;
+import com.example.user.repository.UserPartitionScanner;
 import com.example.user.repository.UserRepository;
+import com.example.user.security.CredentialCache;
+import com.example.user.shard.UserShards;
+import io.micrometer.observation.annotation.Observed;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.logging.log4j.util.Strings;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 import static java.util.Objects.isNull;
 
 @Slf4j
 @Service
+@Observed(name = "user.service")
 public class UserService {
+    public static final int MAX_PAGE_SIZE = 1000;
+
     @Autowired
     UserRepository userRepository;
+    @Autowired
+    PasswordHasher passwordHasher;
+    @Autowired
+    UserChangeEventRepository changeEvents;
+    @Autowired
+    TransactionTemplate transactionTemplate;
+    @Autowired
+    CredentialCache credentialCache;
+    @Autowired
+    UserPartitionScanner partitionScanner;
+    @Autowired
+    UserShards userShards;
 
+    /**
+     * Creates, updates and deletes write their change event to the outbox in the same
+     * transaction as the row itself. Passwords are hashed before the transaction starts.
+     * With shards, a new user gets its id here, which decides the shard it is written to.
+     */
     public User createUser(User user) {
         if (isUserInvalid(user)) {
             log.error("One or more user attributes was empty");
             throw new UserInvalidAttributesException("One or more user attributes was empty");
         }
-        return this.userRepository.save(user);
+        user.setId(userShards.newId());
+        user.setVersion(null);
+        user.setPassword(passwordHasher.encode(user.getPassword()));
+        return userShards.onOwner(user.getId(), () -> transactionTemplate.execute(status -> {
+            User saved = this.userRepository.save(user);
+            changeEvents.save(UserChangeEvent.of(UserChangeEvent.Type.CREATED, saved.getId(), saved.getName(), saved.getVersion()));
+            return saved;
+        }));
     }
-    public List<User> getAllUsers() {
-        return this.userRepository.findAll();
+
+    /**
+     * With shards, this and the other reads that are not by id ask every shard at once and
+     * merge the answers in id order.
+     */
+    public List<UserView> getAllUsers() {
+        return userShards.scatter(() -> readOnlyTransaction().execute(status -> this.userRepository.findAllViews()),
+                UserView::id, Integer.MAX_VALUE);
+    }
+
+    public UserPage findUsersPage(final Long after, final int size) {
+        if (size < 1) {
+            log.error("Invalid page size {}", size);
+            throw new UserInvalidAttributesException("Page size must be greater than zero");
+        }
+        int pageSize = Math.min(size, MAX_PAGE_SIZE);
+        List<UserView> users = userShards.scatter(() -> readOnlyTransaction().execute(status ->
+                this.userRepository.findViewsAfter(isNull(after) ? 0L : after, Limit.of(pageSize))), UserView::id, pageSize);
+        Long nextCursor = users.size() == pageSize ? users.get(users.size() - 1).id() : null;
+        return new UserPage(users, nextCursor);
+    }
+
+    /**
+     * Walks the whole table through a forward-only cursor, handing each user to the consumer
+     * as it is read. Rows are projected straight into {@link UserView}, so nothing is added
+     * to the persistence context and memory stays flat however large the table is. A
+     * partitioned table is read one cursor per partition, in parallel, and users are then
+     * only in id order within each partition. No transaction is held here in that case;
+     * each partition is read in its own. Shards are read one after the other.
+     */
+    public void streamAllUsers(Consumer<UserView> consumer) {
+        if (!userShards.isSharded() && partitionScanner.isPartitioned()) {
+            partitionScanner.forEachView(consumer);
+            return;
+        }
+        for (String shard : userShards.shards()) {
+            userShards.onShard(shard, () -> readOnlyTransaction().execute(status -> {
+                try (Stream<UserView> users = this.userRepository.streamAllViews()) {
+                    users.forEach(consumer);
+                }
+                return null;
+            }));
+        }
     }
 
+    /**
+     * Deletes with a single {@code DELETE ... WHERE id = ?}; the affected row count tells
+     * whether the user existed.
+     */
+    @CacheEvict(cacheNames = CacheConfig.USERS_CACHE, key = "#userId")
     public void deleteUserById(final Long userId) {
-        Optional<User> userOptional = userRepository.findById(userId);
-        if (userOptional.isPresent()) {
-            this.userRepository.deleteById(userId);
-        }else{
-            log.error("No users found with this id: " + userId);
+        Boolean deleted = userShards.onOwner(userId, () -> transactionTemplate.execute(status -> {
+            if (this.userRepository.removeById(userId) == 0) {
+                return false;
+            }
+            changeEvents.save(UserChangeEvent.of(UserChangeEvent.Type.DELETED, userId, null, null));
+            return true;
+        }), Boolean.TRUE::equals);
+        credentialCache.invalidate(userId);
+        if (!Boolean.TRUE.equals(deleted)) {
+            log.error("No users found with this id: {}", userId);
             throw new UserIdNotFoundException("User Not Found");
         }
-
     }
-    public Optional<User> findUserById(final long id) {
-        Optional<User> userList = this.userRepository.findById(id);
 
-        log.info("Received request to find users with id:" + id);
+    /**
+     * Concurrent misses on the same id wait for a single query instead of each running
+     * their own. With read replicas, misses are read from the primary: the cache is shared
+     * by all clients, and a row from a lagging replica would undo the eviction of the write
+     * before it, also for the writer.
+     */
+    @Cacheable(cacheNames = CacheConfig.USERS_CACHE, key = "#id", sync = true)
+    public Optional<UserView> findUserById(final long id) {
+        Optional<UserView> userList = userShards.onOwner(id,
+                () -> ReplicaRoutingDataSource.onPrimary(
+                        () -> readOnlyTransaction().execute(status -> this.userRepository.findViewById(id))),
+                found -> !isNull(found) && found.isPresent());
+
+        log.debug("Received request to find users with id: {}", id);
 
         if (isNull(userList) || userList.isEmpty()) {
-            log.error("No users found with this id:" + id);
+            log.error("No users found with this id: {}", id);
 
             throw new UserIdNotFoundException("Users with name " + id + " do not exist");
         }
@@ -55,12 +161,13 @@ public class UserService {
         return userList;
     }
     public List<User> findByName(String name) {
-        List<User> userList = this.userRepository.findByName(name);
+        List<User> userList = userShards.scatter(() -> readOnlyTransaction().execute(status -> this.userRepository.findByName(name)),
+                User::getId, Integer.MAX_VALUE);
 
-        log.info("Received request to find users with name " + name);
+        log.debug("Received request to find users with name {}", name);
 
         if (isNull(userList) || userList.isEmpty()) {
-            log.error("No users found with name " + name);
+            log.error("No users found with name {}", name);
 
             throw new UserIdNotFoundException("Users with name " + name + " do not exist");
         }
@@ -68,10 +175,41 @@ public class UserService {
         return userList;
     }
 
+    /**
+     * On a partitioned table every partition is searched at once, each in its own
+     * transaction, and the matches merged; otherwise one query does it, on every shard.
+     */
+    public List<UserView> searchByName(String name, NameMatch match, boolean ignoreCase, int limit) {
+        if (Strings.isBlank(name) || isNull(match) || limit < 1) {
+            log.error("Invalid search for name {} with match {} and limit {}", name, match, limit);
+            throw new UserInvalidAttributesException("Name cannot be blank and limit must be greater than zero");
+        }
+        Limit resultLimit = Limit.of(Math.min(limit, MAX_PAGE_SIZE));
+        String pattern = match == NameMatch.PREFIX ? escapeLike(name) : name;
+        if (!userShards.isSharded() && partitionScanner.isPartitioned()) {
+            return partitionScanner.findViewsByName(pattern, match, ignoreCase, resultLimit.max());
+        }
+        return userShards.scatter(() -> readOnlyTransaction().execute(status -> switch (match) {
+            case EXACT -> ignoreCase
+                    ? this.userRepository.findViewsByNameIgnoreCase(pattern, resultLimit)
+                    : this.userRepository.findViewsByName(pattern, resultLimit);
+            case PREFIX -> ignoreCase
+                    ? this.userRepository.findViewsByNamePrefixIgnoreCase(pattern, resultLimit)
+                    : this.userRepository.findViewsByNamePrefix(pattern, resultLimit);
+        }), UserView::id, resultLimit.max());
+    }
 
+    /**
+     * Updates with a single {@code UPDATE ... WHERE id = ?}, conditional on the version when
+     * the caller sent one. Only when no row was touched is the id looked up again, to tell a
+     * missing user (404) from a concurrent change (409). Without a version from the caller,
+     * the new one is read back in the same transaction, while the update still holds the
+     * row lock, so the response and the change event carry the version actually stored.
+     */
+    @CacheEvict(cacheNames = CacheConfig.USERS_CACHE, key = "#userId")
     public User updateUserById(User user, final Long userId) {
         if (user == null || user.getName() == null || user.getPassword() == null) {
-            log.error("User or its properties cannot be null " + userId);
+            log.error("User or its properties cannot be null {}", userId);
             throw new UserInvalidAttributesException("User or its properties cannot be null");
         }
 
@@ -79,19 +217,80 @@ public class UserService {
         boolean userEmpty = user.getName().isEmpty() || user.getPassword().isEmpty();
 
         if (userBlank || userEmpty) {
-            log.error("Name or password cannot be empty or blank " + userId);
+            log.error("Name or password cannot be empty or blank {}", userId);
             throw new UserInvalidAttributesException("Name or password cannot be null, empty or blank");
         }
 
-        if (userRepository.existsById(userId)) {
-            User updatedUser = userRepository.getReferenceById(userId);
-            updatedUser.setName(user.getName());
-            updatedUser.setPassword(user.getPassword());
-            return userRepository.save(updatedUser);
-        } else {
-            throw new UserInvalidAttributesException("User not found");
+        String password = passwordHasher.encode(user.getPassword());
+        Long version = user.getVersion();
+        Long newVersion = userShards.onOwner(userId, () -> transactionTemplate.execute(status -> {
+            int rows = isNull(version)
+                    ? userRepository.updateUser(userId, user.getName(), password)
+                    : userRepository.updateUserIfVersion(userId, version, user.getName(), password);
+            if (rows == 0) {
+                return null;
+            }
+            Long stored = isNull(version) ? userRepository.findVersionById(userId).orElseThrow() : version + 1;
+            changeEvents.save(UserChangeEvent.of(UserChangeEvent.Type.UPDATED, userId, user.getName(), stored));
+            return stored;
+        }), stored -> !isNull(stored));
+        credentialCache.invalidate(userId);
+        if (isNull(newVersion)) {
+            if (isNull(version) || !userShards.onOwner(userId, () -> userRepository.existsById(userId), Boolean::booleanValue)) {
+                log.error("No users found with this id: {}", userId);
+                throw new UserIdNotFoundException("User not found");
+            }
+            log.error("Version {} of user {} is outdated", version, userId);
+            throw new UserVersionConflictException("User was modified by another request");
         }
+        return User.builder()
+                .id(userId)
+                .name(user.getName())
+                .password(password)
+                .version(newVersion)
+                .build();
     }
+    /**
+     * Checks a password against the stored hash. When the hash was made with an older
+     * algorithm or cost, it is re-hashed in the background with the current settings; the
+     * write only lands if the stored hash has not changed in the meantime.
+     */
+    public boolean authenticate(final long id, String rawPassword) {
+        if (Strings.isBlank(rawPassword)) {
+            return false;
+        }
+        Optional<User> userOptional = userShards.onOwner(id, () -> this.userRepository.findById(id), Optional::isPresent);
+        if (userOptional.isEmpty() || isNull(userOptional.get().getPassword())) {
+            log.info("Login failed for user {}", id);
+            return false;
+        }
+        String storedHash = userOptional.get().getPassword();
+        if (!passwordHasher.matches(rawPassword, storedHash)) {
+            log.info("Login failed for user {}", id);
+            return false;
+        }
+        if (passwordHasher.needsUpgrade(storedHash)) {
+            passwordHasher.encodeAsync(rawPassword)
+                    .thenAccept(newHash -> userShards.onOwner(id,
+                            () -> this.userRepository.updatePasswordIfUnchanged(id, storedHash, newHash), rows -> rows > 0))
+                    .exceptionally(e -> {
+                        log.warn("Could not upgrade password hash for user {}", id, e);
+                        return null;
+                    });
+        }
+        return true;
+    }
+
+    private TransactionTemplate readOnlyTransaction() {
+        TransactionTemplate readOnly = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        readOnly.setReadOnly(true);
+        return readOnly;
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
     private boolean isUserInvalid(User user) {
         return isNull(user) || Strings.isBlank(user.getPassword()) || Strings.isBlank(user.getName());
     }
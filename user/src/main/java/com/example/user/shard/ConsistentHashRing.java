@@ -0,0 +1,69 @@
+package com.example.user.shard;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Places user ids on shards by consistent hashing. Every shard owns {@code virtualNodes}
+ * points on a 64-bit ring and an id belongs to the shard of the first point at or after
+ * the id's hash. Adding one shard to N therefore moves about 1/(N+1) of the ids, all of
+ * them onto the new shard, and removing one moves only the ids it held.
+ * <p>
+ * The points depend on nothing but the shard names, so every instance computes the same
+ * placement, now and after a restart. A name must never be reused for another database.
+ */
+public final class ConsistentHashRing {
+    private final List<String> shards;
+    private final NavigableMap<Long, String> points = new TreeMap<>();
+
+    public ConsistentHashRing(Collection<String> shards, int virtualNodes) {
+        if (shards.isEmpty() || virtualNodes < 1) {
+            throw new IllegalArgumentException("A ring needs at least one shard and one virtual node per shard");
+        }
+        this.shards = List.copyOf(shards);
+        for (String shard : this.shards) {
+            for (int i = 0; i < virtualNodes; i++) {
+                // On the rare collision the smaller name wins, whatever order the shards are listed in.
+                points.merge(hash(shard + "#" + i), shard, (existing, added) -> existing.compareTo(added) <= 0 ? existing : added);
+            }
+        }
+    }
+
+    public String shardFor(long id) {
+        Map.Entry<Long, String> point = points.ceilingEntry(mix(id));
+        return (point != null ? point : points.firstEntry()).getValue();
+    }
+
+    public List<String> shards() {
+        return shards;
+    }
+
+    /**
+     * FNV-1a over the UTF-8 bytes, finished like an id so similar names spread out.
+     */
+    static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    /**
+     * The 64-bit finalizer of MurmurHash3. Snowflake ids differ mostly in their low and
+     * middle bits; this spreads them over the whole ring.
+     */
+    static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
@@ -0,0 +1,30 @@
+package com.example.user.shard;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+
+/**
+ * {@code /actuator/reshard}: {@code GET} shows the progress of the last resharding run,
+ * {@code POST} starts one. Only there with sharding, and not exposed over HTTP unless
+ * {@code reshard} is added to {@code management.endpoints.web.exposure.include}, ideally
+ * on a separate management port.
+ */
+@Endpoint(id = "reshard")
+public class ReshardEndpoint {
+    private final UserResharder resharder;
+
+    public ReshardEndpoint(UserResharder resharder) {
+        this.resharder = resharder;
+    }
+
+    @ReadOperation
+    public UserResharder.Progress progress() {
+        return resharder.progress();
+    }
+
+    @WriteOperation
+    public UserResharder.Progress start() {
+        return resharder.start();
+    }
+}
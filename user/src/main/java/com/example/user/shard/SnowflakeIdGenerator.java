@@ -0,0 +1,66 @@
+package com.example.user.shard;
+
+import java.time.Instant;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Snowflake-style 64-bit ids: milliseconds since 2024-01-01 in the 41 bits after the sign
+ * bit, then a 10-bit worker id and a 12-bit sequence within the millisecond. With a
+ * different {@code user.ids.worker-id} on every instance, ids are unique without asking
+ * any database, and they grow with time, so inserts still land at the right-hand edge of
+ * the primary key index as they do with a sequence.
+ * <p>
+ * There is one generator per worker id in the JVM, shared by Hibernate and the services,
+ * since two with the same worker id would hand out the same ids. When the sequence of a
+ * millisecond runs out, or the clock goes back, ids continue from the last timestamp used
+ * instead of waiting for the clock or repeating.
+ */
+public final class SnowflakeIdGenerator {
+    public static final long EPOCH_MILLIS = Instant.parse("2024-01-01T00:00:00Z").toEpochMilli();
+    public static final int WORKER_BITS = 10;
+    public static final int SEQUENCE_BITS = 12;
+    public static final int MAX_WORKER_ID = (1 << WORKER_BITS) - 1;
+    private static final long MAX_SEQUENCE = (1L << SEQUENCE_BITS) - 1;
+    private static final ConcurrentMap<Integer, SnowflakeIdGenerator> GENERATORS = new ConcurrentHashMap<>();
+
+    private final int workerId;
+    private final LongSupplier clock;
+    private long lastTimestamp = -1;
+    private long sequence;
+
+    SnowflakeIdGenerator(int workerId, LongSupplier clock) {
+        if (workerId < 0 || workerId > MAX_WORKER_ID) {
+            throw new IllegalArgumentException("Worker id must be between 0 and " + MAX_WORKER_ID + ", was " + workerId);
+        }
+        this.workerId = workerId;
+        this.clock = clock;
+    }
+
+    public static SnowflakeIdGenerator forWorker(int workerId) {
+        return GENERATORS.computeIfAbsent(workerId, id -> new SnowflakeIdGenerator(id, System::currentTimeMillis));
+    }
+
+    public synchronized long nextId() {
+        long timestamp = Math.max(Math.max(clock.getAsLong() - EPOCH_MILLIS, 0), lastTimestamp);
+        if (timestamp == lastTimestamp) {
+            sequence = (sequence + 1) & MAX_SEQUENCE;
+            if (sequence == 0) {
+                timestamp++;
+            }
+        } else {
+            sequence = 0;
+        }
+        lastTimestamp = timestamp;
+        return (timestamp << (WORKER_BITS + SEQUENCE_BITS)) | ((long) workerId << SEQUENCE_BITS) | sequence;
+    }
+
+    public static int workerOf(long id) {
+        return (int) ((id >>> SEQUENCE_BITS) & MAX_WORKER_ID);
+    }
+
+    public static Instant timestampOf(long id) {
+        return Instant.ofEpochMilli(EPOCH_MILLIS + (id >>> (WORKER_BITS + SEQUENCE_BITS)));
+    }
+}
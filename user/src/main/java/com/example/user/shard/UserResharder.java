@@ -0,0 +1,208 @@
+package com.example.user.shard;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Online resharding: moves every user that is not on the shard the current ring assigns it
+ * to, while the application keeps serving. Each shard is walked in id order, a batch at a
+ * time. A batch of misplaced users is copied to their new owner, then deleted from the old
+ * one only if their version is still the one that was copied.
+ * <p>
+ * While shards are {@code JOINING} or {@code LEAVING}, requests look for a user on its new
+ * owner first and fall back to the old one (see {@link UserShards}), so once a copy exists
+ * every change goes to the copy. A change that reached the old shard between reading and
+ * copying a user makes the delete miss; such users are moved again one by one, and if the
+ * copy has meanwhile been changed too, the copy wins as the later change. Users are never
+ * lost or duplicated, and an interrupted run is simply started again.
+ * <p>
+ * Runs on its own thread, which like the other pools is not a bean, one run at a time.
+ */
+@Slf4j
+public class UserResharder implements DisposableBean {
+    public enum State { IDLE, RUNNING, DONE, FAILED }
+
+    public record Progress(State state, long scanned, long moved, Instant startedAt, Instant finishedAt, String error) {
+    }
+
+    private static final int MAX_ATTEMPTS = 10;
+    private static final RowMapper<Row> ROW = (rs, row) ->
+            new Row(rs.getLong("id"), rs.getString("name"), rs.getString("password"), rs.getLong("version"));
+
+    private final UserShards shards;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final ExecutorService runner = Executors.newSingleThreadExecutor(Thread.ofPlatform()
+            .name("user-resharder")
+            .daemon(true)
+            .factory());
+    private final AtomicLong scanned = new AtomicLong();
+    private final AtomicLong moved = new AtomicLong();
+    private volatile Progress progress = new Progress(State.IDLE, 0, 0, null, null, null);
+
+    public UserResharder(UserShards shards, JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager, int batchSize) {
+        this.shards = shards;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Starts a run in the background unless one is already going.
+     */
+    public synchronized Progress start() {
+        if (progress.state() != State.RUNNING) {
+            progress = new Progress(State.RUNNING, 0, 0, Instant.now(), null, null);
+            runner.execute(this::reshard);
+        }
+        return progress;
+    }
+
+    public Progress progress() {
+        Progress current = progress;
+        return current.state() == State.RUNNING
+                ? new Progress(State.RUNNING, scanned.get(), moved.get(), current.startedAt(), null, null)
+                : current;
+    }
+
+    /**
+     * One run on the calling thread.
+     */
+    public Progress reshard() {
+        Instant startedAt = Instant.now();
+        scanned.set(0);
+        moved.set(0);
+        log.info("Resharding users onto {}", shards.shards());
+        try {
+            for (String shard : shards.shards()) {
+                reshard(shard);
+            }
+            progress = new Progress(State.DONE, scanned.get(), moved.get(), startedAt, Instant.now(), null);
+            log.info("Resharding finished: {} of {} users moved", moved.get(), scanned.get());
+        } catch (RuntimeException e) {
+            progress = new Progress(State.FAILED, scanned.get(), moved.get(), startedAt, Instant.now(), e.getMessage());
+            log.error("Resharding failed after moving {} users, start it again to continue", moved.get(), e);
+        }
+        return progress;
+    }
+
+    @Override
+    public void destroy() {
+        runner.shutdownNow();
+    }
+
+    private void reshard(String source) {
+        long after = Long.MIN_VALUE;
+        while (true) {
+            long from = after;
+            List<Row> rows = shards.onShard(source, () -> jdbcTemplate.query(
+                    "select id, name, password, version from user_table where id > ? order by id limit ?", ROW, from, batchSize));
+            if (rows.isEmpty()) {
+                return;
+            }
+            after = rows.get(rows.size() - 1).id();
+            scanned.addAndGet(rows.size());
+            List<Row> misplaced = rows.stream().filter(row -> !shards.ownerOf(row.id()).equals(source)).toList();
+            shards.byOwner(misplaced, Row::id).forEach((target, batch) -> move(source, target, batch));
+            if (rows.size() < batchSize) {
+                return;
+            }
+        }
+    }
+
+    private void move(String source, String target, List<Row> batch) {
+        int[] copied = shards.onShard(target, () -> transactionTemplate.execute(status -> jdbcTemplate.batchUpdate(
+                "insert into user_table (id, name, password, version) select ?, ?, ?, ?"
+                        + " where not exists (select 1 from user_table where id = ?)",
+                batch.stream().map(row -> new Object[]{row.id(), row.name(), row.password(), row.version(), row.id()}).toList())));
+        List<Row> copiedRows = new ArrayList<>();
+        List<Row> retry = new ArrayList<>();
+        for (int i = 0; i < batch.size(); i++) {
+            (copied[i] == 1 ? copiedRows : retry).add(batch.get(i));
+        }
+        int[] deleted = shards.onShard(source, () -> transactionTemplate.execute(status -> jdbcTemplate.batchUpdate(
+                "delete from user_table where id = ? and version = ?",
+                copiedRows.stream().map(row -> new Object[]{row.id(), row.version()}).toList())));
+        for (int i = 0; i < copiedRows.size(); i++) {
+            if (deleted[i] == 1) {
+                moved.incrementAndGet();
+                continue;
+            }
+            Row row = copiedRows.get(i);
+            // An untouched copy is replaced by what the source has now; a changed copy is newer than the source.
+            if (update(target, "delete from user_table where id = ? and version = ?", row.id(), row.version()) == 1) {
+                retry.add(row);
+            } else {
+                update(source, "delete from user_table where id = ?", row.id());
+                moved.incrementAndGet();
+            }
+        }
+        retry.forEach(row -> moveOne(source, target, row.id()));
+    }
+
+    /**
+     * The slow path for a user that changed while it was being moved, or that an earlier,
+     * interrupted run had already copied.
+     */
+    private void moveOne(String source, String target, long id) {
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            Row row = find(source, id);
+            if (row == null) {
+                return;
+            }
+            Row existing = find(target, id);
+            Long copiedVersion = null;
+            if (existing == null) {
+                if (update(target, "insert into user_table (id, name, password, version) select ?, ?, ?, ?"
+                        + " where not exists (select 1 from user_table where id = ?)",
+                        row.id(), row.name(), row.password(), row.version(), row.id()) == 0) {
+                    continue;
+                }
+                copiedVersion = row.version();
+            } else if (existing.version() < row.version()) {
+                if (update(target, "update user_table set name = ?, password = ?, version = ? where id = ? and version = ?",
+                        row.name(), row.password(), row.version(), row.id(), existing.version()) == 0) {
+                    continue;
+                }
+                copiedVersion = row.version();
+            }
+            if (update(source, "delete from user_table where id = ? and version = ?", row.id(), row.version()) == 1) {
+                moved.incrementAndGet();
+                return;
+            }
+            if (copiedVersion != null
+                    && update(target, "delete from user_table where id = ? and version = ?", row.id(), copiedVersion) == 1) {
+                continue;
+            }
+            // The copy changed after the source did, so it holds the latest state.
+            update(source, "delete from user_table where id = ?", row.id());
+            moved.incrementAndGet();
+            return;
+        }
+        throw new IllegalStateException("User " + id + " kept changing while it was moved from " + source + " to " + target);
+    }
+
+    private Row find(String shard, long id) {
+        return shards.onShard(shard, () -> jdbcTemplate.query(
+                "select id, name, password, version from user_table where id = ?", ROW, id)).stream().findFirst().orElse(null);
+    }
+
+    private int update(String shard, String sql, Object... arguments) {
+        return shards.onShard(shard, () -> transactionTemplate.execute(status -> jdbcTemplate.update(sql, arguments)));
+    }
+
+    private record Row(long id, String name, String password, long version) {
+    }
+}
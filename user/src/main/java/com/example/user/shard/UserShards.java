@@ -0,0 +1,225 @@
+package com.example.user.shard;
+
+import com.example.user.datasource.ShardContext;
+import com.example.user.datasource.ShardRoutingDataSource;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * Where users live when {@code user_table} is spread over several databases (see
+ * {@code ShardingConfig}), and how the services get there: running work on the shard that
+ * owns an id, retrying on its previous owner while a resharding is moving users, and
+ * scatter-gather over all shards. Without shards there is a single database and every
+ * method simply runs the work on the calling thread, so callers need no second code path.
+ * <p>
+ * Work must be handed in before its transaction starts: a transaction stays on the shard
+ * its connection came from. Scatter-gather runs one task per shard on a small pool, which
+ * like the password hashing pool is deliberately not a bean; each task holds one
+ * connection of its shard while it runs.
+ */
+@Component
+public class UserShards implements DisposableBean {
+    private final ShardRoutingDataSource routing;
+    private final Integer workerId;
+    private final ThreadPoolTaskExecutor scatterExecutor;
+
+    @Autowired
+    public UserShards(ObjectProvider<ShardRoutingDataSource> routing,
+                      @Value("${user.ids.worker-id:#{null}}") Integer workerId,
+                      @Value("${user.shards.scatter-threads:8}") int scatterThreads) {
+        this(routing.getIfAvailable(), workerId, scatterThreads);
+    }
+
+    /**
+     * @param routing  {@code null} for a single database
+     * @param workerId this instance's Snowflake worker id, required with shards
+     */
+    public UserShards(ShardRoutingDataSource routing, Integer workerId, int scatterThreads) {
+        if (routing != null && workerId == null) {
+            throw new IllegalStateException("Shards need user.ids.worker-id, unique per instance");
+        }
+        this.routing = routing;
+        this.workerId = workerId;
+        this.scatterExecutor = routing == null ? null : executor(scatterThreads);
+    }
+
+    public boolean isSharded() {
+        return routing != null;
+    }
+
+    /**
+     * Whether shards are joining or leaving, so some users may still be on the shard that
+     * owned them before.
+     */
+    public boolean isResharding() {
+        return routing != null && routing.previousRing().isPresent();
+    }
+
+    /**
+     * A Snowflake id for a new user or change event when sharded; otherwise {@code null},
+     * and Hibernate takes one from the database sequence as before.
+     */
+    public Long newId() {
+        return routing == null ? null : SnowflakeIdGenerator.forWorker(workerId).nextId();
+    }
+
+    /**
+     * All shards, the home shard first; a single entry without shards.
+     */
+    public List<String> shards() {
+        return routing == null ? List.of(ShardRoutingDataSource.HOME) : routing.shardNames();
+    }
+
+    public String ownerOf(long id) {
+        return routing == null ? ShardRoutingDataSource.HOME : routing.ring().shardFor(id);
+    }
+
+    /**
+     * The shard that owned the id before the current resharding, which is its owner when
+     * nothing is being moved.
+     */
+    public String previousOwnerOf(long id) {
+        return routing == null ? ShardRoutingDataSource.HOME
+                : routing.previousRing().orElse(routing.ring()).shardFor(id);
+    }
+
+    public DataSource dataSource(String shard) {
+        return routing.shard(shard);
+    }
+
+    public <T> T onShard(String shard, Supplier<T> work) {
+        return routing == null ? work.get() : ShardContext.call(shard, work);
+    }
+
+    /**
+     * Runs the work on the shard that owns the id; {@code id} may only be {@code null}
+     * without shards.
+     */
+    public <T> T onOwner(Long id, Supplier<T> work) {
+        return routing == null ? work.get() : onShard(ownerOf(id), work);
+    }
+
+    /**
+     * Like {@link #onOwner(Long, Supplier)}, but while resharding the work runs again on the
+     * previous owner when the result does not pass {@code found}, for users that have not
+     * been moved yet. Fit for reads and for writes that touch no row when the user is not
+     * there.
+     */
+    public <T> T onOwner(long id, Supplier<T> work, Predicate<T> found) {
+        T result = onOwner(id, work);
+        String previousOwner = previousOwnerOf(id);
+        if (found.test(result) || previousOwner.equals(ownerOf(id))) {
+            return result;
+        }
+        return onShard(previousOwner, work);
+    }
+
+    /**
+     * Runs the work on every shard in parallel and merges the results in id order, each id
+     * once (during a resharding a user can briefly be on two shards) and at most
+     * {@code limit} of them. Without shards the work's own result is returned as it is.
+     */
+    public <T> List<T> scatter(Supplier<List<T>> work, ToLongFunction<T> id, int limit) {
+        if (routing == null) {
+            return work.get();
+        }
+        List<CompletableFuture<List<T>>> gathered = new ArrayList<>();
+        for (String shard : routing.shardNames()) {
+            gathered.add(CompletableFuture.supplyAsync(() -> ShardContext.call(shard, work), scatterExecutor));
+        }
+        return join(CompletableFuture.allOf(gathered.toArray(CompletableFuture[]::new))
+                .thenApply(done -> {
+                    Map<Long, T> byId = new TreeMap<>();
+                    gathered.forEach(results -> results.join().forEach(result -> byId.putIfAbsent(id.applyAsLong(result), result)));
+                    return byId.values().stream().limit(limit).toList();
+                }));
+    }
+
+    /**
+     * Runs the work on every shard in parallel and returns the largest result.
+     */
+    public long max(Supplier<Long> work) {
+        if (routing == null) {
+            return work.get();
+        }
+        List<CompletableFuture<Long>> gathered = routing.shardNames().stream()
+                .map(shard -> CompletableFuture.supplyAsync(() -> ShardContext.call(shard, work), scatterExecutor))
+                .toList();
+        return join(CompletableFuture.allOf(gathered.toArray(CompletableFuture[]::new))
+                .thenApply(done -> gathered.stream().map(CompletableFuture::join).max(Comparator.naturalOrder()).orElse(0L)));
+    }
+
+    /**
+     * Splits items by the shard that owns their id, keeping their order within a shard.
+     */
+    public <T> Map<String, List<T>> byOwner(List<T> items, ToLongFunction<T> id) {
+        return group(items, item -> ownerOf(id.applyAsLong(item)));
+    }
+
+    public <T> Map<String, List<T>> byPreviousOwner(List<T> items, ToLongFunction<T> id) {
+        return group(items, item -> previousOwnerOf(id.applyAsLong(item)));
+    }
+
+    @Override
+    public void destroy() {
+        if (scatterExecutor != null) {
+            scatterExecutor.shutdown();
+        }
+    }
+
+    private <T> Map<String, List<T>> group(List<T> items, Function<T, String> shard) {
+        if (routing == null) {
+            return items.isEmpty() ? Map.of() : Map.of(ShardRoutingDataSource.HOME, items);
+        }
+        Map<String, List<T>> groups = new LinkedHashMap<>();
+        for (T item : items) {
+            groups.computeIfAbsent(shard.apply(item), name -> new ArrayList<>()).add(item);
+        }
+        return groups;
+    }
+
+    /**
+     * When the queue is full, scatter-gather runs on the calling thread, which slows it down
+     * instead of failing it.
+     */
+    private static ThreadPoolTaskExecutor executor(int threads) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(1000);
+        executor.setThreadNamePrefix("shard-scatter-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.initialize();
+        return executor;
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,350 @@
+package com.example.user.snapshot;
+
+import com.example.user.dto.UserChange;
+import com.example.user.dto.UserPage;
+import com.example.user.dto.UserView;
+import com.example.user.entity.UserChangeEvent;
+import com.example.user.service.UserChangeStream;
+import com.example.user.service.UserService;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongPredicate;
+
+/**
+ * A local copy of the users that {@code GET /user/{id}} and exact name searches fall back
+ * to while the database is unavailable, answered as stale reads. Only there when
+ * {@code user.snapshot.path} is set.
+ * <p>
+ * The copy is a {@link UserSnapshotFile} plus the changes published since it was written,
+ * held in memory and read every {@code user.snapshot.refresh-interval} from the change
+ * stream. Once {@code user.snapshot.compact-threshold} users have changed, the file and the
+ * changes are merged into a new file, without asking the database. The table itself is only
+ * read when there is no usable file yet, or when the changes after the file's position have
+ * been purged. A file from an earlier run is picked up at startup and brought up to date.
+ * <p>
+ * The {@code write} methods answer requests by writing JSON straight from the file, so a
+ * hit allocates no {@link UserView} or name. Users changed since the file are already held
+ * as views and written from those; a name search that matches one of them still gathers
+ * and sorts its matches in a list, to merge them in id order.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty("user.snapshot.path")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class UserSnapshot implements DisposableBean {
+    public static final String POSITION_HEADER = "X-Snapshot-Position";
+    public static final String STALE_WARNING = "110 - \"Response is Stale\"";
+    private static final UserView DELETED = new UserView(null, null, null);
+
+    private final UserService userService;
+    private final UserChangeStream changeStream;
+    private final Path path;
+    private final int batchSize;
+    private final int compactThreshold;
+    private final int sortRunSize;
+    private volatile State state;
+
+    public UserSnapshot(UserService userService, UserChangeStream changeStream,
+                        @Value("${user.snapshot.path}") Path path,
+                        @Value("${user.changes.page-size:500}") int batchSize,
+                        @Value("${user.snapshot.compact-threshold:100000}") int compactThreshold,
+                        @Value("${user.snapshot.sort-run-size:1048576}") int sortRunSize) {
+        this.userService = userService;
+        this.changeStream = changeStream;
+        this.path = path;
+        this.batchSize = batchSize;
+        this.compactThreshold = compactThreshold;
+        this.sortRunSize = sortRunSize;
+        if (Files.exists(path)) {
+            try {
+                this.state = new State(UserSnapshotFile.open(path));
+                log.info("Loaded user snapshot of {} users at position {}", state.file.count(), state.position);
+            } catch (IOException | RuntimeException e) {
+                log.warn("Ignoring unreadable user snapshot {}: {}", path, e.getMessage());
+            }
+        }
+    }
+
+    public boolean isLoaded() {
+        return state != null;
+    }
+
+    /**
+     * The last change stream position the snapshot reflects.
+     */
+    public long position() {
+        State current = state;
+        return current == null ? 0 : current.position;
+    }
+
+    public UserView findById(long id) {
+        State current = state;
+        if (current == null) {
+            return null;
+        }
+        UserView changed = current.changes.get(id);
+        if (changed != null) {
+            return changed == DELETED ? null : changed;
+        }
+        long index = current.file.indexOf(id);
+        return index < 0 ? null : current.file.viewAt(index);
+    }
+
+    /**
+     * Like {@link #findById}, but writes the user to the response as stale JSON with only
+     * the properties in {@code fields}, unless that is empty.
+     *
+     * @return false, leaving the response alone, if there is no such user
+     */
+    public boolean writeById(long id, Set<String> fields, HttpServletResponse response) throws IOException {
+        State current = state;
+        if (current == null) {
+            return false;
+        }
+        UserView changed = current.changes.get(id);
+        long index = changed == null ? current.file.indexOf(id) : -1;
+        if (changed == DELETED || (changed == null && index < 0)) {
+            return false;
+        }
+        OutputStream out = staleJson(response, current);
+        if (changed != null) {
+            UserSnapshotFile.writeJson(changed, fields, out);
+        } else {
+            current.file.writeJson(index, fields, out);
+        }
+        return true;
+    }
+
+    /**
+     * Users named exactly {@code name}, in id order.
+     */
+    public List<UserView> findByName(String name, int limit) {
+        State current = state;
+        return current == null ? List.of() : findByName(current, name, limit);
+    }
+
+    /**
+     * Like {@link #findByName}, but writes the users to the response as a stale JSON array.
+     */
+    public void writeByName(String name, int limit, Set<String> fields, HttpServletResponse response) throws IOException {
+        State current = state;
+        if (current == null) {
+            throw new IllegalStateException("The user snapshot is not loaded yet");
+        }
+        if (!current.names.containsKey(name)) {
+            current.file.writeByName(name, limit, current.changed, fields, staleJson(response, current));
+            return;
+        }
+        List<UserView> matches = findByName(current, name, limit);
+        OutputStream out = staleJson(response, current);
+        out.write('[');
+        for (int i = 0; i < matches.size(); i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            UserSnapshotFile.writeJson(matches.get(i), fields, out);
+        }
+        out.write(']');
+    }
+
+    private static OutputStream staleJson(HttpServletResponse response, State current) throws IOException {
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setHeader(HttpHeaders.WARNING, STALE_WARNING);
+        response.setHeader(POSITION_HEADER, Long.toString(current.position));
+        return response.getOutputStream();
+    }
+
+    private static List<UserView> findByName(State current, String name, int limit) {
+        List<UserView> matches = new ArrayList<>();
+        current.file.findByName(name, limit, current.changed, matches);
+        Set<Long> changed = current.names.get(name);
+        if (changed == null) {
+            return matches;
+        }
+        for (Long id : changed) {
+            UserView user = current.changes.get(id);
+            if (user != null && user != DELETED && name.equals(user.name())) {
+                matches.add(user);
+            }
+        }
+        matches.sort(Comparator.comparing(UserView::id));
+        return matches.size() > limit ? matches.subList(0, limit) : matches;
+    }
+
+    @Scheduled(fixedDelayString = "${user.snapshot.refresh-interval:PT1S}", initialDelayString = "${user.snapshot.refresh-interval:PT1S}")
+    public void scheduledRefresh() {
+        try {
+            refresh();
+        } catch (RuntimeException e) {
+            log.warn("Refreshing the user snapshot failed, retrying on the next run: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Applies the changes published since the last refresh, building the file first if
+     * there is none and compacting it when enough users have changed.
+     */
+    public synchronized void refresh() {
+        if (state == null) {
+            rebuild();
+        }
+        State current = state;
+        List<UserChange> changes;
+        while (!(changes = changeStream.changesSince(current.position, batchSize)).isEmpty()) {
+            if (changes.get(0).position() != current.position + 1) {
+                log.warn("Changes after position {} were purged, rebuilding the user snapshot", current.position);
+                rebuild();
+                current = state;
+                continue;
+            }
+            changes.forEach(current::apply);
+        }
+        if (current.changes.size() >= compactThreshold) {
+            compact(current);
+        }
+    }
+
+    @Override
+    public void destroy() throws IOException {
+        State current = state;
+        if (current != null) {
+            current.file.close();
+        }
+    }
+
+    /**
+     * Reads the table in id order. It is read after noting the position, so changes in
+     * between are applied again on top, which leaves each user as its last change has it.
+     */
+    private void rebuild() {
+        long position = changeStream.lastPosition();
+        long started = System.nanoTime();
+        try (UserSnapshotFile.Writer writer = UserSnapshotFile.writer(path, position, sortRunSize)) {
+            Long after = null;
+            do {
+                UserPage page = userService.findUsersPage(after, UserService.MAX_PAGE_SIZE);
+                for (UserView user : page.content()) {
+                    writer.add(user);
+                }
+                after = page.nextCursor();
+            } while (after != null);
+            writer.finish();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write the user snapshot", e);
+        }
+        replace();
+        log.info("Built user snapshot of {} users at position {} in {} ms", state.file.count(), position,
+                (System.nanoTime() - started) / 1_000_000);
+    }
+
+    private void compact(State current) {
+        long started = System.nanoTime();
+        UserSnapshotFile file = current.file;
+        try (UserSnapshotFile.Writer writer = UserSnapshotFile.writer(path, current.position, sortRunSize)) {
+            Iterator<Map.Entry<Long, UserView>> changed = new TreeMap<>(current.changes).entrySet().iterator();
+            Map.Entry<Long, UserView> next = next(changed);
+            for (long i = 0; i < file.count(); i++) {
+                long id = file.idAt(i);
+                while (next != null && next.getKey() < id) {
+                    addUnlessDeleted(writer, next.getValue());
+                    next = next(changed);
+                }
+                if (next != null && next.getKey() == id) {
+                    addUnlessDeleted(writer, next.getValue());
+                    next = next(changed);
+                } else {
+                    writer.add(file.viewAt(i));
+                }
+            }
+            for (; next != null; next = next(changed)) {
+                addUnlessDeleted(writer, next.getValue());
+            }
+            writer.finish();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not compact the user snapshot", e);
+        }
+        replace();
+        log.info("Compacted user snapshot to {} users at position {} in {} ms", state.file.count(), state.position,
+                (System.nanoTime() - started) / 1_000_000);
+    }
+
+    private static void addUnlessDeleted(UserSnapshotFile.Writer writer, UserView user) throws IOException {
+        if (user != DELETED) {
+            writer.add(user);
+        }
+    }
+
+    private static Map.Entry<Long, UserView> next(Iterator<Map.Entry<Long, UserView>> changed) {
+        return changed.hasNext() ? changed.next() : null;
+    }
+
+    private void replace() {
+        State previous = state;
+        try {
+            state = new State(UserSnapshotFile.open(path));
+            if (previous != null) {
+                previous.file.close();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open the user snapshot", e);
+        }
+    }
+
+    /**
+     * A file and the changes since. Only the refresh changes it; lookups see each change
+     * as soon as it is applied.
+     */
+    private static final class State {
+        private final UserSnapshotFile file;
+        private final Map<Long, UserView> changes = new ConcurrentHashMap<>();
+        private final Map<String, Set<Long>> names = new ConcurrentHashMap<>();
+        private final LongPredicate changed = changes::containsKey;
+        private volatile long position;
+
+        private State(UserSnapshotFile file) {
+            this.file = file;
+            this.position = file.position();
+        }
+
+        private void apply(UserChange change) {
+            long id = change.userId();
+            UserView previous = changes.get(id);
+            if (previous != null && previous != DELETED) {
+                names.computeIfPresent(previous.name(), (name, ids) -> {
+                    ids.remove(id);
+                    return ids.isEmpty() ? null : ids;
+                });
+            }
+            if (change.type() == UserChangeEvent.Type.DELETED) {
+                changes.put(id, DELETED);
+            } else {
+                changes.put(id, new UserView(id, change.name(), change.version()));
+                names.computeIfAbsent(change.name(), name -> ConcurrentHashMap.newKeySet()).add(id);
+            }
+            position = change.position();
+        }
+    }
+}
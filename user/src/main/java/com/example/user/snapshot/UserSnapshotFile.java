@@ -0,0 +1,595 @@
+package com.example.user.snapshot;
+
+import com.example.user.dto.UserView;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.function.LongPredicate;
+
+/**
+ * A read-only, memory-mapped copy of {@code user_table}, as of a change stream position.
+ * The file holds a 64-byte header, then
+ * <ul>
+ * <li>the id index: per user, in id order, its id and the offset of its record (16 bytes),</li>
+ * <li>the name index: per user, a 32-bit hash of its name and its place in the id index,
+ * sorted by hash (8 bytes),</li>
+ * <li>the records: version, name length and the name in UTF-8.</li>
+ * </ul>
+ * Opening a file only maps it, whatever its size; pages are read in by the OS as lookups
+ * touch them and live outside the heap. Lookups are binary searches over the mapped
+ * indexes and compare names byte by byte, and the users found can be written out as JSON
+ * straight from the mapped bytes, so answering from the file allocates nothing. Only
+ * {@link #viewAt(long)} decodes a user into a {@link UserView}.
+ * <p>
+ * A file is written once by a {@link Writer}, which takes users in id order and sorts the
+ * name index in runs of bounded size merged from disk, so writing tens of millions of
+ * users needs little heap either.
+ */
+public final class UserSnapshotFile implements Closeable {
+    static final int MAGIC = 0x55534E50;
+    static final int FORMAT = 1;
+    static final int HEADER_SIZE = 64;
+    static final int ID_ENTRY_SIZE = 16;
+    static final int NAME_ENTRY_SIZE = 8;
+    private static final int CHUNK_BITS = 30;
+    private static final long CHUNK_MASK = (1L << CHUNK_BITS) - 1;
+    private static final long NO_VERSION = Long.MIN_VALUE;
+    private static final byte[] HEX_DIGITS = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+
+    private final FileChannel channel;
+    private final MappedByteBuffer[] chunks;
+    private final long count;
+    private final long position;
+    private final long createdAt;
+    private final long idIndex;
+    private final long nameIndex;
+
+    private UserSnapshotFile(FileChannel channel) throws IOException {
+        this.channel = channel;
+        long size = channel.size();
+        this.chunks = new MappedByteBuffer[(int) ((size + CHUNK_MASK) >>> CHUNK_BITS)];
+        for (int i = 0; i < chunks.length; i++) {
+            long start = (long) i << CHUNK_BITS;
+            chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(size - start, 1L << CHUNK_BITS));
+        }
+        if (size < HEADER_SIZE || getInt(0) != MAGIC || getInt(4) != FORMAT) {
+            throw new IOException("Not a user snapshot of format " + FORMAT);
+        }
+        this.count = getLong(8);
+        this.position = getLong(16);
+        this.createdAt = getLong(24);
+        this.idIndex = getLong(32);
+        this.nameIndex = getLong(40);
+    }
+
+    public static UserSnapshotFile open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new UserSnapshotFile(channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @param runSize how many name index entries are sorted in memory at a time
+     */
+    public static Writer writer(Path target, long position, int runSize) throws IOException {
+        return new Writer(target, position, runSize);
+    }
+
+    public long count() {
+        return count;
+    }
+
+    /**
+     * The change stream position this file reflects.
+     */
+    public long position() {
+        return position;
+    }
+
+    public long createdAt() {
+        return createdAt;
+    }
+
+    public long idAt(long index) {
+        return getLong(idIndex + index * ID_ENTRY_SIZE);
+    }
+
+    public UserView viewAt(long index) {
+        long record = recordAt(index);
+        long version = getLong(record);
+        byte[] name = new byte[getInt(record + 8)];
+        for (int i = 0; i < name.length; i++) {
+            name[i] = getByte(record + 12 + i);
+        }
+        return new UserView(idAt(index), new String(name, StandardCharsets.UTF_8), version == NO_VERSION ? null : version);
+    }
+
+    /**
+     * @return the place of the user in the id index, or -1
+     */
+    public long indexOf(long id) {
+        long low = 0;
+        long high = count - 1;
+        while (low <= high) {
+            long middle = (low + high) >>> 1;
+            long found = idAt(middle);
+            if (found < id) {
+                low = middle + 1;
+            } else if (found > id) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Adds the users named exactly {@code name} to {@code matches}, in id order, skipping
+     * those {@code skip} accepts, until there are {@code limit}.
+     */
+    public void findByName(String name, int limit, LongPredicate skip, List<UserView> matches) {
+        int hash = hash(name);
+        for (long i = nextByName(firstWithHash(hash), hash, name, skip); i >= 0 && matches.size() < limit;
+             i = nextByName(i + 1, hash, name, skip)) {
+            matches.add(viewAt(indexAtName(i)));
+        }
+    }
+
+    /**
+     * Writes the user at {@code index} as JSON, as {@link UserView} is serialized, with only
+     * the properties in {@code fields} unless that is empty.
+     */
+    public void writeJson(long index, Set<String> fields, OutputStream out) throws IOException {
+        long record = recordAt(index);
+        long version = getLong(record);
+        out.write('{');
+        boolean more = false;
+        if (selected(fields, "id")) {
+            more = writeFieldName("id", more, out);
+            writeNumber(idAt(index), out);
+        }
+        if (selected(fields, "name")) {
+            more = writeFieldName("name", more, out);
+            out.write('"');
+            long at = record + 12;
+            for (long end = at + getInt(record + 8); at < end; at++) {
+                writeEscaped(getByte(at), out);
+            }
+            out.write('"');
+        }
+        if (version != NO_VERSION && selected(fields, "version")) {
+            writeFieldName("version", more, out);
+            writeNumber(version, out);
+        }
+        out.write('}');
+    }
+
+    /**
+     * Like {@link #findByName}, but writes the users found as a JSON array, each as
+     * {@link #writeJson(long, Set, OutputStream)} does.
+     */
+    public void writeByName(String name, int limit, LongPredicate skip, Set<String> fields, OutputStream out)
+            throws IOException {
+        int hash = hash(name);
+        out.write('[');
+        int written = 0;
+        for (long i = nextByName(firstWithHash(hash), hash, name, skip); i >= 0 && written < limit;
+             i = nextByName(i + 1, hash, name, skip)) {
+            if (written++ > 0) {
+                out.write(',');
+            }
+            writeJson(indexAtName(i), fields, out);
+        }
+        out.write(']');
+    }
+
+    /**
+     * Writes a user held in memory the same way as {@link #writeJson(long, Set, OutputStream)},
+     * encoding its name on the fly.
+     */
+    static void writeJson(UserView user, Set<String> fields, OutputStream out) throws IOException {
+        out.write('{');
+        boolean more = false;
+        if (selected(fields, "id")) {
+            more = writeFieldName("id", more, out);
+            writeNumber(user.id(), out);
+        }
+        if (selected(fields, "name")) {
+            more = writeFieldName("name", more, out);
+            if (user.name() == null) {
+                writeAscii("null", out);
+            } else {
+                out.write('"');
+                for (int i = 0; i < user.name().length(); ) {
+                    int codePoint = codePointAt(user.name(), i);
+                    i += Character.isSupplementaryCodePoint(codePoint) ? 2 : 1;
+                    int bytes = utf8Length(codePoint);
+                    for (int k = 0; k < bytes; k++) {
+                        writeEscaped((byte) utf8Byte(codePoint, bytes, k), out);
+                    }
+                }
+                out.write('"');
+            }
+        }
+        if (user.version() != null && selected(fields, "version")) {
+            writeFieldName("version", more, out);
+            writeNumber(user.version(), out);
+        }
+        out.write('}');
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private long recordAt(long index) {
+        return getLong(idIndex + index * ID_ENTRY_SIZE + 8);
+    }
+
+    private long indexAtName(long position) {
+        return getLong(nameIndex + position * NAME_ENTRY_SIZE) & 0xffffffffL;
+    }
+
+    /**
+     * @return the first place in the name index whose hash is not below {@code hash}
+     */
+    private long firstWithHash(int hash) {
+        long key = (long) hash << 32;
+        long low = 0;
+        long high = count;
+        while (low < high) {
+            long middle = (low + high) >>> 1;
+            if (getLong(nameIndex + middle * NAME_ENTRY_SIZE) < key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return the first place in the name index from {@code from} on that holds a user named
+     * {@code name} that {@code skip} does not accept, or -1
+     */
+    private long nextByName(long from, int hash, String name, LongPredicate skip) {
+        for (long i = from; i < count; i++) {
+            long entry = getLong(nameIndex + i * NAME_ENTRY_SIZE);
+            if ((int) (entry >>> 32) != hash) {
+                return -1;
+            }
+            long index = entry & 0xffffffffL;
+            if (!skip.test(idAt(index)) && nameEquals(recordAt(index), name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean nameEquals(long record, String name) {
+        int length = getInt(record + 8);
+        long at = record + 12;
+        long end = at + length;
+        for (int i = 0; i < name.length(); ) {
+            int codePoint = codePointAt(name, i);
+            i += Character.isSupplementaryCodePoint(codePoint) ? 2 : 1;
+            int bytes = utf8Length(codePoint);
+            if (at + bytes > end) {
+                return false;
+            }
+            for (int k = 0; k < bytes; k++) {
+                if (getByte(at++) != (byte) utf8Byte(codePoint, bytes, k)) {
+                    return false;
+                }
+            }
+        }
+        return at == end;
+    }
+
+    private static boolean selected(Set<String> fields, String field) {
+        return fields == null || fields.isEmpty() || fields.contains(field);
+    }
+
+    private static boolean writeFieldName(String field, boolean more, OutputStream out) throws IOException {
+        if (more) {
+            out.write(',');
+        }
+        out.write('"');
+        writeAscii(field, out);
+        out.write('"');
+        out.write(':');
+        return true;
+    }
+
+    private static void writeAscii(String value, OutputStream out) throws IOException {
+        for (int i = 0; i < value.length(); i++) {
+            out.write(value.charAt(i));
+        }
+    }
+
+    /**
+     * Digit by digit from the most significant, so no text is built for the number.
+     */
+    private static void writeNumber(long value, OutputStream out) throws IOException {
+        if (value < 0) {
+            out.write('-');
+        }
+        long divisor = 1;
+        while (value / divisor >= 10 || value / divisor <= -10) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            out.write('0' + (int) Math.abs(value / divisor % 10));
+        }
+    }
+
+    /**
+     * Escapes a byte of UTF-8 as Jackson does: quotes, backslashes and control characters.
+     * Bytes of multi-byte characters are all above {@code 0x7F} and pass through.
+     */
+    private static void writeEscaped(byte b, OutputStream out) throws IOException {
+        if (b == '"' || b == '\\') {
+            out.write('\\');
+            out.write(b);
+        } else if (b >= 0 && b < 0x20) {
+            out.write('\\');
+            switch (b) {
+                case '\b' -> out.write('b');
+                case '\t' -> out.write('t');
+                case '\n' -> out.write('n');
+                case '\f' -> out.write('f');
+                case '\r' -> out.write('r');
+                default -> {
+                    writeAscii("u00", out);
+                    out.write(HEX_DIGITS[b >> 4]);
+                    out.write(HEX_DIGITS[b & 0xF]);
+                }
+            }
+        } else {
+            out.write(b);
+        }
+    }
+
+    private byte getByte(long at) {
+        return chunks[(int) (at >>> CHUNK_BITS)].get((int) (at & CHUNK_MASK));
+    }
+
+    private int getInt(long at) {
+        MappedByteBuffer chunk = chunks[(int) (at >>> CHUNK_BITS)];
+        int offset = (int) (at & CHUNK_MASK);
+        if (offset + 4 <= chunk.limit()) {
+            return chunk.getInt(offset);
+        }
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            value = (value << 8) | (getByte(at + i) & 0xff);
+        }
+        return value;
+    }
+
+    private long getLong(long at) {
+        MappedByteBuffer chunk = chunks[(int) (at >>> CHUNK_BITS)];
+        int offset = (int) (at & CHUNK_MASK);
+        if (offset + 8 <= chunk.limit()) {
+            return chunk.getLong(offset);
+        }
+        return ((long) getInt(at) << 32) | (getInt(at + 4) & 0xffffffffL);
+    }
+
+    /**
+     * FNV-1a over the name's UTF-8 bytes, encoded on the fly so that hashing a lookup key
+     * allocates nothing. Unpaired surrogates count as {@code ?}, as in
+     * {@link String#getBytes(java.nio.charset.Charset)}.
+     */
+    static int hash(String name) {
+        int hash = 0x811c9dc5;
+        for (int i = 0; i < name.length(); ) {
+            int codePoint = codePointAt(name, i);
+            i += Character.isSupplementaryCodePoint(codePoint) ? 2 : 1;
+            int bytes = utf8Length(codePoint);
+            for (int k = 0; k < bytes; k++) {
+                hash ^= utf8Byte(codePoint, bytes, k);
+                hash *= 0x01000193;
+            }
+        }
+        return hash;
+    }
+
+    private static int codePointAt(String value, int i) {
+        char c = value.charAt(i);
+        if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+            return Character.toCodePoint(c, value.charAt(i + 1));
+        }
+        return Character.isSurrogate(c) ? '?' : c;
+    }
+
+    private static int utf8Length(int codePoint) {
+        return codePoint < 0x80 ? 1 : codePoint < 0x800 ? 2 : codePoint < 0x10000 ? 3 : 4;
+    }
+
+    private static int utf8Byte(int codePoint, int length, int k) {
+        if (length == 1) {
+            return codePoint;
+        }
+        if (k == 0) {
+            return ((0xF00 >> length) & 0xFF) | (codePoint >> (6 * (length - 1)));
+        }
+        return 0x80 | ((codePoint >> (6 * (length - 1 - k))) & 0x3F);
+    }
+
+    /**
+     * Writes a snapshot next to its target and moves it into place on {@link #finish()}, so
+     * readers of the old file are never disturbed. Ids, records and sorted runs of the name
+     * index go to temporary files first and are put together at the end.
+     */
+    public static final class Writer implements Closeable {
+        private final Path target;
+        private final long position;
+        private final Path ids;
+        private final Path records;
+        private final List<Path> runs = new ArrayList<>();
+        private final DataOutputStream idOut;
+        private final DataOutputStream recordOut;
+        private final long[] run;
+        private int inRun;
+        private long count;
+        private long recordOffset;
+        private long lastId = Long.MIN_VALUE;
+
+        private Writer(Path target, long position, int runSize) throws IOException {
+            this.target = target;
+            this.position = position;
+            this.ids = temporary(".ids");
+            this.records = temporary(".records");
+            this.idOut = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(ids), 1 << 16));
+            this.recordOut = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(records), 1 << 16));
+            this.run = new long[runSize];
+        }
+
+        /**
+         * Users must come in increasing id order.
+         */
+        public void add(UserView user) throws IOException {
+            if (count > 0 && user.id() <= lastId) {
+                throw new IllegalArgumentException("User " + user.id() + " is out of id order after " + lastId);
+            }
+            byte[] name = user.name() == null ? new byte[0] : user.name().getBytes(StandardCharsets.UTF_8);
+            idOut.writeLong(user.id());
+            idOut.writeLong(recordOffset);
+            recordOut.writeLong(user.version() == null ? NO_VERSION : user.version());
+            recordOut.writeInt(name.length);
+            recordOut.write(name);
+            recordOffset += 12 + name.length;
+            run[inRun++] = ((long) hash(user.name() == null ? "" : user.name()) << 32) | count;
+            if (inRun == run.length) {
+                flushRun();
+            }
+            lastId = user.id();
+            count++;
+        }
+
+        public void finish() throws IOException {
+            flushRun();
+            idOut.close();
+            recordOut.close();
+            long nameIndex = HEADER_SIZE + count * ID_ENTRY_SIZE;
+            long recordsStart = nameIndex + count * NAME_ENTRY_SIZE;
+            Path file = temporary(".snapshot");
+            try (FileChannel out = FileChannel.open(file, StandardOpenOption.WRITE);
+                 DataOutputStream data = new DataOutputStream(new BufferedOutputStream(
+                         Channels.newOutputStream(out), 1 << 16))) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE)
+                        .putInt(MAGIC).putInt(FORMAT).putLong(count).putLong(position)
+                        .putLong(System.currentTimeMillis()).putLong(HEADER_SIZE).putLong(nameIndex);
+                data.write(header.array());
+                try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(ids), 1 << 16))) {
+                    for (long i = 0; i < count; i++) {
+                        data.writeLong(in.readLong());
+                        data.writeLong(recordsStart + in.readLong());
+                    }
+                }
+                mergeRuns(data);
+                Files.copy(records, data);
+                data.flush();
+                out.force(true);
+            } finally {
+                deleteTemporaryFiles();
+            }
+            Files.move(file, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        @Override
+        public void close() throws IOException {
+            idOut.close();
+            recordOut.close();
+            deleteTemporaryFiles();
+            Files.deleteIfExists(target.resolveSibling(target.getFileName() + ".snapshot.tmp"));
+        }
+
+        private void flushRun() throws IOException {
+            if (inRun == 0) {
+                return;
+            }
+            Arrays.sort(run, 0, inRun);
+            Path file = temporary(".run" + runs.size());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))) {
+                for (int i = 0; i < inRun; i++) {
+                    out.writeLong(run[i]);
+                }
+            }
+            runs.add(file);
+            inRun = 0;
+        }
+
+        private void mergeRuns(DataOutputStream data) throws IOException {
+            List<DataInputStream> inputs = new ArrayList<>();
+            try {
+                PriorityQueue<long[]> heads = new PriorityQueue<>((a, b) -> Long.compare(a[0], b[0]));
+                for (Path file : runs) {
+                    DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16));
+                    inputs.add(in);
+                    heads.add(new long[]{in.readLong(), inputs.size() - 1});
+                }
+                while (!heads.isEmpty()) {
+                    long[] head = heads.poll();
+                    data.writeLong(head[0]);
+                    try {
+                        head[0] = inputs.get((int) head[1]).readLong();
+                        heads.add(head);
+                    } catch (EOFException e) {
+                        // this run is done
+                    }
+                }
+            } finally {
+                for (DataInputStream in : inputs) {
+                    in.close();
+                }
+            }
+        }
+
+        private Path temporary(String suffix) throws IOException {
+            Path file = target.resolveSibling(target.getFileName() + suffix + ".tmp");
+            Files.deleteIfExists(file);
+            return Files.createFile(file);
+        }
+
+        private void deleteTemporaryFiles() {
+            try {
+                Files.deleteIfExists(ids);
+                Files.deleteIfExists(records);
+                for (Path file : runs) {
+                    Files.deleteIfExists(file);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
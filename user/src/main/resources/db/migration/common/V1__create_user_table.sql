@@ -0,0 +1,11 @@
+CREATE SEQUENCE IF NOT EXISTS user_table_id_seq START WITH 1 INCREMENT BY 50;
+
+CREATE TABLE IF NOT EXISTS user_table (
+    id       BIGINT NOT NULL PRIMARY KEY,
+    name     VARCHAR(255),
+    password VARCHAR(255)
+);
+
+-- Databases created before migrations were managed have a step-1 sequence behind the
+-- old IDENTITY id. The pooled id allocator reserves allocationSize (50) ids per call.
+ALTER SEQUENCE user_table_id_seq INCREMENT BY 50;
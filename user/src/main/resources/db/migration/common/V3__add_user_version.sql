@@ -0,0 +1,3 @@
+-- Optimistic lock counter. With a constant default this is a catalog-only change on
+-- PostgreSQL 11+, so existing rows are not rewritten.
+ALTER TABLE user_table ADD COLUMN IF NOT EXISTS version BIGINT NOT NULL DEFAULT 0;
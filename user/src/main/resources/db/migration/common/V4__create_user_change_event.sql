@@ -0,0 +1,14 @@
+CREATE SEQUENCE IF NOT EXISTS user_change_event_id_seq START WITH 1 INCREMENT BY 50;
+
+-- Transactional outbox. Rows are written in the same transaction as the user change;
+-- position stays null until the relay publishes the row and gives it its place in the
+-- change stream.
+CREATE TABLE IF NOT EXISTS user_change_event (
+    id           BIGINT      NOT NULL PRIMARY KEY,
+    user_id      BIGINT      NOT NULL,
+    type         VARCHAR(16) NOT NULL,
+    name         VARCHAR(255),
+    user_version BIGINT,
+    created_at   TIMESTAMP WITH TIME ZONE NOT NULL,
+    position     BIGINT UNIQUE
+);
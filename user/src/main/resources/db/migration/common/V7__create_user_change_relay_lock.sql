@@ -0,0 +1,8 @@
+-- One row that change relays lock while they number events across several shards, so
+-- two instances never hand out the same positions. Only used with sharding, and only on
+-- the home shard; a single database relies on the row locks of the events themselves.
+CREATE TABLE IF NOT EXISTS user_change_relay_lock (
+    id INT PRIMARY KEY
+);
+
+INSERT INTO user_change_relay_lock (id) VALUES (1);
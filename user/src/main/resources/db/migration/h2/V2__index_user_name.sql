@@ -0,0 +1,2 @@
+-- H2 has no expression indexes; the plain index keeps exact and prefix lookups off a full scan.
+CREATE INDEX IF NOT EXISTS idx_user_table_name ON user_table (name);
@@ -0,0 +1,4 @@
+-- text_pattern_ops serves both equality and left-anchored LIKE, so one index per
+-- expression covers exact and prefix search, case-sensitive and lower()-folded.
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_user_table_name ON user_table (name text_pattern_ops);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_user_table_name_lower ON user_table (lower(name) text_pattern_ops);
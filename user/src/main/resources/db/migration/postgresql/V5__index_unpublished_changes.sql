@@ -0,0 +1,3 @@
+-- The relay only ever looks for unpublished rows; a partial index keeps that lookup small
+-- however many published events are retained.
+CREATE INDEX IF NOT EXISTS idx_user_change_event_unpublished ON user_change_event (id) WHERE position IS NULL;
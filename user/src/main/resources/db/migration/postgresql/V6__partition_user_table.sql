@@ -0,0 +1,60 @@
+-- Hash partitioning by id spreads the table, its indexes and their vacuuming over
+-- ${user-table-partitions} tables of similar size, and a lookup by id only touches one of
+-- them. The count comes from spring.flyway.placeholders.user-table-partitions and is fixed
+-- once this has run; changing it takes another migration that rewrites the table.
+--
+-- Existing rows are copied inside this migration, which holds an exclusive lock on the
+-- table until it commits. On a large table, run it in a maintenance window.
+
+ALTER TABLE user_table RENAME TO user_table_unpartitioned;
+
+-- On databases that predate managed migrations the id sequence may still belong to the
+-- old id column and would be dropped with the table. Its replacement starts past every
+-- id the old one could have handed out.
+DO $$
+DECLARE
+    owned_sequence TEXT := pg_get_serial_sequence('user_table_unpartitioned', 'id');
+BEGIN
+    IF owned_sequence IS NOT NULL THEN
+        EXECUTE format('CREATE SEQUENCE user_table_id_seq_free START WITH %s INCREMENT BY 50',
+                       nextval(owned_sequence) + 50);
+    END IF;
+END
+$$;
+
+CREATE TABLE user_table (
+    id       BIGINT NOT NULL,
+    name     VARCHAR(255),
+    password VARCHAR(255),
+    version  BIGINT NOT NULL DEFAULT 0
+) PARTITION BY HASH (id);
+
+DO $$
+BEGIN
+    FOR i IN 0..${user-table-partitions} - 1 LOOP
+        EXECUTE format('CREATE TABLE user_table_p%s PARTITION OF user_table FOR VALUES WITH (MODULUS %s, REMAINDER %s)',
+                       lpad(i::TEXT, 2, '0'), ${user-table-partitions}, i);
+    END LOOP;
+END
+$$;
+
+INSERT INTO user_table (id, name, password, version)
+SELECT id, name, password, version FROM user_table_unpartitioned;
+
+DROP TABLE user_table_unpartitioned;
+
+DO $$
+BEGIN
+    IF to_regclass('user_table_id_seq_free') IS NOT NULL THEN
+        ALTER SEQUENCE user_table_id_seq_free RENAME TO user_table_id_seq;
+    END IF;
+END
+$$;
+
+-- Indexes are built once the rows are in, which is faster than maintaining them during
+-- the copy. Each is created on every partition.
+ALTER TABLE user_table ADD PRIMARY KEY (id);
+CREATE INDEX idx_user_table_name ON user_table (name text_pattern_ops);
+CREATE INDEX idx_user_table_name_lower ON user_table (lower(name) text_pattern_ops);
+
+ANALYZE user_table;
@@ -0,0 +1,33 @@
+package com.example.user.config;
+
+import com.example.user.security.CredentialCache;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CheckpointRestoreConfigTest {
+
+    @Test
+    void clearsCachesOnlyWhenRestarted() {
+        ConcurrentMapCacheManager cacheManager = new ConcurrentMapCacheManager(CacheConfig.USERS_CACHE);
+        CredentialCache credentialCache = new CredentialCache(Duration.ofMinutes(1), 100);
+        CheckpointRestoreConfig.CacheReset reset = new CheckpointRestoreConfig.CacheReset(cacheManager, credentialCache);
+        cacheManager.getCache(CacheConfig.USERS_CACHE).put(1L, "user");
+        credentialCache.put("1", "password", UsernamePasswordAuthenticationToken.authenticated("1", null, null));
+
+        reset.start();
+        assertNotNull(cacheManager.getCache(CacheConfig.USERS_CACHE).get(1L));
+        assertNotNull(credentialCache.get("1", "password"));
+
+        reset.stop();
+        assertFalse(reset.isRunning());
+        reset.start();
+        assertTrue(reset.isRunning());
+        assertNull(cacheManager.getCache(CacheConfig.USERS_CACHE).get(1L));
+        assertNull(credentialCache.get("1", "password"));
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.user.config;
+
+import com.example.user.dto.UserView;
+import com.example.user.entity.User;
+import org.junit.jupiter.api.Test;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.predicate.RuntimeHintsPredicates;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NativeHintsConfigTest {
+
+    @Test
+    void registersEntitiesProjectionsAndMigrations() throws Exception {
+        RuntimeHints hints = new RuntimeHints();
+        new NativeHintsConfig.UserRuntimeHints().registerHints(hints, getClass().getClassLoader());
+
+        assertTrue(RuntimeHintsPredicates.reflection().onType(User.class)
+                .withMemberCategory(MemberCategory.DECLARED_FIELDS).test(hints));
+        assertTrue(RuntimeHintsPredicates.reflection()
+                .onConstructor(UserView.class.getConstructor(Long.class, String.class, Long.class)).test(hints));
+        assertTrue(RuntimeHintsPredicates.resource().forResource("db/migration/common/V1__create_user_table.sql").test(hints));
+        assertTrue(RuntimeHintsPredicates.resource().forResource("db/migration/postgresql/V2__index_user_name.sql").test(hints));
+    }
+}
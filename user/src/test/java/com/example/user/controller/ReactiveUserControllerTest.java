@@ -0,0 +1,177 @@
+package com.example.user.controller;
+
+import com.example.user.dto.UserView;
+import com.example.user.entity.UserChangeEvent;
+import com.example.user.repository.UserChangeEventRepository;
+import com.example.user.service.PasswordHasher;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.aot.DisabledInAotMode;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisabledInAotMode
+@ActiveProfiles("reactive")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.r2dbc.url=r2dbc:h2:mem:///userdb?options=MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+        "spring.r2dbc.username=sa",
+        "spring.r2dbc.password=",
+        "user.security.admin-ids=" + ReactiveUserControllerTest.ADMIN_ID
+})
+class ReactiveUserControllerTest {
+    static final long ADMIN_ID = 999_999_999L;
+
+    @Autowired
+    private WebTestClient webTestClient;
+    @Autowired
+    private UserChangeEventRepository changeEvents;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private PasswordHasher passwordHasher;
+
+    private UserView user;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate.update("MERGE INTO user_table (id, name, password, version) KEY (id) VALUES (?, 'admin', ?, 0)",
+                ADMIN_ID, passwordHasher.encode("secret123"));
+        user = webTestClient.post().uri("/user")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(Map.of("name", "reactive", "password", "secret123"))
+                .exchange()
+                .expectStatus().isCreated()
+                .expectBody(UserView.class)
+                .returnResult().getResponseBody();
+        assertNotNull(user);
+        assertEquals(0L, user.version());
+    }
+
+    @Test
+    void readsNeedCredentials() {
+        webTestClient.get().uri("/user/{id}", user.id()).exchange().expectStatus().isUnauthorized();
+        authenticated().get().uri("/user/{id}", user.id())
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.name").isEqualTo("reactive")
+                .jsonPath("$.password").doesNotExist();
+    }
+
+    @Test
+    void keepsValidationAndNotFoundSemantics() {
+        webTestClient.post().uri("/user")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(Map.of("name", " ", "password", "secret123"))
+                .exchange()
+                .expectStatus().isEqualTo(422);
+        authenticated().get().uri("/user/{id}", Long.MAX_VALUE).exchange().expectStatus().isNotFound();
+        admin().get().uri("/user/page?size=0").exchange().expectStatus().isEqualTo(422);
+    }
+
+    @Test
+    void updatesWithVersionAndRejectsStaleOnes() {
+        long eventsBefore = changeEvents.count();
+        authenticated().put().uri("/user/{id}", user.id())
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(Map.of("id", user.id(), "name", "renamed", "password", "secret123", "version", 0))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody().jsonPath("$.version").isEqualTo(1);
+        authenticated().put().uri("/user/{id}", user.id())
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(Map.of("id", user.id(), "name", "stale", "password", "secret123", "version", 0))
+                .exchange()
+                .expectStatus().isEqualTo(409);
+
+        assertEquals(eventsBefore + 1, changeEvents.count());
+        assertTrue(changeEvents.findAll().stream().anyMatch(event -> event.getUserId().equals(user.id())
+                && event.getType() == UserChangeEvent.Type.UPDATED && "renamed".equals(event.getName())));
+    }
+
+    @Test
+    void updateWithoutVersionReturnsTheStoredVersion() {
+        authenticated().put().uri("/user/{id}", user.id())
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(Map.of("id", user.id(), "name", "unversioned", "password", "secret123"))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody().jsonPath("$.version").isEqualTo(user.version() + 1);
+
+        assertTrue(changeEvents.findAll().stream().anyMatch(event -> event.getUserId().equals(user.id())
+                && "unversioned".equals(event.getName()) && event.getUserVersion() == user.version() + 1));
+    }
+
+    @Test
+    void usersCanOnlyChangeThemselves() {
+        String otherId = String.valueOf(webTestClient.post().uri("/user")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(Map.of("name", "other", "password", "secret123"))
+                .exchange()
+                .expectBody(UserView.class)
+                .returnResult().getResponseBody().id());
+
+        authenticated().delete().uri("/user/{id}", otherId).exchange().expectStatus().isForbidden();
+        authenticated().put().uri("/user/{id}", otherId)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(Map.of("id", otherId, "name", "taken", "password", "secret123"))
+                .exchange()
+                .expectStatus().isForbidden();
+
+        authenticated().delete().uri("/user/{id}", user.id()).exchange().expectStatus().isOk();
+        webTestClient.delete().uri("/user/{id}", otherId)
+                .headers(headers -> headers.setBasicAuth(otherId, "secret123"))
+                .exchange()
+                .expectStatus().isOk();
+    }
+
+    @Test
+    void streamsAllUsersAsNdjson() {
+        authenticated().get().uri("/user").exchange().expectStatus().isForbidden();
+        authenticated().get().uri("/user/page").exchange().expectStatus().isForbidden();
+
+        List<UserView> users = admin().get().uri("/user")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+                .returnResult(UserView.class)
+                .getResponseBody()
+                .filter(view -> view.id().equals(user.id()))
+                .collectList()
+                .block();
+
+        assertEquals(List.of(user), users);
+    }
+
+    @Test
+    void loginChecksThePassword() {
+        webTestClient.post().uri("/user/{id}/login", user.id())
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(Map.of("password", "secret123"))
+                .exchange()
+                .expectStatus().isNoContent();
+        webTestClient.post().uri("/user/{id}/login", user.id())
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(Map.of("password", "wrong"))
+                .exchange()
+                .expectStatus().isUnauthorized();
+    }
+
+    private WebTestClient admin() {
+        return webTestClient.mutate().defaultHeaders(headers -> headers.setBasicAuth(String.valueOf(ADMIN_ID), "secret123")).build();
+    }
+
+    private WebTestClient authenticated() {
+        return webTestClient.mutate().defaultHeaders(headers -> headers.setBasicAuth(String.valueOf(user.id()), "secret123")).build();
+    }
+}
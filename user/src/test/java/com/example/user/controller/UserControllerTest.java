@@ -1,8 +1,16 @@
 package com.example.user.controller;
 
+import com.example.user.dto.BatchItemResult;
+import com.example.user.dto.BatchResult;
+import com.example.user.dto.NameMatch;
+import com.example.user.dto.UserPage;
+import com.example.user.dto.UserView;
 import com.example.user.entity.User;
+import com.example.user.exceptions.UserIdNotFoundException;
 import com.example.user.exceptions.UserInvalidAttributesException;
+import com.example.user.exceptions.UserVersionConflictException;
 import com.example.user.repository.UserRepository;
+import com.example.user.service.UserBatchService;
 import com.example.user.service.UserService;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.Test;
@@ -10,17 +18,32 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
 import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
+import org.springframework.test.context.aot.DisabledInAotMode;
 
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
+@DisabledInAotMode
 @SpringBootTest
 @AutoConfigureMockMvc(addFilters = false)
 class UserControllerTest {
@@ -30,6 +53,9 @@ class UserControllerTest {
     @MockBean
     private UserService userService;
 
+    @MockBean
+    private UserBatchService userBatchService;
+
     @Autowired
     private ObjectMapper objectMapper;
 
@@ -75,6 +101,73 @@ class UserControllerTest {
                         .content(objectMapper.writeValueAsString(user)))
                 .andExpect(status().isUnprocessableEntity());
     }
+    @Test
+    void createUsersBatchReturnsItemResults() throws Exception {
+        List<User> users = List.of(User.builder().name("name").password("pass").build());
+        BatchResult result = BatchResult.of(List.of(BatchItemResult.success(0, 1L, BatchItemResult.Status.CREATED)), 1_000_000);
+        when(userBatchService.createUsers(users)).thenReturn(result);
+
+        mockMvc.perform(post("/user/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(users)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.succeeded").value(1))
+                .andExpect(jsonPath("$.items[0].status").value("CREATED"));
+    }
+
+    @Test
+    @WithMockUser
+    void createUserRetriedWithIdempotencyKeyCreatesOnce() throws Exception {
+        User user = User.builder().name("retried").password("pass").build();
+        when(userService.createUser(user)).thenReturn(User.builder().id(5L).name("retried").version(0L).build());
+
+        for (int attempt = 0; attempt < 2; attempt++) {
+            mockMvc.perform(post("/user")
+                            .header("Idempotency-Key", "create-5")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(objectMapper.writeValueAsString(user)))
+                    .andExpect(status().isCreated())
+                    .andExpect(jsonPath("$.id").value(5))
+                    .andExpect(jsonPath("$.name").value("retried"))
+                    .andExpect(jsonPath("$.version").value(0));
+        }
+
+        verify(userService, times(1)).createUser(any());
+    }
+
+    @Test
+    @WithMockUser
+    void idempotencyKeyReusedForAnotherBodyIsRejected() throws Exception {
+        List<User> users = List.of(User.builder().name("first").password("pass").build());
+        when(userBatchService.createUsers(users)).thenReturn(BatchResult.of(List.of(), 1_000_000));
+        mockMvc.perform(post("/user/batch")
+                        .header("Idempotency-Key", "batch-1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(users)))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(post("/user/batch")
+                        .header("Idempotency-Key", "batch-1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(List.of(User.builder().name("second").password("pass").build()))))
+                .andExpect(status().isUnprocessableEntity());
+
+        verify(userBatchService, times(1)).createUsers(any());
+    }
+
+    @Test
+    void deleteUsersBatchReturnsItemResults() throws Exception {
+        BatchResult result = BatchResult.of(List.of(BatchItemResult.failure(0, 9L, BatchItemResult.Status.NOT_FOUND, "User not found")), 1_000_000);
+        when(userBatchService.deleteUsers(List.of(9L))).thenReturn(result);
+
+        mockMvc.perform(delete("/user/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[9]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.failed").value(1))
+                .andExpect(jsonPath("$.items[0].status").value("NOT_FOUND"));
+    }
+
     @Test
     void getAllUsersReturnListOfUsers() throws Exception {
         mockMvc.perform(get("/user")
@@ -100,13 +193,121 @@ class UserControllerTest {
                 .andExpect(status().isNotFound());
     }
 
+    @Test
+    void getUsersPageReturnsNextCursor() throws Exception {
+        when(userService.findUsersPage(5L, 1)).thenReturn(new UserPage(List.of(new UserView(7L, "name", 0L)), 7L));
+
+        mockMvc.perform(get("/user/page")
+                        .param("after", "5")
+                        .param("size", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content[0].id").value(7))
+                .andExpect(jsonPath("$.nextCursor").value(7));
+    }
+
+    @Test
+    void streamAllUsersWritesJsonArray() throws Exception {
+        doAnswer(invocation -> {
+            Consumer<UserView> consumer = invocation.getArgument(0);
+            consumer.accept(new UserView(1L, "first", 0L));
+            consumer.accept(new UserView(2L, "second", 0L));
+            return null;
+        }).when(userService).streamAllUsers(any());
+
+        MvcResult result = mockMvc.perform(get("/user/stream"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().json("[{\"id\":1,\"name\":\"first\"},{\"id\":2,\"name\":\"second\"}]"));
+    }
+
+    @Test
+    void exportUsersAsNdjson() throws Exception {
+        doAnswer(invocation -> {
+            Consumer<UserView> consumer = invocation.getArgument(0);
+            consumer.accept(new UserView(1L, "first", 0L));
+            consumer.accept(new UserView(2L, "second", 3L));
+            return null;
+        }).when(userService).streamAllUsers(any());
+
+        MvcResult result = mockMvc.perform(get("/user/export").accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().string("{\"id\":1,\"name\":\"first\",\"version\":0}\n"
+                        + "{\"id\":2,\"name\":\"second\",\"version\":3}\n"));
+    }
+
+    @Test
+    void exportUsersAsCsv() throws Exception {
+        doAnswer(invocation -> {
+            Consumer<UserView> consumer = invocation.getArgument(0);
+            consumer.accept(new UserView(1L, "Doe, Jane", 0L));
+            return null;
+        }).when(userService).streamAllUsers(any());
+
+        MvcResult result = mockMvc.perform(get("/user/export").accept(UserController.TEXT_CSV_VALUE))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().string("id,name,version\n1,\"Doe, Jane\",0\n"));
+    }
+
+    @Test
+    void searchUsersByPrefix() throws Exception {
+        when(userService.searchByName("man", NameMatch.PREFIX, true, 10))
+                .thenReturn(List.of(new UserView(1L, "Manel", 0L)));
+
+        mockMvc.perform(get("/user/search")
+                        .param("name", "man")
+                        .param("match", "PREFIX")
+                        .param("ignoreCase", "true")
+                        .param("limit", "10"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].name").value("Manel"));
+    }
+
     @Test
      void findUserByIdReturnWhenIdExists() throws Exception {
-        when(userService.findUserById(1L)).thenReturn(Optional.of(new User()));
+        when(userService.findUserById(1L)).thenReturn(Optional.of(new UserView(1L, "name", 0L)));
 
         mockMvc.perform(get("/user/{id}", 1L)
                         .contentType(MediaType.APPLICATION_JSON))
-                .andExpect(status().isOk());
+                .andExpect(status().isOk())
+                .andExpect(content().json("{\"id\":1,\"name\":\"name\",\"version\":0}", true));
+    }
+
+    @Test
+    void findUserByIdReturnsOnlyRequestedFields() throws Exception {
+        when(userService.findUserById(1L)).thenReturn(Optional.of(new UserView(1L, "name", 0L)));
+
+        mockMvc.perform(get("/user/{id}", 1L)
+                        .param("fields", "id"))
+                .andExpect(status().isOk())
+                .andExpect(content().json("{\"id\":1}", true));
+    }
+
+    @Test
+    void streamAllUsersReturnsOnlyRequestedFields() throws Exception {
+        doAnswer(invocation -> {
+            Consumer<UserView> consumer = invocation.getArgument(0);
+            consumer.accept(new UserView(1L, "first", 0L));
+            return null;
+        }).when(userService).streamAllUsers(any());
+
+        MvcResult result = mockMvc.perform(get("/user/stream").param("fields", "name"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().json("[{\"name\":\"first\"}]", true));
     }
 
     @Test
@@ -121,26 +322,48 @@ class UserControllerTest {
     }
 
     @Test
-     void deleteUserByIdReturnSucess() throws Exception {
-        User userToDelete = User.builder()
-                .name("Name")
-                .password("Password")
-                .build();
+    void loginWithValidPasswordReturnsNoContent() throws Exception {
+        when(userService.authenticate(1L, "secret")).thenReturn(true);
 
-        when(userService.findUserById(1L)).thenReturn(Optional.of(userToDelete));
+        mockMvc.perform(post("/user/{id}/login", 1L)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"password\":\"secret\"}"))
+                .andExpect(status().isNoContent());
+    }
 
-        // Act & Assert
+    @Test
+    void loginWithWrongPasswordReturnsUnauthorized() throws Exception {
+        when(userService.authenticate(1L, "wrong")).thenReturn(false);
+
+        mockMvc.perform(post("/user/{id}/login", 1L)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"password\":\"wrong\"}"))
+                .andExpect(status().isUnauthorized());
+    }
+
+    @Test
+     void deleteUserByIdReturnSucess() throws Exception {
         mockMvc.perform(delete("/user/{id}", 1L))
                 .andExpect(status().isOk());
+
+        verify(userService, times(1)).deleteUserById(1L);
+        verify(userService, never()).findUserById(anyLong());
     }
     @Test
     void deleteUserByIdUserNotFoundReturnNotFound() throws Exception {
-        when(userService.findUserById(1L)).thenReturn(Optional.empty());
+        doThrow(new UserIdNotFoundException("User Not Found")).when(userService).deleteUserById(1L);
 
         mockMvc.perform(delete("/user/{id}", 1L))
                 .andExpect(status().isNotFound());
     }
     @Test
-     void updateUserById() {
+    void updateUserByIdWithOutdatedVersionReturnsConflict() throws Exception {
+        User user = User.builder().id(1L).name("name").password("pass").version(3L).build();
+        when(userService.updateUserById(user, 1L)).thenThrow(new UserVersionConflictException("User was modified by another request"));
+
+        mockMvc.perform(put("/user/{id}", 1L)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(user)))
+                .andExpect(status().isConflict());
     }
 }
\ No newline at end of file
@@ -0,0 +1,155 @@
+package com.example.user.datasource;
+
+import com.example.user.config.CacheConfig;
+import com.example.user.entity.User;
+import com.example.user.exceptions.UserIdNotFoundException;
+import com.example.user.service.UserService;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.http.HttpHeaders;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import javax.sql.DataSource;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Two in-memory H2 databases stand in for the primary and a replica. They do not
+ * replicate, which makes it visible which one a query was sent to.
+ */
+@SpringBootTest(properties = {
+        "user.datasource.replicas[0].url=" + ReplicaRoutingTest.REPLICA_URL,
+        "user.datasource.health-check-interval=1h",
+        "user.datasource.read-your-writes-window=1h"
+})
+class ReplicaRoutingTest {
+    static final String REPLICA_URL = "jdbc:h2:mem:replica;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+
+    @Autowired
+    UserService userService;
+    @Autowired
+    ReplicaRoutingDataSource routingDataSource;
+    @Autowired
+    @Qualifier("primaryDataSource")
+    DataSource primaryDataSource;
+    @Autowired
+    CacheManager cacheManager;
+
+    JdbcTemplate replica;
+
+    @BeforeEach
+    void setUp() {
+        DataSource replicaDataSource = new DriverManagerDataSource(REPLICA_URL, "sa", "");
+        Flyway.configure()
+                .dataSource(replicaDataSource)
+                .locations("classpath:db/migration/common", "classpath:db/migration/h2")
+                .load()
+                .migrate();
+        replica = new JdbcTemplate(replicaDataSource);
+        replica.update("delete from user_table");
+        cacheManager.getCache(CacheConfig.USERS_CACHE).clear();
+        routingDataSource.checkReplicas();
+    }
+
+    @AfterEach
+    void clearRequest() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    void readOnlyServiceMethodsReadFromReplica() {
+        replica.update("insert into user_table (id, name, password, version) values (900001, 'replica-only', 'x', 0)");
+
+        assertEquals(1, userService.findByName("replica-only").size());
+        assertThrows(UserIdNotFoundException.class, () -> userService.findUserById(900001L),
+                "the shared cache is only filled from the primary");
+    }
+
+    @Test
+    void writesGoToPrimary() {
+        User created = userService.createUser(User.builder().name("written").password("pass").build());
+
+        assertEquals(1, new JdbcTemplate(primaryDataSource)
+                .queryForObject("select count(*) from user_table where id = ?", Integer.class, created.getId()));
+        assertEquals(0, replica.queryForObject("select count(*) from user_table where id = ?", Integer.class, created.getId()));
+    }
+
+    @Test
+    void clientReadsItsOwnWritesFromPrimary() {
+        actAsClient("writer");
+        userService.createUser(User.builder().name("ryw").password("pass").build());
+
+        assertEquals(1, userService.findByName("ryw").size());
+
+        actAsClient("someone-else");
+        assertThrows(UserIdNotFoundException.class, () -> userService.findByName("ryw"));
+    }
+
+    @Test
+    void laggingReplicaDoesNotRefillTheCacheAfterAnUpdate() {
+        actAsClient("writer");
+        User created = userService.createUser(User.builder().name("before").password("pass").build());
+        replica.update("insert into user_table (id, name, password, version) values (?, 'before', 'x', 0)", created.getId());
+        userService.updateUserById(User.builder().name("after").password("pass").build(), created.getId());
+
+        actAsClient("someone-else");
+        assertEquals("after", userService.findUserById(created.getId()).orElseThrow().name());
+
+        actAsClient("writer");
+        assertEquals("after", userService.findUserById(created.getId()).orElseThrow().name());
+    }
+
+    @Test
+    void loginAfterAPasswordChangeIsCheckedOnThePrimary() {
+        actAsClient("admin");
+        User created = userService.createUser(User.builder().name("login").password("old-pass").build());
+        replica.update("insert into user_table (id, name, password, version) values (?, 'login', ?, 0)",
+                created.getId(), created.getPassword());
+
+        MockHttpServletRequest update = basicAuth(String.valueOf(created.getId()), "old-pass");
+        update.setUserPrincipal(() -> String.valueOf(created.getId()));
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(update));
+        userService.updateUserById(User.builder().name("login").password("new-pass").build(), created.getId());
+
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(basicAuth("00" + created.getId(), "new-pass")));
+        assertTrue(userService.authenticate(created.getId(), "new-pass"));
+    }
+
+    @Test
+    @DirtiesContext
+    void unhealthyReplicaFallsBackToPrimary() {
+        userService.createUser(User.builder().name("fallback").password("pass").build());
+        replica.execute("shutdown");
+
+        routingDataSource.checkReplicas();
+
+        assertFalse(routingDataSource.isHealthy("replica-0"));
+        assertEquals(1, userService.findByName("fallback").size());
+    }
+
+    private static MockHttpServletRequest basicAuth(String username, String password) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader(HttpHeaders.AUTHORIZATION, "Basic " + Base64.getEncoder()
+                .encodeToString((username + ":" + password).getBytes(StandardCharsets.UTF_8)));
+        return request;
+    }
+
+    private static void actAsClient(String clientId) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader(ReadYourWritesTracker.CLIENT_ID_HEADER, clientId);
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.user.filter;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConcurrencyLimitFilterTest {
+    private final ConcurrencyLimitFilter filter = new ConcurrencyLimitFilter(1, Duration.ZERO);
+
+    @Test
+    void asyncRequestHoldsItsPermitUntilItCompletes() throws Exception {
+        MockHttpServletRequest streaming = request("/user/export");
+        filter.doFilter(streaming, new MockHttpServletResponse(), new MockFilterChain() {
+            @Override
+            public void doFilter(ServletRequest request, ServletResponse response) {
+                request.startAsync();
+            }
+        });
+        AsyncContext asyncContext = streaming.getAsyncContext();
+
+        assertEquals(503, perform(request("/user/1")).getStatus());
+
+        asyncContext.complete();
+        assertEquals(200, perform(request("/user/1")).getStatus());
+        assertEquals(200, perform(request("/user/1")).getStatus());
+    }
+
+    @Test
+    void changeFeedIsNotLimited() throws Exception {
+        MockHttpServletRequest polling = request("/user/changes");
+        filter.doFilter(polling, new MockHttpServletResponse(), new MockFilterChain() {
+            @Override
+            public void doFilter(ServletRequest request, ServletResponse response) {
+                request.startAsync();
+            }
+        });
+
+        assertEquals(200, perform(request("/user/1")).getStatus());
+    }
+
+    private MockHttpServletResponse perform(MockHttpServletRequest request) throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, new MockFilterChain());
+        return response;
+    }
+
+    private static MockHttpServletRequest request(String path) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", path);
+        request.setAsyncSupported(true);
+        return request;
+    }
+}
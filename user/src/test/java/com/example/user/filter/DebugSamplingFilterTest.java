@@ -0,0 +1,80 @@
+package com.example.user.filter;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.MDC;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DebugSamplingFilterTest {
+    private final LoggerContext context = new LoggerContext();
+    private final ListAppender<ILoggingEvent> appender = new ListAppender<>();
+    private Logger appLogger;
+    private Logger otherLogger;
+
+    @BeforeEach
+    void setUp() {
+        SampledDebugTurboFilter turboFilter = new SampledDebugTurboFilter();
+        turboFilter.start();
+        context.addTurboFilter(turboFilter);
+        appender.setContext(context);
+        appender.start();
+        Logger root = context.getLogger(Logger.ROOT_LOGGER_NAME);
+        root.setLevel(Level.INFO);
+        root.addAppender(appender);
+        appLogger = context.getLogger("com.example.user.service.UserService");
+        otherLogger = context.getLogger("org.hibernate.SQL");
+    }
+
+    @Test
+    void sampledRequestsLogTheirDebugOutput() throws Exception {
+        List<Boolean> debugEnabled = new ArrayList<>();
+        MockFilterChain chain = new MockFilterChain() {
+            @Override
+            public void doFilter(ServletRequest request, ServletResponse response) {
+                debugEnabled.add(appLogger.isDebugEnabled());
+                appLogger.debug("Received request to find users with id: {}", 1);
+                otherLogger.debug("select ...");
+            }
+        };
+        new DebugSamplingFilter(1).doFilter(new MockHttpServletRequest(), new MockHttpServletResponse(), chain);
+
+        assertEquals(List.of(true), debugEnabled);
+        assertEquals(List.of("Received request to find users with id: 1"),
+                appender.list.stream().map(ILoggingEvent::getFormattedMessage).toList());
+        assertNull(MDC.get(SampledDebugTurboFilter.MDC_KEY));
+    }
+
+    @Test
+    void otherRequestsKeepTheConfiguredLevel() throws Exception {
+        MockFilterChain chain = new MockFilterChain() {
+            @Override
+            public void doFilter(ServletRequest request, ServletResponse response) {
+                appLogger.debug("Received request to find users with id: {}", 1);
+                appLogger.info("Login failed for user {}", 1);
+            }
+        };
+        new DebugSamplingFilter(0).doFilter(new MockHttpServletRequest(), new MockHttpServletResponse(), chain);
+
+        assertEquals(List.of("Login failed for user 1"),
+                appender.list.stream().map(ILoggingEvent::getFormattedMessage).toList());
+    }
+
+    @Test
+    void sampleRateMustBeAFraction() {
+        assertThrows(IllegalArgumentException.class, () -> new DebugSamplingFilter(1.5));
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.user.filter;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.matchesPattern;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@AutoConfigureObservability
+@WithMockUser(roles = {"USER", "ADMIN"})
+class ObservabilityTest {
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Test
+    void responsesCarryTraceId() throws Exception {
+        mockMvc.perform(get("/user/page"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(TraceIdResponseFilter.TRACE_ID_HEADER, matchesPattern("[0-9a-f]{16,32}")));
+    }
+
+    @Test
+    void prometheusEndpointExposesLayerTimers() throws Exception {
+        mockMvc.perform(get("/user/page")).andExpect(status().isOk());
+
+        mockMvc.perform(get("/actuator/prometheus"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("http_server_requests_seconds_bucket")))
+                .andExpect(content().string(containsString("user_service_seconds_bucket")))
+                .andExpect(content().string(containsString("spring_data_repository_invocations_seconds_bucket")))
+                .andExpect(content().string(containsString("jdbc_query_seconds_bucket")))
+                .andExpect(content().string(containsString("hikaricp_connections_active")))
+                .andExpect(content().string(containsString("hikaricp_connections_acquire_seconds_bucket")))
+                .andExpect(content().string(containsString("jdbc_connections_usage{name=\"dataSource\"")))
+                .andExpect(content().string(containsString("hibernate_statements_total")));
+    }
+}
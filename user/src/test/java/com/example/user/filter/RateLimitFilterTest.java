@@ -0,0 +1,154 @@
+package com.example.user.filter;
+
+import com.example.user.config.RateLimitProperties;
+import com.example.user.ratelimit.AdaptiveConcurrencyLimit;
+import com.example.user.ratelimit.TokenBucket;
+import com.example.user.security.UserAccountService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.RequestPostProcessor;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {
+        "user.rate-limit.read.client-rate=0.01",
+        "user.rate-limit.read.client-burst=2",
+        "user.rate-limit.write.client-rate=0.01",
+        "user.rate-limit.write.client-burst=2"
+})
+@AutoConfigureMockMvc
+class RateLimitFilterTest {
+    @Autowired
+    private MockMvc mockMvc;
+
+    private static MockHttpServletRequestBuilder from(String address, MockHttpServletRequestBuilder request) {
+        return request.with(r -> {
+            r.setRemoteAddr(address);
+            return r;
+        });
+    }
+
+    private static RequestPostProcessor admin(String name) {
+        return user(name).roles(UserAccountService.ROLE_USER, UserAccountService.ROLE_ADMIN);
+    }
+
+    @Test
+    void clientOverItsRateGetsTooManyRequests() throws Exception {
+        mockMvc.perform(get("/user/page").with(admin("alice"))).andExpect(status().isOk());
+        mockMvc.perform(get("/user/page").with(admin("alice"))).andExpect(status().isOk());
+
+        mockMvc.perform(get("/user/page").with(admin("alice")))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().exists(HttpHeaders.RETRY_AFTER));
+        mockMvc.perform(get("/user/page").with(admin("bob"))).andExpect(status().isOk());
+    }
+
+    @Test
+    void clientsBehindOneAddressHaveTheirOwnBuckets() throws Exception {
+        for (String name : List.of("dave", "erin", "frank")) {
+            mockMvc.perform(from("10.0.0.1", get("/user/page")).with(admin(name))).andExpect(status().isOk());
+            mockMvc.perform(from("10.0.0.1", get("/user/page")).with(admin(name))).andExpect(status().isOk());
+        }
+    }
+
+    @Test
+    void readsAndWritesHaveSeparateBudgets() throws Exception {
+        mockMvc.perform(get("/user/page").with(admin("carol"))).andExpect(status().isOk());
+        mockMvc.perform(get("/user/page").with(admin("carol"))).andExpect(status().isOk());
+        mockMvc.perform(get("/user/page").with(admin("carol"))).andExpect(status().isTooManyRequests());
+
+        mockMvc.perform(post("/user").with(admin("carol")).with(csrf())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"limited\",\"password\":\"password123\"}"))
+                .andExpect(status().isCreated());
+    }
+
+    @Test
+    void anonymousRequestsAreOnlyLimitedByAddressWhenItIsTheClients() throws Exception {
+        RateLimitFilter behindProxy = filter(false);
+        RateLimitFilter forwarded = filter(true);
+        for (int i = 0; i < 3; i++) {
+            assertThat(perform(behindProxy, "10.0.0.5").getStatus()).isEqualTo(200);
+        }
+
+        assertThat(perform(forwarded, "10.0.0.5").getStatus()).isEqualTo(200);
+        assertThat(perform(forwarded, "10.0.0.5").getStatus()).isEqualTo(200);
+        assertThat(perform(forwarded, "10.0.0.5").getStatus()).isEqualTo(429);
+        assertThat(perform(forwarded, "10.0.0.6").getStatus()).isEqualTo(200);
+    }
+
+    @Test
+    void onlyUserEndpointsAreLimited() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            mockMvc.perform(from("10.0.0.4", get("/actuator/health"))).andExpect(status().isOk());
+        }
+    }
+
+    private static RateLimitFilter filter(boolean addressIsClient) {
+        RateLimitProperties.Budget budget = new RateLimitProperties.Budget(1000, 200, 0.01, 2, 4, 200, Duration.ofMillis(250));
+        return new RateLimitFilter(new RateLimitProperties(true, Duration.ofMinutes(10), 1000, budget, budget),
+                new SimpleMeterRegistry(), addressIsClient);
+    }
+
+    private static MockHttpServletResponse perform(RateLimitFilter filter, String address) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/user");
+        request.setRemoteAddr(address);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, (req, res) ->
+                filter.clientLimitFilter().doFilter(req, res, new MockFilterChain()));
+        return response;
+    }
+
+    @Test
+    void tokenBucketAllowsBurstThenRefills() {
+        long now = 0;
+        TokenBucket bucket = new TokenBucket(10, 3, now);
+
+        assertThat(bucket.tryAcquire(now)).isZero();
+        assertThat(bucket.tryAcquire(now)).isZero();
+        assertThat(bucket.tryAcquire(now)).isZero();
+        assertThat(bucket.tryAcquire(now)).isEqualTo(TimeUnit.MILLISECONDS.toNanos(100));
+
+        assertThat(bucket.tryAcquire(now + TimeUnit.MILLISECONDS.toNanos(100))).isZero();
+    }
+
+    @Test
+    void concurrencyLimitBacksOffWhenLatencyRises() {
+        long target = TimeUnit.MILLISECONDS.toNanos(100);
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(1, 10, target, 0);
+        for (int i = 0; i < 10; i++) {
+            assertThat(limit.tryAcquire()).isTrue();
+        }
+        assertThat(limit.tryAcquire()).isFalse();
+
+        limit.release(2 * target, true, target);
+        assertThat(limit.getLimit()).isEqualTo(9);
+        limit.release(2 * target, true, target);
+        assertThat(limit.getLimit()).as("at most one decrease per target latency").isEqualTo(9);
+        assertThat(limit.tryAcquire()).isTrue();
+        assertThat(limit.tryAcquire()).isFalse();
+
+        limit.release(target / 2, true, 2 * target);
+        assertThat(limit.getLimit()).isEqualTo(10);
+    }
+}
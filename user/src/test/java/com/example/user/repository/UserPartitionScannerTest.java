@@ -0,0 +1,95 @@
+package com.example.user.repository;
+
+import com.example.user.dto.NameMatch;
+import com.example.user.dto.UserView;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * H2 has no partitioning, so three plain tables stand in for the partitions of
+ * {@code user_table}, with the users spread over them by id like a hash would.
+ */
+class UserPartitionScannerTest {
+    private static final List<String> PARTITIONS = List.of("scan_p00", "scan_p01", "scan_p02");
+    private static final int USERS = 3000;
+
+    private JdbcTemplate jdbcTemplate;
+    private UserPartitionScanner scanner;
+
+    @BeforeEach
+    void setUp() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:partitions;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1", "sa", "");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        for (int i = 0; i < PARTITIONS.size(); i++) {
+            String partition = PARTITIONS.get(i);
+            jdbcTemplate.execute("drop table if exists " + partition);
+            jdbcTemplate.execute("create table " + partition + " (id bigint primary key, name varchar(255), version bigint not null)");
+            jdbcTemplate.update("insert into " + partition + " (id, name, version) select \"X\", 'user' || \"X\", 0"
+                    + " from system_range(1, ?) where mod(\"X\", ?) = ?", USERS, PARTITIONS.size(), i);
+        }
+        jdbcTemplate.update("insert into scan_p00 (id, name, version) values (?, ?, 0)", USERS + 3, "User_1%");
+        scanner = new UserPartitionScanner(jdbcTemplate, new DataSourceTransactionManager(dataSource), 2, 2, PARTITIONS);
+    }
+
+    @AfterEach
+    void tearDown() {
+        scanner.destroy();
+    }
+
+    @Test
+    void searchMergesPartitionsInIdOrderUpToLimit() {
+        List<UserView> users = scanner.findViewsByName("user1", NameMatch.PREFIX, false, 5);
+
+        assertEquals(List.of(1L, 10L, 11L, 12L, 13L), users.stream().map(UserView::id).toList());
+    }
+
+    @Test
+    void searchKeepsEscapedWildcardsLiteral() {
+        List<UserView> users = scanner.findViewsByName("user\\_1\\%", NameMatch.PREFIX, true, 10);
+
+        assertEquals(List.of("User_1%"), users.stream().map(UserView::name).toList());
+    }
+
+    @Test
+    void exactSearchFindsOnePartitionsRow() {
+        List<UserView> users = scanner.findViewsByName("user2999", NameMatch.EXACT, false, 10);
+
+        assertEquals(List.of(2999L), users.stream().map(UserView::id).toList());
+    }
+
+    @Test
+    void exportHandsOverEveryUserOnce() {
+        List<UserView> users = new ArrayList<>();
+
+        scanner.forEachView(users::add);
+
+        assertEquals(USERS + 1, users.size());
+        List<Long> ids = users.stream().map(UserView::id).sorted(Comparator.naturalOrder()).toList();
+        assertEquals(LongStream.concat(LongStream.rangeClosed(1, USERS), LongStream.of(USERS + 3)).boxed().toList(), ids);
+    }
+
+    @Test
+    void exportStopsWhenConsumerFails() {
+        AtomicInteger consumed = new AtomicInteger();
+
+        assertThrows(IllegalStateException.class, () -> scanner.forEachView(user -> {
+            if (consumed.incrementAndGet() == 10) {
+                throw new IllegalStateException("client went away");
+            }
+        }));
+        assertEquals(10, consumed.get());
+    }
+}
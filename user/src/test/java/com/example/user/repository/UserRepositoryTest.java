@@ -0,0 +1,95 @@
+package com.example.user.repository;
+
+import com.example.user.dto.UserView;
+import com.example.user.entity.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.Limit;
+
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class UserRepositoryTest {
+    @Autowired
+    UserRepository userRepository;
+
+    @BeforeEach
+    void setUp() {
+        userRepository.saveAll(List.of(
+                User.builder().name("Manel").password("pass").build(),
+                User.builder().name("manel").password("pass").build(),
+                User.builder().name("Manuela").password("pass").build(),
+                User.builder().name("Man_el").password("pass").build(),
+                User.builder().name("Joana").password("pass").build()));
+    }
+
+    @Test
+    void testExactMatchIsCaseSensitive() {
+        List<UserView> users = userRepository.findViewsByName("Manel", Limit.of(10));
+
+        assertEquals(List.of("Manel"), users.stream().map(UserView::name).toList());
+    }
+
+    @Test
+    void testExactMatchIgnoringCase() {
+        List<UserView> users = userRepository.findViewsByNameIgnoreCase("MANEL", Limit.of(10));
+
+        assertEquals(List.of("Manel", "manel"), users.stream().map(UserView::name).toList());
+    }
+
+    @Test
+    void testPrefixMatchRespectsLimit() {
+        List<UserView> users = userRepository.findViewsByNamePrefix("Man", Limit.of(2));
+
+        assertEquals(List.of("Manel", "Manuela"), users.stream().map(UserView::name).toList());
+    }
+
+    @Test
+    void testPrefixMatchIgnoringCaseTreatsWildcardsLiterally() {
+        List<UserView> users = userRepository.findViewsByNamePrefixIgnoreCase("man\\_", Limit.of(10));
+
+        assertEquals(List.of("Man_el"), users.stream().map(UserView::name).toList());
+    }
+
+    @Test
+    void testPrefixMatchTreatsWildcardsLiterally() {
+        List<UserView> users = userRepository.findViewsByNamePrefix("Man\\_", Limit.of(10));
+
+        assertEquals(List.of("Man_el"), users.stream().map(UserView::name).toList());
+    }
+
+    @Test
+    void testViewsAfterCursorAreOrderedById() {
+        List<UserView> all = userRepository.findAllViews().stream()
+                .sorted(Comparator.comparing(UserView::id))
+                .toList();
+
+        List<UserView> page = userRepository.findViewsAfter(all.get(1).id(), Limit.of(2));
+
+        assertEquals(List.of(all.get(2), all.get(3)), page);
+    }
+
+    @Test
+    void testConditionalUpdateOnlyMatchesCurrentVersion() {
+        User user = userRepository.findByName("Joana").get(0);
+
+        assertEquals(0, userRepository.updateUserIfVersion(user.getId(), user.getVersion() + 1, "Joana", "new"));
+        assertEquals(1, userRepository.updateUserIfVersion(user.getId(), user.getVersion(), "Joana", "new"));
+        assertEquals(user.getVersion() + 1, userRepository.findViewById(user.getId()).orElseThrow().version());
+    }
+
+    @Test
+    void testRemoveByIdReportsAffectedRows() {
+        long id = userRepository.findByName("Joana").get(0).getId();
+
+        assertEquals(1, userRepository.removeById(id));
+        assertEquals(0, userRepository.removeById(id));
+    }
+}
@@ -0,0 +1,155 @@
+package com.example.user.security;
+
+import com.example.user.entity.User;
+import com.example.user.repository.UserRepository;
+import com.example.user.service.PasswordHasher;
+import com.example.user.shard.UserShards;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.http.MediaType;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.context.aot.DisabledInAotMode;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.httpBasic;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@DisabledInAotMode
+@SpringBootTest
+@AutoConfigureMockMvc
+class AuthenticationTest {
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private PasswordHasher passwordHasher;
+    @Autowired
+    private UserShards userShards;
+    @SpyBean
+    private UserAccountService userAccountService;
+
+    private String id;
+
+    @BeforeEach
+    void setUp() {
+        User user = userRepository.save(User.builder().name("auth").password(passwordHasher.encode("secret123")).build());
+        id = String.valueOf(user.getId());
+    }
+
+    @Test
+    void requestsNeedValidCredentials() throws Exception {
+        mockMvc.perform(get("/user/{id}", id)).andExpect(status().isUnauthorized());
+        mockMvc.perform(get("/user/{id}", id).with(httpBasic(id, "wrong"))).andExpect(status().isUnauthorized());
+        mockMvc.perform(get("/user/{id}", id).with(httpBasic(id, "secret123"))).andExpect(status().isOk());
+    }
+
+    @Test
+    void signUpIsOpen() throws Exception {
+        mockMvc.perform(post("/user")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"new\",\"password\":\"password123\"}"))
+                .andExpect(status().isCreated());
+    }
+
+    @Test
+    void repeatRequestsSkipTheUserLookup() throws Exception {
+        mockMvc.perform(get("/user/{id}", id).with(httpBasic(id, "secret123"))).andExpect(status().isOk());
+        mockMvc.perform(get("/user/{id}", id).with(httpBasic(id, "secret123"))).andExpect(status().isOk());
+        mockMvc.perform(get("/user/search").param("name", "auth").with(httpBasic(id, "secret123")))
+                .andExpect(status().isOk());
+
+        verify(userAccountService, times(1)).loadUserByUsername(id);
+    }
+
+    @Test
+    void changedPasswordInvalidatesCachedCredentials() throws Exception {
+        mockMvc.perform(get("/user/{id}", id).with(httpBasic(id, "secret123"))).andExpect(status().isOk());
+
+        mockMvc.perform(put("/user/{id}", id).with(httpBasic(id, "secret123"))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"id\":" + id + ",\"name\":\"auth\",\"password\":\"changed123\"}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.version").value(1));
+
+        mockMvc.perform(get("/user/{id}", id).with(httpBasic(id, "secret123"))).andExpect(status().isUnauthorized());
+        mockMvc.perform(get("/user/{id}", id).with(httpBasic(id, "changed123"))).andExpect(status().isOk());
+    }
+
+    @Test
+    void changedPasswordInvalidatesCredentialsCachedUnderAnotherSpelling() throws Exception {
+        String padded = "00" + id;
+        mockMvc.perform(get("/user/{id}", id).with(httpBasic(padded, "secret123"))).andExpect(status().isOk());
+
+        mockMvc.perform(put("/user/{id}", id).with(httpBasic(id, "secret123"))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"id\":" + id + ",\"name\":\"auth\",\"password\":\"changed123\"}"))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(get("/user/{id}", id).with(httpBasic(padded, "secret123"))).andExpect(status().isUnauthorized());
+        mockMvc.perform(get("/user/{id}", id).with(httpBasic(padded, "changed123"))).andExpect(status().isOk());
+    }
+
+    @Test
+    void usersCannotChangeOrDeleteOthers() throws Exception {
+        String other = String.valueOf(userRepository.save(User.builder().name("other").password(passwordHasher.encode("secret123")).build()).getId());
+
+        mockMvc.perform(put("/user/{id}", other).with(httpBasic(id, "secret123"))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"id\":" + other + ",\"name\":\"taken\",\"password\":\"secret123\"}"))
+                .andExpect(status().isForbidden());
+        mockMvc.perform(delete("/user/{id}", other).with(httpBasic(id, "secret123"))).andExpect(status().isForbidden());
+        mockMvc.perform(get("/user/{id}", other).with(httpBasic(other, "secret123"))).andExpect(status().isOk());
+
+        mockMvc.perform(delete("/user/{id}", other).with(user(id).roles(UserAccountService.ROLE_USER, UserAccountService.ROLE_ADMIN)))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void bulkAndActuatorEndpointsNeedTheAdminRole() throws Exception {
+        mockMvc.perform(delete("/user/batch").with(httpBasic(id, "secret123"))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[" + id + "]"))
+                .andExpect(status().isForbidden());
+        mockMvc.perform(post("/user/import").with(httpBasic(id, "secret123"))
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .content("{\"name\":\"imported\",\"password\":\"password123\"}\n"))
+                .andExpect(status().isForbidden());
+        for (String listing : List.of("/user", "/user/page", "/user/stream", "/user/export")) {
+            mockMvc.perform(get(listing).with(httpBasic(id, "secret123"))).andExpect(status().isForbidden());
+        }
+        mockMvc.perform(get("/actuator/metrics").with(httpBasic(id, "secret123"))).andExpect(status().isForbidden());
+        mockMvc.perform(get("/actuator/health")).andExpect(status().isOk());
+
+        mockMvc.perform(get("/actuator/metrics").with(user(id).roles(UserAccountService.ROLE_USER, UserAccountService.ROLE_ADMIN)))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void configuredAdminsGetTheAdminRole() {
+        UserAccountService accounts = new UserAccountService();
+        accounts.userRepository = userRepository;
+        accounts.userShards = userShards;
+        accounts.adminIds = Set.of(Long.parseLong(id));
+
+        assertTrue(accounts.loadUserByUsername(id).getAuthorities().contains(new SimpleGrantedAuthority("ROLE_ADMIN")));
+        assertEquals(Set.of(new SimpleGrantedAuthority("ROLE_USER")), Set.copyOf(userAccountService.loadUserByUsername(id).getAuthorities()));
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.user.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IdempotencyStoreTest {
+    private final AtomicInteger created = new AtomicInteger();
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    void anonymousClientsSharingAKeyBehindAProxyDoNotCollide() {
+        IdempotencyStore store = store("none");
+
+        assertEquals(1, signUp(store, "10.0.0.1", "first"));
+        assertEquals(2, signUp(store, "10.0.0.1", "second"));
+    }
+
+    @Test
+    void anonymousClientsAreToldApartByTheirForwardedAddress() {
+        IdempotencyStore store = store("native");
+
+        assertEquals(1, signUp(store, "10.0.0.1", "first"));
+        assertEquals(2, signUp(store, "10.0.0.2", "second"));
+        assertEquals(1, signUp(store, "10.0.0.1", "first"));
+    }
+
+    private int signUp(IdempotencyStore store, String address, String name) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/user");
+        request.setRemoteAddr(address);
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+        SecurityContextHolder.getContext().setAuthentication(new AnonymousAuthenticationToken("key", "anonymousUser",
+                AuthorityUtils.createAuthorityList("ROLE_ANONYMOUS")));
+        return store.execute("POST /user", "same-key", name, Integer.class, created::incrementAndGet);
+    }
+
+    private static IdempotencyStore store(String forwardHeadersStrategy) {
+        return new IdempotencyStore(new ObjectMapper(), Duration.ofMinutes(1), DataSize.ofMegabytes(1), forwardHeadersStrategy);
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.user.service;
+
+import com.example.user.config.PasswordConfig;
+import com.example.user.exceptions.PasswordHashingUnavailableException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PasswordHasherTest {
+    private final PasswordHasher passwordHasher = new PasswordHasher(encoder(PasswordConfig.BCRYPT, 5), 2, 10);
+
+    @AfterEach
+    void shutdown() {
+        passwordHasher.destroy();
+    }
+
+    @Test
+    void testEncodedPasswordMatches() {
+        String hash = passwordHasher.encode("secret");
+
+        assertTrue(hash.startsWith("{bcrypt}"));
+        assertTrue(passwordHasher.matches("secret", hash));
+        assertFalse(passwordHasher.matches("other", hash));
+        assertFalse(passwordHasher.needsUpgrade(hash));
+    }
+
+    @Test
+    void testLegacyPlainPasswordMatchesAndNeedsUpgrade() {
+        assertTrue(passwordHasher.matches("secret", "secret"));
+        assertTrue(passwordHasher.needsUpgrade("secret"));
+    }
+
+    @Test
+    void testLowerCostHashNeedsUpgrade() {
+        String weakerHash = encoder(PasswordConfig.BCRYPT, 4).encode("secret");
+
+        assertTrue(passwordHasher.matches("secret", weakerHash));
+        assertTrue(passwordHasher.needsUpgrade(weakerHash));
+    }
+
+    @Test
+    void testOtherAlgorithmNeedsUpgrade() {
+        String pbkdf2Hash = encoder(PasswordConfig.PBKDF2, 4).encode("secret");
+
+        assertTrue(passwordHasher.matches("secret", pbkdf2Hash));
+        assertTrue(passwordHasher.needsUpgrade(pbkdf2Hash));
+    }
+
+    @Test
+    void testPbkdf2HashesSurviveAnIterationChange() {
+        String oldHash = pbkdf2(1000, 1000).encode("secret");
+        assertTrue(oldHash.startsWith("{pbkdf2}1000$"));
+
+        PasswordEncoder raised = pbkdf2(2000, 1000);
+        assertTrue(raised.matches("secret", oldHash));
+        assertFalse(raised.matches("other", oldHash));
+        assertTrue(raised.upgradeEncoding(oldHash));
+
+        String newHash = raised.encode("secret");
+        assertTrue(raised.matches("secret", newHash));
+        assertFalse(raised.upgradeEncoding(newHash));
+        assertTrue(pbkdf2(1000, 1000).matches("secret", newHash));
+    }
+
+    @Test
+    void testPbkdf2HashWithoutIterationsUsesLegacyCount() {
+        String legacyHash = "{pbkdf2}" + pbkdf2(1000, 1000).encode("secret").substring("{pbkdf2}1000$".length());
+        PasswordEncoder current = pbkdf2(2000, 1000);
+
+        assertTrue(current.matches("secret", legacyHash));
+        assertTrue(current.upgradeEncoding(legacyHash));
+        assertFalse(pbkdf2(1000, 500).matches("secret", legacyHash));
+    }
+
+    @Test
+    void testFullQueueIsRejected() {
+        PasswordHasher saturated = new PasswordHasher(encoder(PasswordConfig.BCRYPT, 12), 1, 1);
+        try {
+            List<CompletableFuture<String>> hashes = IntStream.range(0, 5)
+                    .mapToObj(i -> saturated.encodeAsync("secret"))
+                    .toList();
+
+            assertTrue(hashes.stream().anyMatch(hash -> hash.isCompletedExceptionally()));
+            assertThrows(PasswordHashingUnavailableException.class, () -> saturated.encode("secret"));
+        } finally {
+            saturated.destroy();
+        }
+    }
+
+    private static PasswordEncoder pbkdf2(int iterations, int legacyIterations) {
+        return PasswordConfig.delegatingEncoder(PasswordConfig.PBKDF2, 4, iterations, legacyIterations, 1024, 1);
+    }
+
+    private static PasswordEncoder encoder(String id, int bcryptStrength) {
+        return PasswordConfig.delegatingEncoder(id, bcryptStrength, 1000, 1024, 1);
+    }
+}
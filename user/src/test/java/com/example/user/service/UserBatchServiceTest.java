@@ -0,0 +1,70 @@
+package com.example.user.service;
+
+import com.example.user.dto.BatchItemResult.Status;
+import com.example.user.dto.BatchResult;
+import com.example.user.entity.User;
+import com.example.user.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = "user.batch.chunk-size=100")
+class UserBatchServiceTest {
+    @Autowired
+    UserBatchService userBatchService;
+
+    @Autowired
+    UserRepository userRepository;
+
+    @AfterEach
+    void cleanUp() {
+        userRepository.deleteAllInBatch();
+    }
+
+    @Test
+    void testCreateUsersAcrossChunksReportsEveryItem() {
+        List<User> users = new ArrayList<>(IntStream.range(0, 250)
+                .mapToObj(i -> User.builder().name("user" + i).password("pass").build())
+                .toList());
+        users.add(User.builder().name("").password("pass").build());
+
+        BatchResult result = userBatchService.createUsers(users);
+
+        assertEquals(250, result.succeeded());
+        assertEquals(1, result.failed());
+        assertEquals(Status.INVALID, result.items().get(250).status());
+        assertEquals(250, result.items().stream().filter(item -> item.id() != null).map(item -> item.id()).distinct().count());
+        assertEquals(250, userRepository.count());
+    }
+
+    @Test
+    void testUpdateUsersReportsMissingIds() {
+        User saved = userRepository.save(User.builder().name("name").password("pass").build());
+
+        BatchResult result = userBatchService.updateUsers(List.of(
+                User.builder().id(saved.getId()).name("renamed").password("secret").build(),
+                User.builder().id(saved.getId() + 1000).name("ghost").password("secret").build()));
+
+        assertEquals(Status.UPDATED, result.items().get(0).status());
+        assertEquals(Status.NOT_FOUND, result.items().get(1).status());
+        assertEquals("renamed", userRepository.findById(saved.getId()).orElseThrow().getName());
+    }
+
+    @Test
+    void testDeleteUsersReportsMissingIds() {
+        User saved = userRepository.save(User.builder().name("name").password("pass").build());
+
+        BatchResult result = userBatchService.deleteUsers(List.of(saved.getId(), saved.getId() + 1000));
+
+        assertEquals(Status.DELETED, result.items().get(0).status());
+        assertEquals(Status.NOT_FOUND, result.items().get(1).status());
+        assertFalse(userRepository.existsById(saved.getId()));
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.user.service;
+
+import com.example.user.dto.UserChange;
+import com.example.user.entity.User;
+import com.example.user.entity.UserChangeEvent;
+import com.example.user.repository.UserChangeEventRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Limit;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest(properties = "user.changes.buffer-size=2")
+@AutoConfigureMockMvc(addFilters = false)
+class UserChangeStreamTest {
+    @Autowired
+    UserService userService;
+    @Autowired
+    UserBatchService userBatchService;
+    @Autowired
+    UserChangeRelay relay;
+    @Autowired
+    UserChangeStream changeStream;
+    @Autowired
+    UserChangeEventRepository changeEvents;
+    @Autowired
+    MockMvc mockMvc;
+
+    long since;
+
+    @BeforeEach
+    void publishEarlierChanges() {
+        relay.publishPending();
+        since = changeEvents.findLastPosition();
+    }
+
+    @Test
+    void mutationsArePublishedInOrder() {
+        User user = userService.createUser(User.builder().name("outbox").password("pass").build());
+        userService.updateUserById(User.builder().id(user.getId()).name("renamed").password("pass").build(), user.getId());
+        userService.deleteUserById(user.getId());
+
+        assertTrue(changeStream.changesSince(since, 10).isEmpty());
+        assertEquals(3, relay.publishPending());
+
+        List<UserChange> changes = changeStream.changesSince(since, 10);
+        assertEquals(List.of(UserChangeEvent.Type.CREATED, UserChangeEvent.Type.UPDATED, UserChangeEvent.Type.DELETED),
+                changes.stream().map(UserChange::type).toList());
+        assertEquals(List.of(since + 1, since + 2, since + 3), changes.stream().map(UserChange::position).toList());
+        assertEquals("renamed", changes.get(1).name());
+    }
+
+    @Test
+    void rolledBackMutationLeavesNoEvent() {
+        assertThrows(RuntimeException.class, () -> userService.deleteUserById(Long.MAX_VALUE));
+
+        assertEquals(0, relay.publishPending());
+    }
+
+    @Test
+    void batchWritesEventsPerRow() {
+        userBatchService.createUsers(List.of(
+                User.builder().name("batch-a").password("pass").build(),
+                User.builder().name("batch-b").password("pass").build()));
+
+        assertEquals(2, relay.publishPending());
+    }
+
+    @Test
+    void changesBeyondTheBufferAreReadFromTheOutbox() {
+        for (String name : List.of("first", "second", "third")) {
+            userService.createUser(User.builder().name(name).password("pass").build());
+        }
+        relay.publishPending();
+
+        List<UserChange> changes = changeStream.changesSince(since, 10);
+
+        assertEquals(List.of("first", "second", "third"), changes.stream().map(UserChange::name).toList());
+        assertEquals(changeEvents.findChangesSince(since, Limit.of(10)), changes);
+    }
+
+    @Test
+    void longPollReturnsOnceAChangeIsPublished() throws Exception {
+        MvcResult result = mockMvc.perform(get("/user/changes")
+                        .param("since", Long.toString(since))
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        userService.createUser(User.builder().name("polled").password("pass").build());
+        relay.publishPending();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.changes[0].name").value("polled"))
+                .andExpect(jsonPath("$.next").value(since + 1));
+    }
+
+    @Test
+    void pollWithoutAcceptHeaderAnswersJson() throws Exception {
+        userService.createUser(User.builder().name("plain").password("pass").build());
+        relay.publishPending();
+
+        MvcResult result = mockMvc.perform(get("/user/changes").param("since", Long.toString(since)))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.changes[0].name").value("plain"));
+    }
+
+    @Test
+    void eventStreamSendsChangesWithPositionAsId() throws Exception {
+        MvcResult result = mockMvc.perform(get("/user/changes")
+                        .param("since", Long.toString(since))
+                        .accept(MediaType.TEXT_EVENT_STREAM))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        userService.createUser(User.builder().name("streamed").password("pass").build());
+        relay.publishPending();
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!result.getResponse().getContentAsString().contains("streamed") && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertThat(result.getResponse().getContentAsString(), containsString("id:" + (since + 1)));
+        assertThat(result.getResponse().getContentAsString(), containsString("\"name\":\"streamed\""));
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.user.service;
+
+import com.example.user.dto.ImportResult;
+import com.example.user.entity.User;
+import com.example.user.repository.UserChangeEventRepository;
+import com.example.user.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.StringReader;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = "user.import.chunk-size=10")
+class UserImportServiceTest {
+    @Autowired
+    UserImportService userImportService;
+
+    @Autowired
+    UserRepository userRepository;
+
+    @Autowired
+    UserChangeEventRepository changeEvents;
+
+    @Autowired
+    PasswordHasher passwordHasher;
+
+    @AfterEach
+    void cleanUp() {
+        userRepository.deleteAllInBatch();
+    }
+
+    @Test
+    void testImportNdjsonAcrossChunksWritesUsersAndEvents() throws Exception {
+        String body = IntStream.range(0, 25)
+                .mapToObj(i -> "{\"name\":\"user" + i + "\",\"password\":\"pass" + i + "\"}")
+                .collect(Collectors.joining("\n"));
+        long users = userRepository.count();
+        long events = changeEvents.count();
+
+        ImportResult result = userImportService.importUsers(new StringReader(body), UserImportService.Format.NDJSON);
+
+        assertEquals(25, result.imported());
+        assertEquals(0, result.rejected());
+        assertEquals(users + 25, userRepository.count());
+        assertEquals(events + 25, changeEvents.count());
+        User user = userRepository.findByName("user3").get(0);
+        assertTrue(passwordHasher.matches("pass3", user.getPassword()));
+    }
+
+    @Test
+    void testImportReportsInvalidLinesAndKeepsTheRest() throws Exception {
+        String body = """
+                {"name":"valid","password":"secret"}
+                {"name":"","password":"secret"}
+                not json
+
+                {"name":"also valid","password":"secret"}
+                """;
+        long users = userRepository.count();
+
+        ImportResult result = userImportService.importUsers(new StringReader(body), UserImportService.Format.NDJSON);
+
+        assertEquals(2, result.imported());
+        assertEquals(2, result.rejected());
+        assertEquals(List.of(2L, 3L), result.errors().stream().map(ImportResult.Error::line).toList());
+        assertEquals(users + 2, userRepository.count());
+    }
+
+    @Test
+    void testImportCsvWithHeaderQuotesAndHashedPasswords() throws Exception {
+        String hash = passwordHasher.encode("migrated");
+        String body = "password,name\n"
+                + "secret,plain\n"
+                + "\"" + hash + "\",\"Doe, \"\"Jane\"\"\"\n"
+                + "missing-column\n";
+
+        ImportResult result = userImportService.importUsers(new StringReader(body), UserImportService.Format.CSV, true);
+
+        assertEquals(2, result.imported());
+        assertEquals(1, result.rejected());
+        assertEquals(4L, result.errors().get(0).line());
+        User migrated = userRepository.findByName("Doe, \"Jane\"").get(0);
+        assertEquals(hash, migrated.getPassword());
+        assertTrue(passwordHasher.matches("secret", userRepository.findByName("plain").get(0).getPassword()));
+    }
+
+    @Test
+    void testImportHashesPrefixedValuesUnlessToldTheyAreHashes() throws Exception {
+        String hash = passwordHasher.encode("migrated");
+        String body = "{\"name\":\"prefixed\",\"password\":\"" + hash + "\"}";
+
+        ImportResult result = userImportService.importUsers(new StringReader(body), UserImportService.Format.NDJSON);
+
+        assertEquals(1, result.imported());
+        User user = userRepository.findByName("prefixed").get(0);
+        assertNotEquals(hash, user.getPassword());
+        assertTrue(passwordHasher.matches(hash, user.getPassword()));
+    }
+}
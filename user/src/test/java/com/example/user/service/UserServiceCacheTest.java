@@ -0,0 +1,113 @@
+package com.example.user.service;
+
+import com.example.user.config.CacheConfig;
+import com.example.user.dto.UserView;
+import com.example.user.entity.User;
+import com.example.user.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.cache.CacheManager;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import org.springframework.test.context.aot.DisabledInAotMode;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@DisabledInAotMode
+@SpringBootTest
+class UserServiceCacheTest {
+    @Autowired
+    UserService userService;
+
+    @Autowired
+    CacheManager cacheManager;
+
+    @MockBean
+    UserRepository userRepository;
+
+    @BeforeEach
+    void clearCache() {
+        cacheManager.getCache(CacheConfig.USERS_CACHE).clear();
+    }
+
+    @Test
+    void testRepeatedFindByIdHitsDatabaseOnce() {
+        when(userRepository.findViewById(1L)).thenReturn(Optional.of(new UserView(1L, "name", 0L)));
+
+        userService.findUserById(1L);
+        Optional<UserView> cached = userService.findUserById(1L);
+
+        assertEquals("name", cached.orElseThrow().name());
+        verify(userRepository, times(1)).findViewById(1L);
+    }
+
+    @Test
+    void testConcurrentFindByIdShareOneQuery() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        when(userRepository.findViewById(5L)).thenAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return Optional.of(new UserView(5L, "hot", 0L));
+        });
+        ExecutorService callers = Executors.newFixedThreadPool(8);
+        try {
+            List<CompletableFuture<Optional<UserView>>> results = IntStream.range(0, 8)
+                    .mapToObj(i -> CompletableFuture.supplyAsync(() -> userService.findUserById(5L), callers))
+                    .toList();
+            Thread.sleep(200);
+            release.countDown();
+
+            results.forEach(result -> assertEquals("hot", result.join().orElseThrow().name()));
+        } finally {
+            callers.shutdown();
+        }
+        verify(userRepository, times(1)).findViewById(5L);
+    }
+
+    @Test
+    void testCreateUserDoesNotCacheEntity() {
+        User user = User.builder().name("name").password("pass").build();
+        when(userRepository.save(any())).thenReturn(User.builder().id(2L).name("name").password("pass").build());
+
+        userService.createUser(user);
+
+        assertNull(cacheManager.getCache(CacheConfig.USERS_CACHE).get(2L));
+    }
+
+    @Test
+    void testUpdateUserEvictsEntry() {
+        when(userRepository.findViewById(3L)).thenReturn(Optional.of(new UserView(3L, "name", 0L)));
+        when(userRepository.updateUser(eq(3L), eq("other"), anyString())).thenReturn(1);
+        when(userRepository.findVersionById(3L)).thenReturn(Optional.of(1L));
+
+        userService.findUserById(3L);
+        userService.updateUserById(User.builder().id(3L).name("other").password("pass").build(), 3L);
+        userService.findUserById(3L);
+
+        verify(userRepository, times(2)).findViewById(3L);
+    }
+
+    @Test
+    void testDeleteUserEvictsEntry() {
+        when(userRepository.findViewById(4L)).thenReturn(Optional.of(new UserView(4L, "name", 0L)));
+        when(userRepository.removeById(4L)).thenReturn(1);
+
+        userService.findUserById(4L);
+        userService.deleteUserById(4L);
+
+        assertNull(cacheManager.getCache(CacheConfig.USERS_CACHE).get(4L));
+    }
+}
@@ -1,27 +1,61 @@
 package com.example.user.service;
 
+import com.example.user.datasource.ShardRoutingDataSource;
+import com.example.user.dto.NameMatch;
+import com.example.user.dto.UserPage;
+import com.example.user.dto.UserView;
 import com.example.user.entity.User;
 import com.example.user.exceptions.UserIdNotFoundException;
 import com.example.user.exceptions.UserInvalidAttributesException;
+import com.example.user.exceptions.UserVersionConflictException;
+import com.example.user.entity.UserChangeEvent;
+import com.example.user.repository.UserChangeEventRepository;
+import com.example.user.repository.UserPartitionScanner;
 import com.example.user.repository.UserRepository;
+import com.example.user.security.CredentialCache;
+import com.example.user.shard.UserShards;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.condition.DisabledInNativeImage;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.Mockito.*;
 
+@DisabledInNativeImage
 @ExtendWith(MockitoExtension.class)
 class UserServiceTest {
 
     @Mock
     UserRepository userRepository;
+    @Mock
+    PasswordHasher passwordHasher;
+    @Mock
+    UserChangeEventRepository changeEvents;
+    @Mock
+    CredentialCache credentialCache;
+    @Mock
+    UserPartitionScanner partitionScanner;
+    @Spy
+    TransactionTemplate transactionTemplate = new TransactionTemplate(mock(PlatformTransactionManager.class));
+    @Spy
+    UserShards userShards = new UserShards((ShardRoutingDataSource) null, 0, 1);
     @InjectMocks
     UserService userService;
 
@@ -36,11 +70,11 @@ class UserServiceTest {
     @Test
     void testNullFromFindByUserIdDBDoesNotReturnNull() {
         long userId = 1L;
-        when(userRepository.findById(userId)).thenReturn(null);
+        when(userRepository.findViewById(userId)).thenReturn(null);
 
         assertThrows(UserIdNotFoundException.class, () -> userService.findUserById(userId));
 
-        verify(userRepository, times(1)).findById(userId);
+        verify(userRepository, times(1)).findViewById(userId);
     }
 
 
@@ -56,10 +90,10 @@ class UserServiceTest {
     void testEmptyFindByIdFromDBThrowsException() {
         long userId = 1L;
 
-        when(userRepository.findById(any())).thenReturn(Optional.empty());
+        when(userRepository.findViewById(anyLong())).thenReturn(Optional.empty());
 
         assertThrows(UserIdNotFoundException.class, () -> userService.findUserById(userId));
-        verify(userRepository, times(1)).findById(userId);
+        verify(userRepository, times(1)).findViewById(userId);
     }
 
 
@@ -80,23 +114,20 @@ class UserServiceTest {
     @Test
     void testFindByIdSuccess() {
         long userId = 1L;
-        User user = new User();
-        user.setId(userId);
-        user.setName("Manel");
-        user.setPassword("pass");
+        UserView user = new UserView(userId, "Manel", 0L);
 
-        when(userRepository.findById(userId)).thenReturn(Optional.of(user));
+        when(userRepository.findViewById(userId)).thenReturn(Optional.of(user));
 
-        Optional<User> resultOptional = assertDoesNotThrow(() -> userService.findUserById(userId));
+        Optional<UserView> resultOptional = assertDoesNotThrow(() -> userService.findUserById(userId));
 
         assertTrue(resultOptional.isPresent());
-        User result = resultOptional.get();
+        UserView result = resultOptional.get();
 
         assertNotNull(result);
-        assertEquals(user.getId(), result.getId());
-        assertEquals(user.getName(), result.getName());
-        assertEquals(user.getPassword(), result.getPassword());
-        verify(userRepository, times(1)).findById(userId);
+        assertEquals(user.id(), result.id());
+        assertEquals(user.name(), result.name());
+        verify(userRepository, times(1)).findViewById(userId);
+        verify(userRepository, never()).findById(any());
     }
 
 
@@ -115,9 +146,21 @@ class UserServiceTest {
         User user = new User();
         user.setName("Nome");
         user.setPassword("password123");
+        when(passwordHasher.encode("password123")).thenReturn("{bcrypt}hash");
+        when(userRepository.save(user)).thenAnswer(invocation -> {
+            user.setId(7L);
+            return user;
+        });
 
         assertDoesNotThrow(() -> userService.createUser(user));
         verify(userRepository, times(1)).save(any());
+        assertEquals("{bcrypt}hash", user.getPassword());
+
+        ArgumentCaptor<UserChangeEvent> event = ArgumentCaptor.forClass(UserChangeEvent.class);
+        verify(changeEvents, times(1)).save(event.capture());
+        assertEquals(UserChangeEvent.Type.CREATED, event.getValue().getType());
+        assertEquals(7L, event.getValue().getUserId());
+        assertNull(event.getValue().getPosition());
     }
 
     @Test
@@ -150,44 +193,71 @@ class UserServiceTest {
 
     @Test
     void testDeleteNoInputId() {
-        when(userRepository.findById(1L)).thenReturn(Optional.empty());
+        when(userRepository.removeById(1L)).thenReturn(0);
         assertThrows(UserIdNotFoundException.class, () -> userService.deleteUserById(1L));
-        verify(userRepository, times(0)).save(any());
+        verify(userRepository, never()).findById(any());
+        verifyNoInteractions(changeEvents);
     }
     @Test
     void testUserDeletedSuccessfully() {
         long userId = 1L;
-        User userToDelete = new User();
-        when(userRepository.findById(userId)).thenReturn(Optional.of(userToDelete));
+        when(userRepository.removeById(userId)).thenReturn(1);
 
         assertDoesNotThrow(() -> userService.deleteUserById(userId));
 
-        verify(userRepository, times(1)).findById(userId);
-        verify(userRepository, times(1)).deleteById(userId);
+        verify(userRepository, times(1)).removeById(userId);
+        verify(userRepository, never()).findById(any());
+        verify(userRepository, never()).deleteById(any());
+        verify(changeEvents, times(1)).save(argThat(event -> event.getType() == UserChangeEvent.Type.DELETED));
     }
     @Test
     void testUpdateUserSuccess() {
-        User originalUser = new User();
-        originalUser.setId(1L);
-        originalUser.setName("name");
-        originalUser.setPassword("pass");
-
-        when(userRepository.existsById(1L)).thenReturn(true);
-        when(userRepository.getReferenceById(1L)).thenReturn(originalUser);
+        when(userRepository.updateUser(1L, "manel", "{bcrypt}hash")).thenReturn(1);
+        when(userRepository.findVersionById(1L)).thenReturn(Optional.of(8L));
+        when(passwordHasher.encode("123")).thenReturn("{bcrypt}hash");
 
         User updatedUser = new User();
         updatedUser.setId(1L);
         updatedUser.setName("manel");
         updatedUser.setPassword("123");
 
-        userService.updateUserById(updatedUser, 1L);
-        User result = updatedUser;
+        User result = userService.updateUserById(updatedUser, 1L);
 
-        verify(userRepository, times(1)).save(originalUser);
+        verify(userRepository, times(1)).updateUser(1L, "manel", "{bcrypt}hash");
+        verify(userRepository, never()).existsById(any());
+        verify(userRepository, never()).save(any());
 
         assertEquals(1L, result.getId());
         assertEquals("manel", result.getName());
-        assertEquals("123", result.getPassword());
+        assertEquals("{bcrypt}hash", result.getPassword());
+        assertEquals(8L, result.getVersion());
+        verify(changeEvents, times(1)).save(argThat(event ->
+                event.getType() == UserChangeEvent.Type.UPDATED && event.getUserVersion() == 8L));
+    }
+
+    @Test
+    void testUpdateUserWithCurrentVersionBumpsVersion() {
+        when(userRepository.updateUserIfVersion(1L, 4L, "manel", "{bcrypt}hash")).thenReturn(1);
+        when(passwordHasher.encode("123")).thenReturn("{bcrypt}hash");
+
+        User result = userService.updateUserById(User.builder().id(1L).name("manel").password("123").version(4L).build(), 1L);
+
+        assertEquals(5L, result.getVersion());
+        verify(userRepository, never()).existsById(any());
+        verify(changeEvents, times(1)).save(argThat(event ->
+                event.getType() == UserChangeEvent.Type.UPDATED && event.getUserVersion() == 5L));
+    }
+
+    @Test
+    void testUpdateUserWithOutdatedVersionConflicts() {
+        when(userRepository.updateUserIfVersion(1L, 4L, "manel", "{bcrypt}hash")).thenReturn(0);
+        when(userRepository.existsById(1L)).thenReturn(true);
+        when(passwordHasher.encode("123")).thenReturn("{bcrypt}hash");
+
+        User user = User.builder().id(1L).name("manel").password("123").version(4L).build();
+
+        assertThrows(UserVersionConflictException.class, () -> userService.updateUserById(user, 1L));
+        verifyNoInteractions(changeEvents);
     }
 
     @Test
@@ -204,14 +274,15 @@ class UserServiceTest {
     }
     @Test
     void testUpdateUserWithNonExistingUserId() {
-        when(userRepository.existsById(1L)).thenReturn(false);
+        when(passwordHasher.encode("pass")).thenReturn("{bcrypt}hash");
+        when(userRepository.updateUser(1L, "name", "{bcrypt}hash")).thenReturn(0);
 
         User updatedUser = new User();
         updatedUser.setId(1L);
         updatedUser.setName("name");
         updatedUser.setPassword("pass");
 
-        assertThrows(UserInvalidAttributesException.class, () -> userService.updateUserById(updatedUser, 1L));
+        assertThrows(UserIdNotFoundException.class, () -> userService.updateUserById(updatedUser, 1L));
     }
     @Test
     void testUpdateUserWithInvalidUser() {
@@ -251,4 +322,126 @@ class UserServiceTest {
 
         verifyNoInteractions(userRepository);
     }
+
+    @Test
+    void testUsersPageReturnsCursorWhenPageIsFull() {
+        UserView first = new UserView(3L, "a", 0L);
+        UserView second = new UserView(4L, "b", 0L);
+        when(userRepository.findViewsAfter(2L, Limit.of(2))).thenReturn(List.of(first, second));
+
+        UserPage page = userService.findUsersPage(2L, 2);
+
+        assertEquals(2, page.content().size());
+        assertEquals(4L, page.nextCursor());
+    }
+
+    @Test
+    void testUsersPageHasNoCursorOnLastPage() {
+        UserView only = new UserView(3L, "a", 0L);
+        when(userRepository.findViewsAfter(0L, Limit.of(UserService.MAX_PAGE_SIZE))).thenReturn(List.of(only));
+
+        UserPage page = userService.findUsersPage(null, 5000);
+
+        assertEquals(1, page.content().size());
+        assertNull(page.nextCursor());
+    }
+
+    @Test
+    void testUsersPageWithInvalidSizeFails() {
+        assertThrows(UserInvalidAttributesException.class, () -> userService.findUsersPage(null, 0));
+        verifyNoInteractions(userRepository);
+    }
+
+    @Test
+    void testStreamAllUsersClosesStream() {
+        UserView first = new UserView(1L, "a", 0L);
+        UserView second = new UserView(2L, "b", 0L);
+        AtomicBoolean closed = new AtomicBoolean();
+        when(userRepository.streamAllViews()).thenReturn(Stream.of(first, second).onClose(() -> closed.set(true)));
+
+        List<UserView> received = new ArrayList<>();
+        userService.streamAllUsers(received::add);
+
+        assertEquals(List.of(first, second), received);
+        assertTrue(closed.get());
+    }
+
+    @Test
+    void testSearchByPrefixIgnoringCaseEscapesWildcards() {
+        when(userRepository.findViewsByNamePrefixIgnoreCase("50\\%", Limit.of(10))).thenReturn(List.of());
+
+        assertDoesNotThrow(() -> userService.searchByName("50%", NameMatch.PREFIX, true, 10));
+
+        verify(userRepository, times(1)).findViewsByNamePrefixIgnoreCase("50\\%", Limit.of(10));
+    }
+
+    @Test
+    void testSearchByExactNameCapsLimit() {
+        when(userRepository.findViewsByName("Manel", Limit.of(UserService.MAX_PAGE_SIZE))).thenReturn(List.of(new UserView(1L, "Manel", 0L)));
+
+        var users = userService.searchByName("Manel", NameMatch.EXACT, false, 100_000);
+
+        assertEquals(1, users.size());
+    }
+
+    @Test
+    void testSearchOnPartitionedTableScansPartitions() {
+        when(partitionScanner.isPartitioned()).thenReturn(true);
+        when(partitionScanner.findViewsByName("50\\%", NameMatch.PREFIX, true, 10)).thenReturn(List.of(new UserView(1L, "50%", 0L)));
+
+        var users = userService.searchByName("50%", NameMatch.PREFIX, true, 10);
+
+        assertEquals(1, users.size());
+        verifyNoInteractions(userRepository);
+    }
+
+    @Test
+    void testStreamAllUsersOnPartitionedTableScansPartitions() {
+        when(partitionScanner.isPartitioned()).thenReturn(true);
+        List<UserView> received = new ArrayList<>();
+
+        userService.streamAllUsers(received::add);
+
+        verify(partitionScanner, times(1)).forEachView(any());
+        verifyNoInteractions(userRepository);
+    }
+
+    @Test
+    void testSearchWithBlankNameFails() {
+        assertThrows(UserInvalidAttributesException.class, () -> userService.searchByName(" ", NameMatch.EXACT, false, 10));
+        verifyNoInteractions(userRepository);
+    }
+
+    @Test
+    void testAuthenticateWithCurrentHash() {
+        User user = User.builder().id(1L).name("name").password("{bcrypt}hash").build();
+        when(userRepository.findById(1L)).thenReturn(Optional.of(user));
+        when(passwordHasher.matches("secret", "{bcrypt}hash")).thenReturn(true);
+        when(passwordHasher.needsUpgrade("{bcrypt}hash")).thenReturn(false);
+
+        assertTrue(userService.authenticate(1L, "secret"));
+        verify(passwordHasher, never()).encodeAsync(any());
+    }
+
+    @Test
+    void testAuthenticateUpgradesOutdatedHash() {
+        User user = User.builder().id(1L).name("name").password("secret").build();
+        when(userRepository.findById(1L)).thenReturn(Optional.of(user));
+        when(passwordHasher.matches("secret", "secret")).thenReturn(true);
+        when(passwordHasher.needsUpgrade("secret")).thenReturn(true);
+        when(passwordHasher.encodeAsync("secret")).thenReturn(CompletableFuture.completedFuture("{bcrypt}hash"));
+
+        assertTrue(userService.authenticate(1L, "secret"));
+        verify(userRepository, times(1)).updatePasswordIfUnchanged(1L, "secret", "{bcrypt}hash");
+    }
+
+    @Test
+    void testAuthenticateWithWrongPassword() {
+        User user = User.builder().id(1L).name("name").password("{bcrypt}hash").build();
+        when(userRepository.findById(1L)).thenReturn(Optional.of(user));
+        when(passwordHasher.matches("wrong", "{bcrypt}hash")).thenReturn(false);
+
+        assertFalse(userService.authenticate(1L, "wrong"));
+        verify(userRepository, never()).updatePasswordIfUnchanged(anyLong(), any(), any());
+    }
 }
@@ -0,0 +1,51 @@
+package com.example.user.shard;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConsistentHashRingTest {
+    static final int IDS = 100_000;
+
+    @Test
+    void spreadsSnowflakeIdsEvenly() {
+        ConsistentHashRing ring = new ConsistentHashRing(List.of("shard-0", "shard-1", "shard-2", "shard-3"), 128);
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(0, System::currentTimeMillis);
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < IDS; i++) {
+            counts.merge(ring.shardFor(generator.nextId()), 1, Integer::sum);
+        }
+
+        assertEquals(4, counts.size());
+        counts.values().forEach(count -> assertTrue(Math.abs(count - IDS / 4) < IDS / 4 * 0.25, counts::toString));
+    }
+
+    @Test
+    void addingShardOnlyMovesIdsOntoIt() {
+        ConsistentHashRing before = new ConsistentHashRing(List.of("shard-0", "shard-1", "shard-2"), 128);
+        ConsistentHashRing after = new ConsistentHashRing(List.of("shard-0", "shard-1", "shard-2", "shard-3"), 128);
+        int moved = 0;
+        for (long id = 1; id <= IDS; id++) {
+            String owner = after.shardFor(id);
+            if (!owner.equals(before.shardFor(id))) {
+                assertEquals("shard-3", owner);
+                moved++;
+            }
+        }
+
+        assertTrue(Math.abs(moved - IDS / 4) < IDS / 4 * 0.25, "moved " + moved);
+    }
+
+    @Test
+    void placementDoesNotDependOnShardOrder() {
+        ConsistentHashRing ring = new ConsistentHashRing(List.of("shard-0", "shard-1", "shard-2"), 16);
+        ConsistentHashRing reordered = new ConsistentHashRing(List.of("shard-2", "shard-0", "shard-1"), 16);
+        for (long id = 1; id <= 10_000; id++) {
+            assertEquals(ring.shardFor(id), reordered.shardFor(id));
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package com.example.user.shard;
+
+import com.example.user.config.ShardingConfig;
+import com.example.user.dto.BatchItemResult;
+import com.example.user.dto.BatchItemResult.Status;
+import com.example.user.dto.BatchResult;
+import com.example.user.dto.NameMatch;
+import com.example.user.dto.UserPage;
+import com.example.user.dto.UserView;
+import com.example.user.entity.User;
+import com.example.user.service.UserBatchService;
+import com.example.user.service.UserChangeRelay;
+import com.example.user.service.UserService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Three in-memory H2 databases stand in for the shards: the home shard, an active one and
+ * a joining one. While {@code shard-2} joins, users it will own are still on their
+ * previous owner until the resharder moves them.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:shard0;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+        "spring.jpa.open-in-view=false",
+        "user.ids.worker-id=1",
+        "user.datasource.virtual-nodes=16",
+        "user.datasource.shards[0].url=jdbc:h2:mem:shard1;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+        "user.datasource.shards[1].url=jdbc:h2:mem:shard2;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+        "user.datasource.shards[1].state=JOINING",
+        "user.batch.chunk-size=20"
+})
+class ShardingTest {
+    static final String JOINING = "shard-2";
+    static final SnowflakeIdGenerator SEED_IDS = SnowflakeIdGenerator.forWorker(2);
+
+    @Autowired
+    UserShards userShards;
+    @Autowired
+    UserService userService;
+    @Autowired
+    UserBatchService userBatchService;
+    @Autowired
+    UserChangeRelay changeRelay;
+    @Autowired
+    UserResharder resharder;
+    @Autowired
+    CacheManager cacheManager;
+
+    @BeforeEach
+    void setUp() {
+        for (String shard : userShards.shards()) {
+            jdbc(shard).update("delete from user_change_event");
+            jdbc(shard).update("delete from user_table");
+        }
+        cacheManager.getCacheNames().forEach(name -> cacheManager.getCache(name).clear());
+    }
+
+    @Test
+    void newUsersGetSnowflakeIdsAndLandOnTheirOwner() {
+        Set<String> owners = new HashSet<>();
+        for (int i = 0; i < 30; i++) {
+            long id = userService.createUser(User.builder().name("created" + i).password("pass").build()).getId();
+            String owner = userShards.ownerOf(id);
+            owners.add(owner);
+
+            assertEquals(1, SnowflakeIdGenerator.workerOf(id));
+            for (String shard : userShards.shards()) {
+                int expected = shard.equals(owner) ? 1 : 0;
+                assertEquals(expected, count(shard, "user_table where id = " + id));
+                assertEquals(expected, count(shard, "user_change_event where user_id = " + id));
+            }
+        }
+        assertEquals(3, owners.size());
+    }
+
+    @Test
+    void userNotMovedYetIsServedFromPreviousOwner() {
+        assertTrue(userShards.isResharding());
+        long id = seedIdOwnedBy(JOINING);
+        String previous = userShards.previousOwnerOf(id);
+        seed(previous, id, "unmoved");
+
+        assertEquals("unmoved", userService.findUserById(id).orElseThrow().name());
+
+        userService.updateUserById(User.builder().name("renamed").password("secret").build(), id);
+
+        assertEquals(0, count(JOINING, "user_table"));
+        assertEquals(1, count(previous, "user_table where name = 'renamed'"));
+
+        userService.deleteUserById(id);
+
+        assertEquals(0, count(previous, "user_table"));
+    }
+
+    @Test
+    void readsGatherEveryShardInIdOrder() {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            long id = SEED_IDS.nextId();
+            seed(userShards.ownerOf(id), id, (i % 3 == 0 ? "fizz" : "buzz") + i);
+            ids.add(id);
+        }
+        seed(userShards.ownerOf(ids.get(1)), SEED_IDS.nextId(), "buzz1");
+
+        assertEquals(ids, userService.getAllUsers().stream().map(UserView::id).limit(30).toList());
+        assertEquals(2, userService.findByName("buzz1").size());
+        List<UserView> fizz = userService.searchByName("fizz", NameMatch.PREFIX, false, 100);
+        assertEquals(10, fizz.size());
+        assertEquals(LongStream.range(0, 10).mapToObj(i -> ids.get((int) i * 3)).toList(),
+                fizz.stream().map(UserView::id).toList());
+        assertEquals(4, userService.searchByName("fizz", NameMatch.PREFIX, false, 4).size());
+
+        UserPage first = userService.findUsersPage(null, 12);
+        UserPage second = userService.findUsersPage(first.nextCursor(), 12);
+        assertEquals(ids.subList(0, 12), first.content().stream().map(UserView::id).toList());
+        assertEquals(ids.subList(12, 24), second.content().stream().map(UserView::id).toList());
+    }
+
+    @Test
+    void batchesAreSplitByShard() {
+        BatchResult created = userBatchService.createUsers(IntStream.range(0, 50)
+                .mapToObj(i -> User.builder().name("batch" + i).password("pass").build())
+                .toList());
+
+        assertEquals(50, created.succeeded());
+        List<Long> ids = created.items().stream().map(BatchItemResult::id).toList();
+        ids.forEach(id -> assertEquals(1, count(userShards.ownerOf(id), "user_table where id = " + id)));
+
+        long unmoved = seedIdOwnedBy(JOINING);
+        seed(userShards.previousOwnerOf(unmoved), unmoved, "unmoved");
+        List<Long> toDelete = new ArrayList<>(ids);
+        toDelete.add(unmoved);
+        toDelete.add(SEED_IDS.nextId());
+        BatchResult deleted = userBatchService.deleteUsers(toDelete);
+
+        assertEquals(51, deleted.succeeded());
+        assertEquals(Status.NOT_FOUND, deleted.items().get(51).status());
+        userShards.shards().forEach(shard -> assertEquals(0, count(shard, "user_table")));
+    }
+
+    @Test
+    void changePositionsAreGaplessAcrossShards() {
+        for (int i = 0; i < 20; i++) {
+            userService.createUser(User.builder().name("changed" + i).password("pass").build());
+        }
+
+        changeRelay.publishPending();
+
+        List<Long> positions = new ArrayList<>();
+        userShards.shards().forEach(shard -> positions.addAll(
+                jdbc(shard).queryForList("select position from user_change_event", Long.class)));
+        positions.sort(null);
+        assertEquals(20, positions.size());
+        for (int i = 1; i < positions.size(); i++) {
+            assertEquals(positions.get(i - 1) + 1, positions.get(i));
+        }
+    }
+
+    @Test
+    void resharderMovesUsersOntoTheirNewOwner() {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            long id = SEED_IDS.nextId();
+            seed(userShards.previousOwnerOf(id), id, "user" + i);
+            ids.add(id);
+        }
+        long moving = ids.stream().filter(id -> !userShards.ownerOf(id).equals(userShards.previousOwnerOf(id))).count();
+
+        UserResharder.Progress progress = resharder.reshard();
+
+        assertEquals(UserResharder.State.DONE, progress.state());
+        assertTrue(progress.scanned() >= 200);
+        assertTrue(moving > 0);
+        assertEquals(moving, progress.moved());
+        assertEquals(moving, count(JOINING, "user_table"));
+        ids.forEach(id -> assertEquals(1, count(userShards.ownerOf(id), "user_table where id = " + id)));
+        assertEquals(ids, userService.getAllUsers().stream().map(UserView::id).toList());
+
+        assertEquals(0, resharder.reshard().moved());
+    }
+
+    private long seedIdOwnedBy(String shard) {
+        while (true) {
+            long id = SEED_IDS.nextId();
+            if (userShards.ownerOf(id).equals(shard)) {
+                return id;
+            }
+        }
+    }
+
+    private void seed(String shard, long id, String name) {
+        jdbc(shard).update("insert into user_table (id, name, password, version) values (?, ?, 'x', 0)", id, name);
+    }
+
+    private int count(String shard, String from) {
+        return jdbc(shard).queryForObject("select count(*) from " + from, Integer.class);
+    }
+
+    private JdbcTemplate jdbc(String shard) {
+        return new JdbcTemplate(userShards.dataSource(shard));
+    }
+
+    @Test
+    void shardsNeedAWorkerId() {
+        assertThrows(IllegalStateException.class, () -> new ShardingConfig().snowflakeIds(null));
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.user.shard;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnowflakeIdGeneratorTest {
+
+    @Test
+    void idsAreUniqueAndIncreasing() {
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(7, System::currentTimeMillis);
+        Set<Long> ids = new HashSet<>();
+        long last = Long.MIN_VALUE;
+        for (int i = 0; i < 100_000; i++) {
+            long id = generator.nextId();
+            assertTrue(id > last);
+            assertTrue(ids.add(id));
+            last = id;
+        }
+    }
+
+    @Test
+    void idCarriesWorkerAndTimestamp() {
+        long now = SnowflakeIdGenerator.EPOCH_MILLIS + 123_456_789L;
+        long id = new SnowflakeIdGenerator(SnowflakeIdGenerator.MAX_WORKER_ID, () -> now).nextId();
+
+        assertTrue(id > 0);
+        assertEquals(SnowflakeIdGenerator.MAX_WORKER_ID, SnowflakeIdGenerator.workerOf(id));
+        assertEquals(now, SnowflakeIdGenerator.timestampOf(id).toEpochMilli());
+    }
+
+    @Test
+    void clockGoingBackDoesNotRepeatIds() {
+        AtomicLong clock = new AtomicLong(SnowflakeIdGenerator.EPOCH_MILLIS + 10_000);
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(1, clock::get);
+        long before = generator.nextId();
+
+        clock.addAndGet(-5_000);
+
+        assertTrue(generator.nextId() > before);
+    }
+
+    @Test
+    void exhaustedSequenceMovesToNextMillisecond() {
+        long now = SnowflakeIdGenerator.EPOCH_MILLIS + 1_000;
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(1, () -> now);
+        long last = 0;
+        for (int i = 0; i < (1 << SnowflakeIdGenerator.SEQUENCE_BITS) + 1; i++) {
+            long id = generator.nextId();
+            assertTrue(id > last);
+            last = id;
+        }
+
+        assertEquals(now + 1, SnowflakeIdGenerator.timestampOf(last).toEpochMilli());
+    }
+
+    @Test
+    void rejectsWorkerIdOutOfRange() {
+        assertThrows(IllegalArgumentException.class, () -> SnowflakeIdGenerator.forWorker(SnowflakeIdGenerator.MAX_WORKER_ID + 1));
+        assertSame(SnowflakeIdGenerator.forWorker(3), SnowflakeIdGenerator.forWorker(3));
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.user.snapshot;
+
+import com.example.user.dto.NameMatch;
+import com.example.user.dto.UserChange;
+import com.example.user.dto.UserPage;
+import com.example.user.dto.UserView;
+import com.example.user.entity.UserChangeEvent;
+import com.example.user.service.UserChangeStream;
+import com.example.user.service.UserService;
+import jakarta.servlet.ServletException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.aot.DisabledInAotMode;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.CannotCreateTransactionException;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+
+import static org.hamcrest.Matchers.contains;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * The snapshot is built from a mocked first page of users and the changes after it, then
+ * reads fail as if the database were down.
+ */
+@DisabledInAotMode
+@SpringBootTest(properties = {
+        "user.snapshot.refresh-interval=PT1H",
+        "user.snapshot.compact-threshold=3"
+})
+@AutoConfigureMockMvc(addFilters = false)
+class StaleReadTest {
+    @TempDir
+    static Path dir;
+
+    @DynamicPropertySource
+    static void snapshotPath(DynamicPropertyRegistry registry) {
+        registry.add("user.snapshot.path", () -> dir.resolve("users.snapshot").toString());
+    }
+
+    @Autowired
+    MockMvc mockMvc;
+    @Autowired
+    UserSnapshot snapshot;
+    @MockBean
+    UserService userService;
+    @MockBean
+    UserChangeStream changeStream;
+
+    @BeforeEach
+    void databaseDown() {
+        when(userService.findUserById(anyLong())).thenThrow(new CannotCreateTransactionException("down"));
+        when(userService.searchByName(any(), any(), anyBoolean(), anyInt()))
+                .thenThrow(new CannotCreateTransactionException("down"));
+    }
+
+    @Test
+    void readsComeFromTheSnapshotWhileTheDatabaseIsDown() throws Exception {
+        when(changeStream.lastPosition()).thenReturn(10L);
+        when(userService.findUsersPage(null, UserService.MAX_PAGE_SIZE)).thenReturn(new UserPage(List.of(
+                new UserView(1L, "ann", 1L), new UserView(2L, "bob", 1L), new UserView(3L, "ann", 2L)), null));
+        when(changeStream.changesSince(eq(10L), anyInt())).thenReturn(List.of(
+                change(11, 2, UserChangeEvent.Type.UPDATED, "ann", 2L),
+                change(12, 3, UserChangeEvent.Type.DELETED, null, null)));
+        snapshot.refresh();
+
+        mockMvc.perform(get("/user/1"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.WARNING, "110 - \"Response is Stale\""))
+                .andExpect(header().string(UserSnapshot.POSITION_HEADER, "12"))
+                .andExpect(jsonPath("$.name").value("ann"));
+        mockMvc.perform(get("/user/2").param("fields", "name"))
+                .andExpect(status().isOk())
+                .andExpect(content().json("{\"name\":\"ann\"}", true));
+        mockMvc.perform(get("/user/3"))
+                .andExpect(status().isNotFound());
+        mockMvc.perform(get("/user/search").param("name", "ann"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(UserSnapshot.POSITION_HEADER, "12"))
+                .andExpect(jsonPath("$[*].id").value(contains(1, 2)));
+        mockMvc.perform(get("/user/search").param("name", "bob"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.WARNING, UserSnapshot.STALE_WARNING))
+                .andExpect(content().json("[]", true));
+        ServletException prefixSearch = assertThrows(ServletException.class, () -> mockMvc.perform(
+                get("/user/search").param("name", "ann").param("match", NameMatch.PREFIX.name())));
+        assertInstanceOf(CannotCreateTransactionException.class, prefixSearch.getCause());
+
+        when(changeStream.changesSince(eq(12L), anyInt())).thenReturn(List.of(
+                change(13, 4, UserChangeEvent.Type.CREATED, "cy", 0L)));
+        snapshot.refresh();
+
+        assertEquals(13, snapshot.position());
+        assertEquals(new UserView(2L, "ann", 2L), snapshot.findById(2));
+        assertEquals(new UserView(4L, "cy", 0L), snapshot.findById(4));
+        assertNull(snapshot.findById(3));
+        try (UserSnapshotFile file = UserSnapshotFile.open(dir.resolve("users.snapshot"))) {
+            assertEquals(13, file.position());
+            assertEquals(3, file.count());
+        }
+    }
+
+    private static UserChange change(long position, long userId, UserChangeEvent.Type type, String name, Long version) {
+        return new UserChange(position, userId, type, name, version, Instant.now());
+    }
+}
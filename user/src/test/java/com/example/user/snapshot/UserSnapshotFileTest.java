@@ -0,0 +1,134 @@
+package com.example.user.snapshot;
+
+import com.example.user.config.JacksonConfig;
+import com.example.user.dto.UserView;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UserSnapshotFileTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void findsUsersByIdAndName() throws IOException {
+        Path path = dir.resolve("users.snapshot");
+        try (UserSnapshotFile.Writer writer = UserSnapshotFile.writer(path, 42, 3)) {
+            for (long id = 1; id <= 100; id++) {
+                writer.add(new UserView(id * 10, "user" + id % 7, id % 5 == 0 ? null : id));
+            }
+            writer.add(new UserView(2000L, "Zoë 名前", 1L));
+            writer.finish();
+        }
+        assertEquals(List.of(path), filesIn(dir));
+
+        try (UserSnapshotFile file = UserSnapshotFile.open(path)) {
+            assertEquals(101, file.count());
+            assertEquals(42, file.position());
+            assertEquals(new UserView(30L, "user3", 3L), file.viewAt(file.indexOf(30)));
+            assertEquals(new UserView(50L, "user5", null), file.viewAt(file.indexOf(50)));
+            assertEquals(-1, file.indexOf(35));
+            assertEquals(-1, file.indexOf(5000));
+
+            List<UserView> matches = new ArrayList<>();
+            file.findByName("user3", 100, id -> false, matches);
+            assertEquals(14, matches.size());
+            assertTrue(matches.stream().allMatch(user -> user.name().equals("user3")));
+            for (int i = 1; i < matches.size(); i++) {
+                assertTrue(matches.get(i - 1).id() < matches.get(i).id());
+            }
+
+            matches.clear();
+            file.findByName("user3", 2, id -> id == 30, matches);
+            assertEquals(List.of(100L, 170L), matches.stream().map(UserView::id).toList());
+
+            matches.clear();
+            file.findByName("Zoë 名前", 10, id -> false, matches);
+            assertEquals(List.of(new UserView(2000L, "Zoë 名前", 1L)), matches);
+
+            matches.clear();
+            file.findByName("user", 10, id -> false, matches);
+            assertTrue(matches.isEmpty());
+        }
+    }
+
+    @Test
+    void writesUsersAsJacksonWould() throws IOException {
+        List<UserView> users = List.of(
+                new UserView(1L, "plain", 7L),
+                new UserView(2L, "quote \" back\\slash", null),
+                new UserView(3L, "tab\tnew\nline\u0001\u001f", 0L),
+                new UserView(1234567890123L, "Zoë 名前 \uD83D\uDE00", Long.MAX_VALUE));
+        Path path = dir.resolve("users.snapshot");
+        try (UserSnapshotFile.Writer writer = UserSnapshotFile.writer(path, 0, 16)) {
+            for (UserView user : users) {
+                writer.add(user);
+            }
+            writer.finish();
+        }
+        ObjectMapper mapper = new ObjectMapper();
+        try (UserSnapshotFile file = UserSnapshotFile.open(path)) {
+            for (Set<String> fields : List.of(Set.<String>of(), Set.of("name"), Set.of("id", "version"))) {
+                ObjectWriter jackson = mapper.writer(JacksonConfig.userFields(fields));
+                for (UserView user : users) {
+                    ByteArrayOutputStream fromFile = new ByteArrayOutputStream();
+                    file.writeJson(file.indexOf(user.id()), fields, fromFile);
+                    assertEquals(jackson.writeValueAsString(user), fromFile.toString(StandardCharsets.UTF_8));
+                    ByteArrayOutputStream fromView = new ByteArrayOutputStream();
+                    UserSnapshotFile.writeJson(user, fields, fromView);
+                    assertEquals(jackson.writeValueAsString(user), fromView.toString(StandardCharsets.UTF_8));
+                }
+            }
+
+            ByteArrayOutputStream found = new ByteArrayOutputStream();
+            file.writeByName("plain", 10, id -> false, Set.of("id"), found);
+            assertEquals("[{\"id\":1}]", found.toString(StandardCharsets.UTF_8));
+            found.reset();
+            file.writeByName("plain", 10, id -> id == 1, Set.of("id"), found);
+            assertEquals("[]", found.toString(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void emptySnapshot() throws IOException {
+        Path path = dir.resolve("empty.snapshot");
+        try (UserSnapshotFile.Writer writer = UserSnapshotFile.writer(path, 0, 16)) {
+            writer.finish();
+        }
+        try (UserSnapshotFile file = UserSnapshotFile.open(path)) {
+            assertEquals(0, file.count());
+            assertEquals(-1, file.indexOf(1));
+            List<UserView> matches = new ArrayList<>();
+            file.findByName("name", 10, id -> false, matches);
+            assertTrue(matches.isEmpty());
+        }
+    }
+
+    @Test
+    void idsMustIncrease() throws IOException {
+        try (UserSnapshotFile.Writer writer = UserSnapshotFile.writer(dir.resolve("users.snapshot"), 0, 16)) {
+            writer.add(new UserView(2L, "b", 1L));
+            assertThrows(IllegalArgumentException.class, () -> writer.add(new UserView(1L, "a", 1L)));
+        }
+        assertEquals(List.of(), filesIn(dir));
+    }
+
+    private static List<Path> filesIn(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.toList();
+        }
+    }
+}